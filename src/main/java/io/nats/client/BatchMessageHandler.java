@@ -0,0 +1,46 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client;
+
+import java.util.List;
+
+/**
+ * A BatchMessageHandler receives a dispatcher's messages several at a time, so that work like
+ * a database insert can be shared by the whole batch. See
+ * {@link Connection#createDispatcher(BatchMessageHandler, int, long, java.time.Duration) createDispatcher()}
+ * for how batches are collected.
+ */
+public interface BatchMessageHandler {
+    /**
+     * Called to deliver a batch of messages to the handler. This call is in the dispatcher's thread
+     * and can block all other messages being delivered.
+     *
+     * <p>The messages are in the order they arrived, and the list is never empty. The list belongs
+     * to the dispatcher and is reused after this method returns, so keep the messages, not the list.
+     *
+     * <p>The thread used to call onMessages will be interrupted if the connection is closed, or the dispatcher is stopped.
+     * With an {@link Options.Builder#executor(java.util.concurrent.Executor) executor} the dispatcher runs as a task on
+     * one of the executor's threads, which is never interrupted, the dispatcher just stops handing out batches. A task
+     * doesn't hold its thread while a batch lingers either, it gives the thread back and is submitted again once the
+     * linger is up.
+     * With an {@link Options.Builder#executor(java.util.concurrent.Executor) executor} the dispatcher runs as a task on
+     * one of the executor's threads, which is never interrupted, the dispatcher just stops handing out batches. A task
+     * doesn't hold its thread while a batch lingers either, it gives the thread back and is submitted again once the
+     * linger is up.
+     *
+     * @param messages the received messages
+     * @throws InterruptedException if the dispatcher interrupts this handler
+     */
+    void onMessages(List<Message> messages) throws InterruptedException;
+}
@@ -15,19 +15,39 @@ package io.nats.client;
 
 import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /**
  * The Connection class is at the heart of the NATS Java client. Fundamentally a connection represents
  * a single network connection to the gnatsd server.
  * 
- * <p>Each connection you create will result in the creation of a single socket and several threads:
+ * <p>Each connection you create will result in the creation of a single socket and, by default, several threads:
  * <ul>
  * <li> A reader thread for taking data off the socket
  * <li> A writer thread for putting data onto the socket
- * <li> A timer thread for a few maintenance timers
- * <li> A dispatch thread to handle request/reply traffic
+ * <li> A dispatch thread to handle request/reply traffic, unless the options ask for
+ *      {@link Options.Builder#inlineReplies() inline replies}
+ * <li> A thread for connection and error listener callbacks, which is only started when there is one to
+ *      make and ends after it has been idle for a while
+ * </ul>
+ * 
+ * <p>Each {@link Dispatcher Dispatcher} adds a thread of its own, or one per lane for a
+ * {@link #createDispatcher(MessageHandler, int, Function) parallel dispatcher}. An
+ * {@link #createInlineDispatcher(MessageHandler, Duration) inline dispatcher} runs on the reader and adds none.
+ * 
+ * <p>Timed work, like pings and request timeouts, runs on a small {@link Options.Builder#scheduler(java.util.concurrent.ScheduledExecutorService)
+ * scheduler} that every connection shares, so it doesn't add threads per connection. The options can also
+ * move the other threads:
+ * <ul>
+ * <li> With an {@link Options.Builder#executor(java.util.concurrent.Executor) executor}, the reader, writer and
+ *      reconnects run as tasks on it, and dispatchers, including the one for replies, are tasks that are only
+ *      submitted while they have messages.
+ * <li> With an {@link Options.Builder#eventLoopGroup(EventLoopGroup) event loop group}, one of the group's threads
+ *      reads and writes the socket instead of the reader and writer threads, and is shared with the other
+ *      connections on that loop.
  * </ul>
  * 
  * <p>The connection has a {@link Connection.Status status} which can be checked using the {@link #getStatus() getStatus}
@@ -147,16 +167,135 @@ public interface Connection extends AutoCloseable {
      */
     public void publish(String subject, String replyTo, byte[] body);
 
+    /**
+     * Publish a message and get a future that is completed when the server has seen it. See
+     * {@link #publishAsync(String, String, byte[]) publishAsync()} for details.
+     * 
+     * @param subject the subject to send the message to
+     * @param body the message body
+     * @return a future completed with true once the server acknowledges the message
+     * @throws IllegalStateException if the reconnect buffer is exceeded
+     */
+    public CompletableFuture<Boolean> publishAsync(String subject, byte[] body);
+
+    /**
+     * Publish a message, providing a replyTo subject, and get a future that is completed when the
+     * server has seen it. The message is sent just like {@link #publish(String, String, byte[]) publish()}.
+     * The connection follows the batch of messages it writes with a PING, and the server's PONG
+     * completes the futures for every message in that batch, so acknowledging many messages costs
+     * one round trip rather than one {@link #flush(Duration) flush} each.
+     * 
+     * <p>If the connection is lost before the PONG arrives, the future is cancelled and the message
+     * may or may not have reached the server. Messages that were still queued are sent after a
+     * reconnect, and their futures complete then. If the connection is closed first, they are cancelled.
+     * 
+     * @param subject the subject to send the message to
+     * @param replyTo the subject the receiver should send the response to
+     * @param body the message body
+     * @return a future completed with true once the server acknowledges the message
+     * @throws IllegalStateException if the reconnect buffer is exceeded
+     */
+    public CompletableFuture<Boolean> publishAsync(String subject, String replyTo, byte[] body);
+
+    /**
+     * Start a batch of publishes that are sent together when the batch is closed. See {@link PublishBatch}
+     * for details.
+     * 
+     * @return a new, empty, PublishBatch
+     * @throws IllegalStateException if the connection is closed or draining
+     */
+    public PublishBatch batch();
+
     /**
      * Send a request. The returned future will be completed when the
      * response comes back.
      * 
+     * <p>The future is completed on the connection's request dispatch thread, or on its reader thread with
+     * {@link Options.Builder#inlineReplies() inline replies}, unless the options have a
+     * {@link Options.Builder#replyExecutor(java.util.concurrent.Executor) reply executor}. Slow work that
+     * depends on the response should use the async methods of the future.
+     * 
      * @param subject the subject for the service that will handle the request
      * @param data the content of the message
      * @return a Future for the response, which may be cancelled on error or timed out
      */
     public CompletableFuture<Message> request(String subject, byte[] data);
 
+    /**
+     * Send a request, and give up on the response after a timeout. The returned future is completed
+     * with the response, or completed exceptionally with a {@link TimeoutException}
+     * if the response doesn't arrive in time. Either way the connection stops tracking the request
+     * at that point.
+     * 
+     * <p>Timeouts are checked every few milliseconds, so the future may time out slightly after the timeout has passed.
+     * 
+     * @param subject the subject for the service that will handle the request
+     * @param data the content of the message
+     * @param timeout the time to wait for a response
+     * @return a Future for the response, which may be cancelled on error or timed out
+     * @throws IllegalArgumentException if the timeout is null
+     */
+    public CompletableFuture<Message> requestWithTimeout(String subject, byte[] data, Duration timeout);
+
+    /**
+     * Send a request that many services may answer, and collect their replies. The returned future
+     * is completed with the replies in the order they arrived, once maxReplies have arrived or the
+     * timeout passes, whichever comes first. It is not an error for the timeout to pass, the list just
+     * holds the replies that made it, and may be empty.
+     * 
+     * <p>All of the replies come back to the connection's shared response inbox, so collecting them
+     * doesn't create a subscription or a dispatcher.
+     * 
+     * @param subject the subject for the services that will handle the request
+     * @param data the content of the message
+     * @param maxReplies the number of replies to wait for, or 0 to collect replies until the timeout
+     * @param timeout the time to wait for replies
+     * @return a Future for the replies, which is cancelled if the connection is closed first
+     * @throws IllegalArgumentException if the timeout is null
+     */
+    public CompletableFuture<List<Message>> requestMany(String subject, byte[] data, int maxReplies, Duration timeout);
+
+    /**
+     * Send a request, and send a second copy if there is no response after the hedge delay. The returned
+     * future is completed with whichever response arrives first, the other one is dropped. If neither
+     * arrives before the timeout, the future is completed exceptionally with a {@link TimeoutException}.
+     * 
+     * <p>Only use this for requests that are safe to handle twice. With a queue group behind the subject
+     * the copy will usually go to a different responder, so a hedge delay near the usual worst case
+     * response time, like the 95th percentile, cuts the wait when one responder stalls.
+     * 
+     * <p>The copy never waits for room in the outgoing queue. If the queue is at the
+     * {@link Options.Builder#maxOutgoingMessages(long) outgoing limits} when it is due, it isn't sent.
+     * 
+     * @param subject the subject for the service that will handle the request
+     * @param data the content of the message
+     * @param hedgeDelay the time to wait for a response before sending the copy
+     * @param timeout the total time to wait for a response
+     * @return a Future for the response, which may be cancelled on error or timed out
+     * @throws IllegalArgumentException if the hedge delay or timeout is null
+     */
+    public CompletableFuture<Message> requestHedged(String subject, byte[] data, Duration hedgeDelay, Duration timeout);
+
+    /**
+     * Send a request, and send it again each time a response doesn't arrive in time. The first attempt
+     * waits for the attempt timeout, and each retry waits twice as long as the one before it. The
+     * returned future is completed with the first response to any of the attempts, or completed exceptionally
+     * with a {@link TimeoutException} once the last attempt times out.
+     * 
+     * <p>All of the attempts share one reply subject, so a late response to an earlier attempt still
+     * completes the future. Only use this for requests that are safe to handle more than once.
+     * Like the copy in {@link #requestHedged(String, byte[], Duration, Duration) requestHedged()}, a
+     * retry that finds the outgoing queue full is skipped rather than waiting for room.
+     * 
+     * @param subject the subject for the service that will handle the request
+     * @param data the content of the message
+     * @param attemptTimeout the time to wait for a response to the first attempt
+     * @param maxRetries the number of times to send the request again, 0 sends it once
+     * @return a Future for the response, which may be cancelled on error or timed out
+     * @throws IllegalArgumentException if the attempt timeout is null or the retries are negative
+     */
+    public CompletableFuture<Message> requestWithRetries(String subject, byte[] data, Duration attemptTimeout, int maxRetries);
+
     /**
      * Send a request and returns the reply or null. This version of request is equivalent
      * to calling get on the future returned from {@link #request(String, byte[]) request()} with
@@ -218,6 +357,90 @@ public interface Connection extends AutoCloseable {
      */
     public Dispatcher createDispatcher(MessageHandler handler);
 
+    /**
+     * Create a {@code Dispatcher} that calls the handler from {@code parallelism} threads.
+     * Each message is assigned to one of the threads by the hash of its key, so messages with
+     * the same key are handled one at a time, in the order they arrived, while messages with
+     * different keys can be handled at the same time. The handler must be safe to call from
+     * several threads.
+     * 
+     * <pre>
+     * nc = Nats.connect()
+     * d = nc.createDispatcher((m) -&gt; process(m), 8, null).subscribe("orders.*");
+     * </pre>
+     * 
+     * <p>The key function is called on the connection's reader thread for every message, so it
+     * should be quick and shouldn't block. If it throws, the exception is passed to the error listener
+     * and the message goes to the first thread. Pending limits and drain apply to the dispatcher as a whole.
+     * 
+     * @param handler The target for the messages
+     * @param parallelism the number of threads, 1 behaves like {@link #createDispatcher(MessageHandler) createDispatcher(handler)}
+     * @param keyFunction returns the ordering key for a message, null to use the message's subject
+     * @return a new Dispatcher
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public Dispatcher createDispatcher(MessageHandler handler, int parallelism, Function<? super Message, ?> keyFunction);
+
+    /**
+     * Create a {@code Dispatcher} that calls the handler directly on the connection's reader thread,
+     * as each message is read, rather than handing the message to another thread. This saves the
+     * wake up of a dispatcher thread on every message, but nothing else is read from the socket,
+     * for any subscription, until the handler returns. The handler:
+     * <ul>
+     * <li>must not block or do slow work, hand that off to another thread
+     * <li>can publish, but must not call {@link #flush(Duration) flush} or {@link #request(String, byte[], Duration) request},
+     * which wait for the reader and throw an IllegalStateException on this thread
+     * <li>must not close the connection
+     * </ul>
+     *
+     * <p>Pending limits don't apply, since messages are never queued. Instead, a handler call that takes longer
+     * than {@code slowHandlerTime} marks the dispatcher slow, and the first time that happens it is reported to
+     * the {@link ErrorListener#slowConsumerDetected(Connection, Consumer) ErrorListener}, as for a slow consumer.
+     * A call within the time clears the mark.
+     *
+     * @param handler The target for the messages
+     * @param slowHandlerTime how long a handler call can take before it is reported, null or 0 to never report
+     * @return a new Dispatcher
+     */
+    public Dispatcher createInlineDispatcher(MessageHandler handler, Duration slowHandlerTime);
+
+    /**
+     * Create a {@code Dispatcher} that passes its messages to the handler in batches. Once a message
+     * arrives the dispatcher waits up to {@code linger} for more, and calls the handler as soon as it
+     * has {@code maxMessages}, at least {@code maxBytes}, or the linger time is up. Messages that are
+     * already queued are batched without waiting, so a busy dispatcher fills its batches right away.
+     *
+     * <pre>
+     * nc = Nats.connect()
+     * d = nc.createDispatcher((msgs) -&gt; insertAll(msgs), 500, 1024 * 1024, Duration.ofMillis(5)).subscribe("events.*");
+     * </pre>
+     *
+     * @param handler The target for the batches
+     * @param maxMessages the most messages in a batch
+     * @param maxBytes stop adding to a batch once it has this many bytes, 0 or less for no limit
+     * @param linger how long to wait for more messages, null or 0 to only take the messages already queued
+     * @return a new Dispatcher
+     * @throws IllegalArgumentException if maxMessages is less than 1
+     */
+    public Dispatcher createDispatcher(BatchMessageHandler handler, int maxMessages, long maxBytes, Duration linger);
+
+    /**
+     * Create a {@code RequestPipeline} that keeps up to {@code window} requests in flight, each with the
+     * given timeout.
+     *
+     * <pre>
+     * nc = Nats.connect()
+     * p = nc.createRequestPipeline(1024, Duration.ofSeconds(2));
+     * p.requestAll("lookup", keys.iterator(), true, (i, reply) -&gt; results.add(reply));
+     * </pre>
+     *
+     * @param window the most requests in flight at once
+     * @param timeout the time to wait for each reply
+     * @return a new RequestPipeline
+     * @throws IllegalArgumentException if the window is less than 1 or the timeout is null
+     */
+    public RequestPipeline createRequestPipeline(int window, Duration timeout);
+
     /**
      * Close a dispatcher. This will unsubscribe any subscriptions and stop the delivery thread.
      * 
@@ -245,6 +468,22 @@ public interface Connection extends AutoCloseable {
      */
     public void flush(Duration timeout) throws TimeoutException, InterruptedException;
 
+    /**
+     * Wait until fewer than {@code bytes} bytes of messages are waiting to be written to the server.
+     * Producers can use this to pace themselves against the connection, rather than filling the
+     * outgoing queue faster than the socket can drain it.
+     * 
+     * <p>While the connection is disconnected the queue doesn't drain, so this will usually wait for
+     * the full timeout.
+     * 
+     * @param bytes the size the outgoing queue has to drop below
+     * @param timeout the longest time to wait, null or 0 waits forever
+     * @return true if the queue is below the size, false if the timeout passed first or the connection closed
+     * @throws IllegalStateException if the connection is closed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitOutgoingBelow(long bytes, Duration timeout) throws InterruptedException;
+
     /**
      * Drain tells the connection to process in flight messages before closing.
      * 
@@ -0,0 +1,37 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client;
+
+/**
+ * A fixed set of event loop threads that read and write the sockets of many connections, set with
+ * {@link Options.Builder#eventLoopGroup(EventLoopGroup) eventLoopGroup()} in the options. Each connection
+ * is placed on one loop, in turn, when it connects, so a few threads can serve thousands of mostly idle
+ * connections instead of each holding a reader and a writer thread.
+ *
+ * <p>Groups are created with {@link Nats#createEventLoopGroup(int) Nats.createEventLoopGroup()}. Closing
+ * the group stops the loops, the connections still on them lose their socket and reconnect with their
+ * own threads. The group should be closed after the connections that use it.
+ */
+public interface EventLoopGroup extends AutoCloseable {
+
+    /**
+     * @return the number of event loop threads
+     */
+    public int getThreadCount();
+
+    /**
+     * Stop the event loops.
+     */
+    public void close();
+}
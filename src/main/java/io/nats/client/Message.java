@@ -20,6 +20,12 @@ package io.nats.client;
  * 
  * <p>The byte[] returned by {@link #getData() getData()} is not shared with any library code
  * and is safe to manipulate.
+ * 
+ * <p>If the connection was built with a {@link Options.Builder#payloadPoolSize(long) payload pool},
+ * the data array comes from the pool and may be longer than the payload, use
+ * {@link #getDataLength() getDataLength()} for the number of bytes in the message. The bytes
+ * after the payload hold the message's subject and reply to, and must not be modified. Call
+ * {@link #release() release()} when you are done with the data so the array can be reused.
  */
 public interface Message {
 
@@ -38,6 +44,24 @@ public interface Message {
 	 */
 	public byte[] getData();
 
+	/**
+	 * @return the number of bytes of data in the message, which can be less than the length
+	 *         of {@link #getData() getData()} for pooled payloads
+	 */
+	public default int getDataLength() {
+		return getData().length;
+	}
+
+	/**
+	 * Return the message's data array to the connection's payload pool. After this call
+	 * {@link #getData() getData()} returns null, so the array must not be used, or held onto.
+	 * Messages that don't use the pool ignore this call, as do messages that were already released.
+	 * 
+	 * <p>Release should only be called once, by the last code that uses the message.
+	 */
+	public default void release() {
+	}
+
 	/**
 	 * @return the Subscription associated with this message, may be owned by a Dispatcher
 	 */
@@ -24,6 +24,10 @@ public interface MessageHandler {
      * and can block all other messages being delivered.
      * 
      * <p>The thread used to call onMessage will be interrupted if the connection is closed, or the dispatcher is stopped.
+     * With an {@link Options.Builder#executor(java.util.concurrent.Executor) executor} the dispatcher runs as a task on
+     * one of the executor's threads, which is never interrupted, the dispatcher just stops handing out messages.
+     * With an {@link Options.Builder#executor(java.util.concurrent.Executor) executor} the dispatcher runs as a task on
+     * one of the executor's threads, which is never interrupted, the dispatcher just stops handing out messages.
      *
      * @param msg the received Message
      * @throws InterruptedException if the dispatcher interrupts this handler
@@ -147,6 +147,47 @@ public class Nats {
         return createConnection(options, false);
     }
 
+    /**
+     * Connect to the server with several connections that act as one. Each shard has its own socket, reader and
+     * writer thread, so a busy publisher can use more than one core and one TCP stream.
+     * 
+     * <p>Publishes, requests and subscriptions go to the shard picked by the hash of their subject, so messages
+     * on the same subject stay in order. Messages on different subjects may pass each other. Each dispatcher lives
+     * on one shard, picked in turn as they are created, along with all of its subscriptions. The statistics
+     * are the sums across the shards.
+     * 
+     * <p><strong>The shards are separate connections, so ordering between them is not kept.</strong> A subscription
+     * on one shard may reach the server after a publish made on another, for example with wildcard subscriptions or
+     * dispatchers, so flush after subscribing when that matters. The noEcho option only applies within a shard,
+     * so messages published on one shard are still delivered to subscriptions on the others.
+     * 
+     * <p>Every shard uses the same options, so listeners set in the options hear from each shard separately.
+     * 
+     * @param options the options object to use to create each shard
+     * @param shards the number of connections to make
+     * @throws IOException if a networking issue occurs, any shards that did connect are closed
+     * @throws InterruptedException if the current thread is interrupted
+     * @throws IllegalArgumentException if shards is less than 1
+     * @return the connection
+     */
+    public static Connection connectSharded(Options options, int shards) throws IOException, InterruptedException {
+        return NatsImpl.createShardedConnection(options, shards);
+    }
+
+    /**
+     * Create a group of event loop threads that connections can share for their sockets, see
+     * {@link Options.Builder#eventLoopGroup(EventLoopGroup) eventLoopGroup()} in the options builder.
+     * The threads start right away, and run until the group is closed.
+     * 
+     * @param threads the number of event loops, at least 1
+     * @throws IOException if a selector can't be opened
+     * @throws IllegalArgumentException if threads is less than 1
+     * @return the event loop group
+     */
+    public static EventLoopGroup createEventLoopGroup(int threads) throws IOException {
+        return NatsImpl.createEventLoopGroup(threads);
+    }
+
     /**
      * Try to connect in another thread, a connection listener is required to get
      * the connection.
@@ -24,11 +24,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.net.ssl.SSLContext;
 
 import io.nats.client.impl.DataPort;
 import io.nats.client.impl.SSLUtils;
+import io.nats.client.impl.SocketChannelDataPort;
 import io.nats.client.impl.SocketDataPort;
 
 /**
@@ -49,6 +52,70 @@ public class Options {
     // * update constructor that takes properties
     // * optional default in statics
 
+    /**
+     * How threads waiting on the connection's internal message queues, the writer, dispatchers and
+     * subscriptions in {@link Subscription#nextMessage(Duration) nextMessage()}, wait for the next message.
+     * See {@link Builder#waitStrategy(WaitStrategy) waitStrategy()} in the builder doc.
+     */
+    public enum WaitStrategy {
+        /**
+         * Poll the queue in a tight loop until a message arrives or the wait times out. This gives
+         * the lowest latency, but each waiting thread keeps a CPU busy, so it is only a good
+         * choice for services with a few connections and cores to spare.
+         */
+        BUSY_SPIN,
+
+        /**
+         * Poll the queue, yielding the CPU between each attempt, until a message arrives or the
+         * wait times out. Waiting threads still run constantly, but give way to other work.
+         */
+        YIELD,
+
+        /**
+         * Spin briefly before parking, based on how long recent waits on the same queue took.
+         * Queues that see a steady stream of messages spin through short gaps, while idle queues
+         * park right away.
+         */
+        ADAPTIVE,
+
+        /**
+         * Park right away and wait to be woken by the next message. This uses the least CPU,
+         * and is the best choice for applications with many mostly idle connections.
+         */
+        BLOCKING
+    }
+
+    /**
+     * What {@link Connection#publish(String, byte[]) publish} does when the outgoing queue is at the limits
+     * set with {@link Builder#maxOutgoingMessages(long) maxOutgoingMessages()} or
+     * {@link Builder#maxOutgoingBytes(long) maxOutgoingBytes()}. See
+     * {@link Builder#outgoingPolicy(OutgoingPolicy) outgoingPolicy()} in the builder doc.
+     */
+    public enum OutgoingPolicy {
+        /**
+         * Wait for the writer to make room, for up to the {@link Builder#outgoingTimeout(Duration) outgoing timeout},
+         * then throw an IllegalStateException.
+         * 
+         * <p>A publish on an {@link Builder#eventLoopGroup(EventLoopGroup) event loop} thread, from an inline
+         * dispatcher's handler or an inline reply stage, doesn't wait. The loop thread is the one that would make
+         * room, so it throws right away, like {@link #FAIL FAIL}.
+         */
+        BLOCK,
+
+        /**
+         * Throw an IllegalStateException right away, the message is not queued.
+         */
+        FAIL,
+
+        /**
+         * Remove the oldest published messages from the queue to make room. Protocol messages, like
+         * subscriptions and pings, are never removed, so the queue can go over the limit while one of them
+         * is at the front. A {@link PublishBatch PublishBatch} is removed whole. The number of messages
+         * removed is kept in {@link Statistics#getOutgoingDroppedCount() Statistics.getOutgoingDroppedCount()}.
+         */
+        DROP_OLDEST
+    }
+
     /**
      * Default server URL.
      *
@@ -102,12 +169,13 @@ public class Options {
     public static final Duration DEFAULT_PING_INTERVAL = Duration.ofMinutes(2);
 
     /**
-     * Default interval to clean up cancelled/timed out requests.
-     * A timer is used to clean up futures that were handed out but never completed
-     * via a message, {@link #getRequestCleanupInterval() getRequestCleanupInterval()}.
+     * Default interval to clean up cancelled/timed out requests, {@link #getRequestCleanupInterval() getRequestCleanupInterval()}.
      *
      * <p>This property is defined as 5 seconds.
+     * 
+     * @deprecated the interval is ignored, requests are removed as soon as they are answered, cancelled or time out
      */
+    @Deprecated
     public static final Duration DEFAULT_REQUEST_CLEANUP_INTERVAL = Duration.ofSeconds(5);
 
     /**
@@ -163,6 +231,27 @@ public class Options {
      */
     public static final String DEFAULT_INBOX_PREFIX = "_INBOX.";
 
+    /**
+     * Default wait strategy for the connection's internal queues, {@link WaitStrategy#ADAPTIVE ADAPTIVE}.
+     */
+    public static final WaitStrategy DEFAULT_WAIT_STRATEGY = WaitStrategy.ADAPTIVE;
+
+    /**
+     * Default size of the payload pool, {@value #DEFAULT_PAYLOAD_POOL_SIZE}, which disables it.
+     */
+    public static final long DEFAULT_PAYLOAD_POOL_SIZE = 0;
+
+    /**
+     * Default policy for a full outgoing queue, {@link OutgoingPolicy#BLOCK BLOCK}.
+     */
+    public static final OutgoingPolicy DEFAULT_OUTGOING_POLICY = OutgoingPolicy.BLOCK;
+
+    /**
+     * Default time a publish waits for room in the outgoing queue with the {@link OutgoingPolicy#BLOCK BLOCK}
+     * policy, {@value #DEFAULT_OUTGOING_TIMEOUT_MILLIS} milliseconds.
+     */
+    public static final long DEFAULT_OUTGOING_TIMEOUT_MILLIS = 5_000;
+
     static final String PFX = "io.nats.client.";
 
     /**
@@ -192,7 +281,10 @@ public class Options {
     /**
      * Property used to configure a builder from a Properties object. {@value #PROP_CLEANUP_INTERVAL}, see {@link Builder#requestCleanupInterval(Duration)
      * requestCleanupInterval}.
+     * 
+     * @deprecated the value is ignored, requests are removed as soon as they are answered, cancelled or time out
      */
+    @Deprecated
     public static final String PROP_CLEANUP_INTERVAL = PFX + "cleanupinterval";
     /**
      * Property used to configure a builder from a Properties object. {@value #PROP_CONNECTION_TIMEOUT}, see
@@ -298,6 +390,54 @@ public class Options {
      */
     public static final String PROP_INBOX_PREFIX = "inbox.prefix";
 
+    /**
+     * Property used to configure a builder from a Properties object. {@value #PROP_WAIT_STRATEGY}, see {@link Builder#waitStrategy(WaitStrategy)
+     * waitStrategy}. The value is the name of one of the {@link WaitStrategy WaitStrategy} constants.
+     */
+    public static final String PROP_WAIT_STRATEGY = PFX + "wait.strategy";
+
+    /**
+     * Property used to configure a builder from a Properties object. {@value #PROP_PAYLOAD_POOL_SIZE}, see {@link Builder#payloadPoolSize(long)
+     * payloadPoolSize}.
+     */
+    public static final String PROP_PAYLOAD_POOL_SIZE = PFX + "payload.pool.size";
+
+    /**
+     * Property used to configure a builder from a Properties object. {@value #PROP_MAX_OUTGOING_MESSAGES}, see {@link Builder#maxOutgoingMessages(long)
+     * maxOutgoingMessages}.
+     */
+    public static final String PROP_MAX_OUTGOING_MESSAGES = PFX + "outgoing.max.messages";
+
+    /**
+     * Property used to configure a builder from a Properties object. {@value #PROP_MAX_OUTGOING_BYTES}, see {@link Builder#maxOutgoingBytes(long)
+     * maxOutgoingBytes}.
+     */
+    public static final String PROP_MAX_OUTGOING_BYTES = PFX + "outgoing.max.bytes";
+
+    /**
+     * Property used to configure a builder from a Properties object. {@value #PROP_OUTGOING_POLICY}, see {@link Builder#outgoingPolicy(OutgoingPolicy)
+     * outgoingPolicy}. The value is the name of one of the {@link OutgoingPolicy OutgoingPolicy} constants.
+     */
+    public static final String PROP_OUTGOING_POLICY = PFX + "outgoing.policy";
+
+    /**
+     * Property used to configure a builder from a Properties object. {@value #PROP_OUTGOING_TIMEOUT}, see {@link Builder#outgoingTimeout(Duration)
+     * outgoingTimeout}.
+     */
+    public static final String PROP_OUTGOING_TIMEOUT = PFX + "outgoing.timeout";
+
+    /**
+     * Property used to configure a builder from a Properties object. {@value #PROP_DIRECT_PUBLISH}, see {@link Builder#directPublish()
+     * directPublish}.
+     */
+    public static final String PROP_DIRECT_PUBLISH = PFX + "publish.direct";
+
+    /**
+     * Property used to configure a builder from a Properties object. {@value #PROP_INLINE_REPLIES}, see {@link Builder#inlineReplies()
+     * inlineReplies}.
+     */
+    public static final String PROP_INLINE_REPLIES = PFX + "replies.inline";
+
     /**
      * Protocol key {@value #OPTION_VERBOSE}, see {@link Builder#verbose() verbose}.
      */
@@ -403,6 +543,18 @@ public class Options {
     private final ErrorListener errorListener;
     private final ConnectionListener connectionListener;
     private final String dataPortType;
+    private final WaitStrategy waitStrategy;
+    private final long payloadPoolSize;
+    private final long maxOutgoingMessages;
+    private final long maxOutgoingBytes;
+    private final OutgoingPolicy outgoingPolicy;
+    private final Duration outgoingTimeout;
+    private final boolean directPublish;
+    private final boolean inlineReplies;
+    private final Executor executor;
+    private final Executor replyExecutor;
+    private final EventLoopGroup eventLoopGroup;
+    private final ScheduledExecutorService scheduler;
 
     private final boolean trackAdvancedStats;
 
@@ -447,6 +599,18 @@ public class Options {
         private ErrorListener errorListener = null;
         private ConnectionListener connectionListener = null;
         private String dataPortType = DEFAULT_DATA_PORT_TYPE;
+        private WaitStrategy waitStrategy = DEFAULT_WAIT_STRATEGY;
+        private long payloadPoolSize = DEFAULT_PAYLOAD_POOL_SIZE;
+        private long maxOutgoingMessages = 0;
+        private long maxOutgoingBytes = 0;
+        private OutgoingPolicy outgoingPolicy = DEFAULT_OUTGOING_POLICY;
+        private Duration outgoingTimeout = Duration.ofMillis(DEFAULT_OUTGOING_TIMEOUT_MILLIS);
+        private boolean directPublish = false;
+        private boolean inlineReplies = false;
+        private Executor executor = null;
+        private Executor replyExecutor = null;
+        private EventLoopGroup eventLoopGroup = null;
+        private ScheduledExecutorService scheduler = null;
 
         /**
          * Constructs a new Builder with the default values.
@@ -612,6 +776,39 @@ public class Options {
             if (props.containsKey(PROP_INBOX_PREFIX)) {
                 this.inboxPrefix(props.getProperty(PROP_INBOX_PREFIX, DEFAULT_INBOX_PREFIX));
             }
+
+            if (props.containsKey(PROP_WAIT_STRATEGY)) {
+                this.waitStrategy = WaitStrategy.valueOf(props.getProperty(PROP_WAIT_STRATEGY).trim().toUpperCase());
+            }
+
+            if (props.containsKey(PROP_PAYLOAD_POOL_SIZE)) {
+                this.payloadPoolSize = Long.parseLong(props.getProperty(PROP_PAYLOAD_POOL_SIZE, "0").trim());
+            }
+
+            if (props.containsKey(PROP_MAX_OUTGOING_MESSAGES)) {
+                this.maxOutgoingMessages = Long.parseLong(props.getProperty(PROP_MAX_OUTGOING_MESSAGES, "0"));
+            }
+
+            if (props.containsKey(PROP_MAX_OUTGOING_BYTES)) {
+                this.maxOutgoingBytes = Long.parseLong(props.getProperty(PROP_MAX_OUTGOING_BYTES, "0"));
+            }
+
+            if (props.containsKey(PROP_OUTGOING_POLICY)) {
+                this.outgoingPolicy = OutgoingPolicy.valueOf(props.getProperty(PROP_OUTGOING_POLICY).trim().toUpperCase());
+            }
+
+            if (props.containsKey(PROP_OUTGOING_TIMEOUT)) {
+                int ms = Integer.parseInt(props.getProperty(PROP_OUTGOING_TIMEOUT, "-1"));
+                this.outgoingTimeout = (ms < 0) ? Duration.ofMillis(DEFAULT_OUTGOING_TIMEOUT_MILLIS) : Duration.ofMillis(ms);
+            }
+
+            if (props.containsKey(PROP_DIRECT_PUBLISH)) {
+                this.directPublish = Boolean.parseBoolean(props.getProperty(PROP_DIRECT_PUBLISH));
+            }
+
+            if (props.containsKey(PROP_INLINE_REPLIES)) {
+                this.inlineReplies = Boolean.parseBoolean(props.getProperty(PROP_INLINE_REPLIES));
+            }
         }
 
         static Object createInstanceOf(String className) {
@@ -883,15 +1080,14 @@ public class Options {
         }
 
         /**
-         * Set the interval between cleaning passes on outstanding request futures that are cancelled or timeout
-         * in the application code.
-         * 
-         * <p>The default value is probably reasonable, but this interval is useful in a very noisy network
-         * situation where lots of requests are used.
+         * Set the request cleanup interval, which is ignored. A request is removed as soon as it is answered,
+         * cancelled or times out, so there are no cleaning passes. The setter is kept so existing code still compiles.
          * 
-         * @param time the cleaning interval
+         * @param time the cleaning interval, ignored
          * @return the Builder for chaining
+         * @deprecated the interval is ignored
          */
+        @Deprecated
         public Builder requestCleanupInterval(Duration time) {
             this.requestCleanupInterval = time;
             return this;
@@ -1008,6 +1204,215 @@ public class Options {
             return this;
         }
 
+        /**
+         * Set how the connection's writer, dispatchers and subscriptions wait for messages
+         * when their queues are empty. Spinning strategies trade CPU for wake up latency, see
+         * {@link WaitStrategy WaitStrategy} for the choices. The default is
+         * {@link Options#DEFAULT_WAIT_STRATEGY ADAPTIVE}.
+         * 
+         * @param strategy the wait strategy, null restores the default
+         * @return the Builder for chaining
+         */
+        public Builder waitStrategy(WaitStrategy strategy) {
+            this.waitStrategy = (strategy != null) ? strategy : DEFAULT_WAIT_STRATEGY;
+            return this;
+        }
+
+        /**
+         * Read incoming payloads into buffers from a pool owned by the connection, instead of
+         * allocating arrays for each message. Each message takes one buffer that holds its payload
+         * followed by its subject and reply to. The pool holds up to {@code bytes} of idle buffers,
+         * in power of two size classes.
+         * 
+         * <p>With a pool, {@link Message#getData() Message.getData()} may return an array longer than
+         * the payload, applications must use {@link Message#getDataLength() getDataLength()}, must not
+         * modify the bytes after the payload, and should call {@link Message#release() release()} when they are done with each message.
+         * Messages that are never released are collected as usual, their buffers just aren't reused.
+         * 
+         * @param bytes the most bytes the pool keeps, 0 or less disables the pool
+         * @return the Builder for chaining
+         */
+        public Builder payloadPoolSize(long bytes) {
+            this.payloadPoolSize = Math.max(bytes, 0);
+            return this;
+        }
+
+        /**
+         * Limit the number of published messages waiting for the connection's writer. When the limit is reached,
+         * publish follows the {@link #outgoingPolicy(OutgoingPolicy) outgoing policy}. Protocol messages are not
+         * limited, but they count toward the total. Each message in a {@link PublishBatch PublishBatch} counts,
+         * and a batch larger than the limit is only queued once the queue is empty.
+         * 
+         * <p>The limit is soft when several threads publish at once. Each publisher checks for room without
+         * locking and queues its message afterwards, so publishers racing for the last spot can all get in, and
+         * the queue can go over the limit by up to one message, or batch, per concurrent publisher.
+         * 
+         * @param max the most messages to queue, 0 or less for no limit, which is the default
+         * @return the Builder for chaining
+         */
+        public Builder maxOutgoingMessages(long max) {
+            this.maxOutgoingMessages = Math.max(max, 0);
+            return this;
+        }
+
+        /**
+         * Limit the number of bytes of published messages waiting for the connection's writer. When the limit is
+         * reached, publish follows the {@link #outgoingPolicy(OutgoingPolicy) outgoing policy}. A message larger than
+         * the limit can still be published once the queue is empty.
+         * 
+         * <p>Like {@link #maxOutgoingMessages(long) maxOutgoingMessages()}, the limit is soft when several threads
+         * publish at once. Publishers racing for the last of the room can all get in, so the queue can go over the
+         * limit by up to one message, or batch, per concurrent publisher.
+         * 
+         * @param max the most bytes to queue, 0 or less for no limit, which is the default
+         * @return the Builder for chaining
+         */
+        public Builder maxOutgoingBytes(long max) {
+            this.maxOutgoingBytes = Math.max(max, 0);
+            return this;
+        }
+
+        /**
+         * Set what publish does when the outgoing queue is full, see {@link OutgoingPolicy OutgoingPolicy}.
+         * The default is {@link Options#DEFAULT_OUTGOING_POLICY BLOCK}. The policy only applies if
+         * {@link #maxOutgoingMessages(long) maxOutgoingMessages} or {@link #maxOutgoingBytes(long) maxOutgoingBytes} is set.
+         * 
+         * @param policy the policy, null restores the default
+         * @return the Builder for chaining
+         */
+        public Builder outgoingPolicy(OutgoingPolicy policy) {
+            this.outgoingPolicy = (policy != null) ? policy : DEFAULT_OUTGOING_POLICY;
+            return this;
+        }
+
+        /**
+         * Set how long publish waits for room in the outgoing queue with the {@link OutgoingPolicy#BLOCK BLOCK} policy.
+         * 
+         * @param time the time to wait, 0 waits until there is room, null restores the default
+         * @return the Builder for chaining
+         */
+        public Builder outgoingTimeout(Duration time) {
+            this.outgoingTimeout = (time != null) ? time : Duration.ofMillis(DEFAULT_OUTGOING_TIMEOUT_MILLIS);
+            return this;
+        }
+
+        /**
+         * Let publishing threads write their message to the socket themselves when nothing is waiting
+         * to be written, instead of queueing it and waking the writer thread. This cuts the latency of
+         * a publish, or a request, on a quiet connection. When the writer is busy, or another thread is
+         * writing, messages are queued as usual, and they are always written in the order they were published.
+         * 
+         * <p>A direct write can block the publisher until the socket takes the message, just like the writer
+         * thread would be blocked. Connections on an {@link #eventLoopGroup(EventLoopGroup) event loop}
+         * always queue.
+         * 
+         * @return the Builder for chaining
+         */
+        public Builder directPublish() {
+            this.directPublish = true;
+            return this;
+        }
+
+        /**
+         * Run the connection's work on an executor, which can be shared by many connections, instead of
+         * on threads the connection creates. Dispatchers become tasks that are only submitted while
+         * they have messages, so idle dispatchers don't hold a thread. The reader, writer, reconnect
+         * and drain tasks run on the executor too. The reader and writer block on their thread for as
+         * long as the connection is connected, so the executor must have enough threads for two long
+         * lived tasks per connection plus the busy dispatchers, or the dispatchers starve. A cached
+         * thread pool or, on newer JVMs, a virtual thread per task executor works. A fixed size pool,
+         * such as a {@link java.util.concurrent.ForkJoinPool ForkJoinPool} sized to the number of cores,
+         * runs out of threads after a few connections.
+         * 
+         * <p>If the executor rejects a dispatcher's task, the rejection is passed to the error listener
+         * and the task is submitted again when the next message arrives.
+         * 
+         * <p>The connection never shuts the executor down. By default each connection creates its own
+         * threads, one for each dispatcher.
+         * 
+         * @param executor the executor, null restores the default
+         * @return the Builder for chaining
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Match replies to their requests on the connection's reader thread, instead of handing them to the
+         * thread that handles request traffic. This saves a thread handoff for each reply.
+         * 
+         * <p>The catch is that the futures returned by {@link Connection#request(String, byte[]) request()} are
+         * completed on the reader thread too, unless there is a {@link #replyExecutor(Executor) reply executor}.
+         * Dependent stages added with the non-async methods of {@link java.util.concurrent.CompletableFuture
+         * CompletableFuture}, like {@code thenApply}, then run on the reader thread and hold up every incoming
+         * message while they do. They can't make blocking calls on the connection, like a synchronous request
+         * or {@code flush()}, which throw an IllegalStateException on the reader thread.
+         * 
+         * @return the Builder for chaining
+         */
+        public Builder inlineReplies() {
+            this.inlineReplies = true;
+            return this;
+        }
+
+        /**
+         * Complete the futures returned by {@link Connection#request(String, byte[]) request()} on this executor.
+         * 
+         * <p>By default the futures are completed on the thread that handles request traffic, or on the reader
+         * thread with {@link #inlineReplies() inlineReplies()}. Dependent stages added with the non-async methods
+         * of {@link java.util.concurrent.CompletableFuture CompletableFuture} run on that thread, and hold up the
+         * replies behind them. Applications that attach slow or blocking stages should set an executor here, or
+         * use the async variants.
+         * 
+         * @param executor the executor, null completes replies on the thread that matched them
+         * @return the Builder for chaining
+         */
+        public Builder replyExecutor(Executor executor) {
+            this.replyExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Read and write the connection's socket on one of the group's event loops, instead of on a reader
+         * and a writer thread. Many connections can share a group, so a few threads serve them all. Each
+         * loop thread parses the messages for its connections, so message handlers should still run on
+         * dispatchers, and inline handlers must not block.
+         * 
+         * <p>The group only handles the default data port type, any other is used with the usual threads, as
+         * are TLS connections. The connection never closes the group.
+         * 
+         * <p>Connection and error listeners are still called on a thread owned by the connection. It is only
+         * started when there is a callback to make, and ends after it has been idle for a while, so connections
+         * with nothing to report don't hold it.
+         * 
+         * @param group the event loop group, from {@link Nats#createEventLoopGroup(int) Nats.createEventLoopGroup()},
+         *              null restores the default reader and writer threads
+         * @return the Builder for chaining
+         */
+        public Builder eventLoopGroup(EventLoopGroup group) {
+            this.eventLoopGroup = group;
+            return this;
+        }
+
+        /**
+         * Run the connection's timed work, its pings, request timeouts and retries, and its drain checks,
+         * on this scheduler. By default every connection shares one small scheduler, with daemon threads,
+         * that the library creates.
+         * 
+         * <p>The tasks are short, but a ping can wait for room in the outgoing queue with the
+         * {@link OutgoingPolicy#BLOCK BLOCK} policy, so a scheduler shared by many connections should
+         * have more than one thread. The connection cancels its tasks when it closes, and never shuts
+         * the scheduler down.
+         * 
+         * @param scheduler the scheduler, null restores the shared default
+         * @return the Builder for chaining
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
         /**
          * Build an Options object from this Builder.
          * 
@@ -1081,6 +1486,18 @@ public class Options {
         this.errorListener = b.errorListener;
         this.connectionListener = b.connectionListener;
         this.dataPortType = b.dataPortType;
+        this.waitStrategy = b.waitStrategy;
+        this.payloadPoolSize = b.payloadPoolSize;
+        this.maxOutgoingMessages = b.maxOutgoingMessages;
+        this.maxOutgoingBytes = b.maxOutgoingBytes;
+        this.outgoingPolicy = b.outgoingPolicy;
+        this.outgoingTimeout = b.outgoingTimeout;
+        this.directPublish = b.directPublish;
+        this.inlineReplies = b.inlineReplies;
+        this.executor = b.executor;
+        this.replyExecutor = b.replyExecutor;
+        this.eventLoopGroup = b.eventLoopGroup;
+        this.scheduler = b.scheduler;
         this.trackAdvancedStats = b.trackAdvancedStats;
     }
 
@@ -1112,10 +1529,97 @@ public class Options {
         return this.dataPortType;
     }
 
+    /**
+     * @return the wait strategy for the connection's internal queues, see {@link Builder#waitStrategy(WaitStrategy) waitStrategy()} in the builder doc
+     */
+    public WaitStrategy getWaitStrategy() {
+        return this.waitStrategy;
+    }
+
+    /**
+     * @return the most bytes kept in the payload pool, 0 if it is disabled, see {@link Builder#payloadPoolSize(long) payloadPoolSize()} in the builder doc
+     */
+    public long getPayloadPoolSize() {
+        return this.payloadPoolSize;
+    }
+
+    /**
+     * @return the most messages to queue for the writer, 0 for no limit, see {@link Builder#maxOutgoingMessages(long) maxOutgoingMessages()} in the builder doc
+     */
+    public long getMaxOutgoingMessages() {
+        return this.maxOutgoingMessages;
+    }
+
+    /**
+     * @return the most bytes to queue for the writer, 0 for no limit, see {@link Builder#maxOutgoingBytes(long) maxOutgoingBytes()} in the builder doc
+     */
+    public long getMaxOutgoingBytes() {
+        return this.maxOutgoingBytes;
+    }
+
+    /**
+     * @return what publish does when the outgoing queue is full, see {@link Builder#outgoingPolicy(OutgoingPolicy) outgoingPolicy()} in the builder doc
+     */
+    public OutgoingPolicy getOutgoingPolicy() {
+        return this.outgoingPolicy;
+    }
+
+    /**
+     * @return how long publish waits for room in the outgoing queue, see {@link Builder#outgoingTimeout(Duration) outgoingTimeout()} in the builder doc
+     */
+    public Duration getOutgoingTimeout() {
+        return this.outgoingTimeout;
+    }
+
+    /**
+     * @return whether publishers can write to the socket themselves, see {@link Builder#directPublish() directPublish()} in the builder doc
+     */
+    public boolean isDirectPublish() {
+        return this.directPublish;
+    }
+
+    /**
+     * @return whether replies are completed on the reader thread, see {@link Builder#inlineReplies() inlineReplies()} in the builder doc
+     */
+    public boolean isInlineReplies() {
+        return this.inlineReplies;
+    }
+
+    /**
+     * @return the executor for the connection's work, or null, see {@link Builder#executor(Executor) executor()} in the builder doc
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * @return the executor that completes request futures, or null, see {@link Builder#replyExecutor(Executor) replyExecutor()} in the builder doc
+     */
+    public Executor getReplyExecutor() {
+        return this.replyExecutor;
+    }
+
+    /**
+     * @return the event loop group for the connection's socket, or null, see {@link Builder#eventLoopGroup(EventLoopGroup) eventLoopGroup()} in the builder doc
+     */
+    public EventLoopGroup getEventLoopGroup() {
+        return this.eventLoopGroup;
+    }
+
+    /**
+     * @return the scheduler for the connection's timed work, or null, see {@link Builder#scheduler(ScheduledExecutorService) scheduler()} in the builder doc
+     */
+    public ScheduledExecutorService getScheduler() {
+        return this.scheduler;
+    }
+
     /**
      * @return the data port described by these options
      */
     public DataPort buildDataPort() {
+        if (this.eventLoopGroup != null && DEFAULT_DATA_PORT_TYPE.equals(dataPortType)) {
+            return new SocketChannelDataPort(); // the event loops need a channel
+        }
         return (DataPort) Options.Builder.createInstanceOf(dataPortType);
     }
 
@@ -1226,8 +1730,11 @@ public class Options {
     }
 
     /**
-     * @return the request cleanup interval, see {@link Builder#requestCleanupInterval(Duration) requestCleanupInterval()} in the builder doc
+     * @return the request cleanup interval, which is ignored, see {@link Builder#requestCleanupInterval(Duration) requestCleanupInterval()}
+     *          in the builder doc
+     * @deprecated the interval is ignored
      */
+    @Deprecated
     public Duration getRequestCleanupInterval() {
         return requestCleanupInterval;
     }
@@ -0,0 +1,71 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client;
+
+/**
+ * A PublishBatch collects messages that belong together and sends them as one chunk. The messages
+ * are encoded into the batch's own buffer as they are published, and closing the batch hands the
+ * whole buffer to the connection with one queue operation, so it usually goes out in one socket write.
+ *
+ * <pre>
+ * try (PublishBatch batch = nc.batch()) {
+ *     for (Row row : snapshot) {
+ *         batch.publish("snapshot." + row.table(), row.bytes());
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>Batches are created from the connection using {@link Connection#batch() batch()}. Nothing is sent
+ * until the batch is closed, so messages published directly on the connection in the meantime go first.
+ * The batch holds a copy of every message until then, so very large jobs should close a batch every few
+ * thousand messages. A batch is not thread safe, it is meant to be filled by one thread.
+ */
+public interface PublishBatch extends AutoCloseable {
+
+    /**
+     * Add a message to the batch, see {@link Connection#publish(String, byte[]) publish()}.
+     *
+     * @param subject the subject to send the message to
+     * @param body the message body
+     * @throws IllegalStateException if the batch or the connection is closed
+     */
+    public void publish(String subject, byte[] body);
+
+    /**
+     * Add a message with a replyTo subject to the batch, see {@link Connection#publish(String, String, byte[]) publish()}.
+     *
+     * @param subject the subject to send the message to
+     * @param replyTo the subject the receiver should send the response to
+     * @param body the message body
+     * @throws IllegalStateException if the batch or the connection is closed
+     */
+    public void publish(String subject, String replyTo, byte[] body);
+
+    /**
+     * @return the number of messages in the batch
+     */
+    public int getMessageCount();
+
+    /**
+     * @return the number of bytes the batch will write, including the protocol lines
+     */
+    public long getSizeInBytes();
+
+    /**
+     * Send the messages in the batch, if there are any. Closing the batch again does nothing.
+     *
+     * @throws IllegalStateException if the connection is closed, or the reconnect buffer is exceeded
+     */
+    public void close();
+}
@@ -0,0 +1,81 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A RequestPipeline keeps a fixed number of requests in flight, for jobs that send a large number of requests.
+ * Each request is sent with {@link Connection#requestWithTimeout(String, byte[], java.time.Duration) requestWithTimeout()}
+ * using the pipeline's timeout. Once the window is full, submitting another request blocks until one of the
+ * outstanding requests gets its reply or times out. This keeps the responders busy without building up an
+ * unbounded number of futures.
+ *
+ * <p>Pipelines are created from the connection using
+ * {@link Connection#createRequestPipeline(int, java.time.Duration) createRequestPipeline()}. A pipeline
+ * has no threads of its own, so there is nothing to close. One pipeline can be shared by several threads,
+ * and they share its window.
+ */
+public interface RequestPipeline {
+
+    /**
+     * A ReplyHandler receives the replies for {@link RequestPipeline#requestAll(String, Iterator, boolean, ReplyHandler) requestAll()}.
+     */
+    public interface ReplyHandler {
+        /**
+         * Called with each reply, on the thread that called requestAll.
+         * 
+         * @param index the position of the request in the iterator, starting at 0
+         * @param reply the reply, or null if the request timed out or failed
+         */
+        public void onReply(long index, Message reply);
+    }
+
+    /**
+     * @return the most requests this pipeline will have in flight at once
+     */
+    public int getWindow();
+
+    /**
+     * @return the number of requests sent through this pipeline that are waiting for a reply
+     */
+    public int getInFlight();
+
+    /**
+     * Send a request, waiting for room in the window first if it is full.
+     * 
+     * @param subject the subject for the service that will handle the request
+     * @param data the content of the message
+     * @return a Future for the response, completed exceptionally with a TimeoutException if there is no reply in time
+     * @throws InterruptedException if the thread is interrupted while waiting for room in the window
+     */
+    public CompletableFuture<Message> submit(String subject, byte[] data) throws InterruptedException;
+
+    /**
+     * Send a request to the subject for each body, keeping the window full, and pass the replies to the handler. This
+     * call returns once every request has been handled. A stream can be sent with {@code requestAll(subject, stream.iterator(), ...)}.
+     * 
+     * <p>If {@code ordered} is true, the replies are passed to the handler in the order of the requests. Replies that arrive
+     * early are held until the ones before them are handled, and still count toward the window. Otherwise, each reply
+     * is passed to the handler soon after it arrives.
+     * 
+     * @param subject the subject for the service that will handle the requests
+     * @param bodies the content of each request, the iterator is only used on the calling thread
+     * @param ordered whether to hand the replies to the handler in the order of the requests
+     * @param handler the handler for the replies
+     * @throws InterruptedException if the thread is interrupted while waiting for replies, some requests may not have been sent
+     */
+    public void requestAll(String subject, Iterator<byte[]> bodies, boolean ordered, ReplyHandler handler) throws InterruptedException;
+}
@@ -49,4 +49,13 @@ public interface Statistics {
      * @return the total number of messages dropped by this connection across all slow consumers.
      */
     public long getDroppedCount();
+
+    /**
+     * @return the total number of published messages removed from the outgoing queue by the
+     *         {@link Options.OutgoingPolicy#DROP_OLDEST DROP_OLDEST} policy, counting each message in a
+     *         dropped {@link PublishBatch PublishBatch} chunk.
+     */
+    public default long getOutgoingDroppedCount() {
+        return 0;
+    }
 }
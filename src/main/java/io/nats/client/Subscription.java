@@ -14,6 +14,7 @@
 package io.nats.client;
 
 import java.time.Duration;
+import java.util.List;
 
 /**
  * A Subscription encapsulates an incoming queue of messages associated with a single
@@ -72,6 +73,22 @@ public interface Subscription extends Consumer {
      */
     public Message nextMessage(Duration timeout) throws InterruptedException, IllegalStateException;
 
+    /**
+     * Read up to {@code max} messages for a subscription, blocking until at least one is available.
+     * Only the first message is waited for, the rest are the messages already queued behind it.
+     * 
+     * <p>Returns an empty list if the call times out. The timeout works like the one in
+     * {@link #nextMessage(Duration) nextMessage()}.
+     * 
+     * @param max the most messages to return
+     * @param timeout the maximum time to wait for the first message
+     * @return the next messages for this subscriber, in the order they arrived
+     * @throws IllegalArgumentException if max is less than 1
+     * @throws IllegalStateException if the subscription belongs to a dispatcher, or is not active
+     * @throws InterruptedException if one occurs while waiting for the messages
+     */
+    public List<Message> nextMessages(int max, Duration timeout) throws InterruptedException, IllegalStateException;
+
     /**
      * Unsubscribe this subscription and stop listening for messages.
      * 
@@ -0,0 +1,168 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A connection's socket on an event loop. The loop calls the connection's reader when the socket
+ * is readable, and its writer when messages are queued or the socket has room again. Everything
+ * but {@link #requestWrite() requestWrite()} and {@link #close() close()} runs on the loop thread.
+ */
+class EventLoopChannel {
+    private final NatsConnection connection;
+    private final NatsEventLoop loop;
+    private final SocketChannel channel;
+    private final AtomicBoolean writeRequested;
+    private final AtomicBoolean closed;
+    private final NatsEventLoop.Task writeTask; // queued on the loop for each requested write
+    private SelectionKey key;
+
+    EventLoopChannel(NatsConnection connection, NatsEventLoop loop, SocketChannel channel) {
+        this.connection = connection;
+        this.loop = loop;
+        this.channel = channel;
+        this.writeRequested = new AtomicBoolean(false);
+        this.closed = new AtomicBoolean(false);
+        this.writeTask = new NatsEventLoop.Task(this, this::write);
+    }
+
+    NatsEventLoop getLoop() {
+        return this.loop;
+    }
+
+    // Switches the socket to non-blocking and adds it to the loop's selector, waiting for the loop to do it
+    void register() throws IOException, InterruptedException {
+        this.channel.configureBlocking(false);
+
+        CompletableFuture<Void> registered = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                this.key = this.channel.register(this.loop.getSelector(), SelectionKey.OP_READ, this);
+                registered.complete(null);
+            } catch (Exception ex) {
+                registered.completeExceptionally(ex);
+            }
+        };
+
+        if (this.loop.inLoop()) {
+            task.run();
+        } else if (this.loop.isRunning()) {
+            this.loop.execute(new NatsEventLoop.Task(this, task));
+        } else {
+            throw new IOException("Event loop stopped.");
+        }
+
+        try {
+            registered.get();
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    // Called from any thread when messages are queued, several calls before the loop gets to it
+    // only write once
+    void requestWrite() {
+        if (this.writeRequested.compareAndSet(false, true)) {
+            this.loop.execute(this.writeTask);
+        }
+    }
+
+    void onReady(SelectionKey readyKey) {
+        try {
+            if (readyKey.isReadable()) {
+                this.connection.getReader().readAvailable(this.channel);
+            }
+
+            if (readyKey.isValid() && readyKey.isWritable()) {
+                this.write();
+            }
+        } catch (CancelledKeyException ex) {
+            // Closed while we were working
+        } catch (IOException ex) {
+            this.fail(ex);
+        }
+    }
+
+    private void write() {
+        this.writeRequested.set(false);
+
+        if (this.closed.get() || this.key == null || !this.key.isValid()) {
+            return;
+        }
+
+        try {
+            int result = this.connection.getWriter().writeAvailable(this.channel);
+
+            if (result == NatsConnectionWriter.LOOP_WRITE_BLOCKED) {
+                this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                this.key.interestOps(SelectionKey.OP_READ);
+
+                if (result == NatsConnectionWriter.LOOP_WRITE_MORE) {
+                    this.requestWrite(); // behind the other connections' work
+                }
+            }
+        } catch (CancelledKeyException ex) {
+            // Closed while we were working
+        } catch (IOException ex) {
+            this.fail(ex);
+        }
+    }
+
+    // The connection reconnects on another thread, which closes this channel
+    void fail(Exception ex) {
+        if (!this.closed.get()) {
+            this.connection.handleCommunicationIssue(ex);
+        }
+    }
+
+    // Called by the loop when the reader, writer or a task throws something unexpected, like a handler
+    // on an inline dispatcher throwing an Error. Stops watching the socket, so it can't throw again
+    // before the connection closes this channel, and fails only this connection.
+    void failOnLoop(Throwable ex) {
+        if (this.key != null) {
+            this.key.cancel();
+        }
+        this.fail((ex instanceof Exception) ? (Exception) ex : new IOException(ex));
+    }
+
+    // Takes the socket off the loop and lets the reader and writer know they are stopped. Doesn't
+    // wait, the reader and writer futures from stop() complete once the loop has done it.
+    void close() {
+        if (!this.closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        Runnable task = () -> {
+            if (this.key != null) {
+                this.key.cancel();
+            }
+            this.connection.getReader().stoppedOnLoop();
+            this.connection.getWriter().stoppedOnLoop();
+        };
+
+        if (this.loop.inLoop() || !this.loop.isRunning()) {
+            task.run();
+        } else {
+            this.loop.execute(new NatsEventLoop.Task(this, task));
+        }
+    }
+}
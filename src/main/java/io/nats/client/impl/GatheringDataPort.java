@@ -0,0 +1,35 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A data port that can write a sequence of buffers in a single call. The connection
+ * writer uses this to send message bodies directly from the arrays passed to publish,
+ * rather than copying them into its send buffer first.
+ */
+public interface GatheringDataPort extends DataPort {
+
+    /**
+     * Write the remaining bytes of the first {@code count} buffers, in order. This
+     * method should not return until all of the bytes are written.
+     *
+     * @param srcs the buffers to write
+     * @param count the number of buffers, starting at index 0, to write
+     * @throws IOException if the data port is unable to write the data
+     */
+    public void write(ByteBuffer[] srcs, int count) throws IOException;
+}
@@ -0,0 +1,64 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+/**
+ * A queue backing a {@link MessageQueue MessageQueue}, which can also add a chain of messages,
+ * linked through their {@code next} field, in a single step. It only has the operations MessageQueue
+ * uses, the queues behind it can't be iterated so they aren't collections.
+ */
+interface MessageChainQueue {
+
+    /**
+     * Add a message, any thread may call this.
+     * 
+     * @param msg the message
+     * @return true, the queues are unbounded
+     */
+    boolean offer(NatsMessage msg);
+
+    /**
+     * Add {@code count} messages, starting at {@code first} and following {@code next} to
+     * {@code last}, as if each had been offered in turn by the calling thread.
+     * 
+     * @param first the first message in the chain
+     * @param last the last message in the chain
+     * @param count the number of messages in the chain
+     */
+    void offerChain(NatsMessage first, NatsMessage last, int count);
+
+    /**
+     * Remove the oldest message, only one thread may call this at a time.
+     * 
+     * @return the oldest message or null if there isn't one
+     */
+    NatsMessage poll();
+
+    /**
+     * Look at the oldest message without removing it, only the thread that polls may call this.
+     * 
+     * @return the oldest message or null if there isn't one
+     */
+    NatsMessage peek();
+
+    /**
+     * @return the number of messages, which may include messages a producer hasn't finished adding
+     */
+    int size();
+
+    /**
+     * @return true if the queue has no messages
+     */
+    boolean isEmpty();
+}
@@ -14,12 +14,18 @@
 package io.nats.client.impl;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
+import io.nats.client.Options;
+import io.nats.client.Options.WaitStrategy;
+
 class MessageQueue {
     private final static int STOPPED = 0;
     private final static int RUNNING = 1;
@@ -27,19 +33,64 @@ class MessageQueue {
 
     private final AtomicLong length;
     private final AtomicLong sizeInBytes;
+    private final AtomicLong chunkedMessages; // messages past the first in each encoded chunk, see messageCount()
     private final AtomicInteger running;
     private final boolean singleThreadedReader;
-    private final ConcurrentLinkedQueue<NatsMessage> queue;
+    private final MessageChainQueue queue;
     private final ConcurrentLinkedQueue<Thread> waiters;
 
+    // In single reader mode the queue is an MpscArrayQueue, which tracks its own length, and
+    // there is at most one waiting thread. The reader only takes the lock if other threads can take
+    // messages too, through filter() or dropOldest(). Otherwise the queue is an MpscIntrusiveQueue,
+    // and readers take turns with the lock.
+    private volatile Thread waitingReader;
+    private final Object readLock;
+    private final boolean lockReads;
+
+    private final WaitStrategy waitStrategy;
+
+    // Only used by the ADAPTIVE strategy, updates may race but it is only an estimate
+    private volatile long averageWaitNanos;
+
+    // Messages staged by the connection reader, linked through next, and pushed together by
+    // pushStaged(). Only the reader writes these, so other threads may see stale counts.
+    private NatsMessage stagedHead;
+    private NatsMessage stagedTail;
+    private int stagedCount;
+    private long stagedBytes;
+
+    // Called after messages are pushed and when the queue starts draining or resumes, so a consumer
+    // that runs as a task, rather than waiting on the queue, can schedule itself
+    private volatile Runnable listener;
+
     MessageQueue(boolean singleReaderMode) {
-        this.queue = new ConcurrentLinkedQueue<>();
+        this(singleReaderMode, Options.DEFAULT_WAIT_STRATEGY);
+    }
+
+    MessageQueue(boolean singleReaderMode, WaitStrategy waitStrategy) {
+        this(singleReaderMode, waitStrategy, false);
+    }
+
+    // Set sharedReads if a single reader queue will be filtered or have messages dropped
+    MessageQueue(boolean singleReaderMode, WaitStrategy waitStrategy, boolean sharedReads) {
+        this.waitStrategy = waitStrategy;
         this.running = new AtomicInteger(RUNNING);
         this.sizeInBytes = new AtomicLong(0);
-        this.length = new AtomicLong(0);
-        
-        this.waiters = new ConcurrentLinkedQueue<>();
+        this.chunkedMessages = new AtomicLong(0);
         this.singleThreadedReader = singleReaderMode;
+
+        if (singleReaderMode) {
+            this.queue = new MpscArrayQueue();
+            this.length = null;
+            this.waiters = null;
+        } else {
+            this.queue = new MpscIntrusiveQueue();
+            this.length = new AtomicLong(0);
+            this.waiters = new ConcurrentLinkedQueue<>();
+        }
+
+        this.readLock = new Object();
+        this.lockReads = !singleReaderMode || sharedReads;
     }
 
     boolean isSingleReaderMode() {
@@ -62,11 +113,24 @@ class MessageQueue {
     void resume() {
         this.running.set(RUNNING);
         signalAll();
+        notifyListener();
     }
 
     void drain() {
         this.running.set(DRAINING);
         signalAll();
+        notifyListener();
+    }
+
+    void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    private void notifyListener() {
+        Runnable l = this.listener;
+        if (l != null) {
+            l.run();
+        }
     }
 
     boolean isDrained() {
@@ -74,6 +138,14 @@ class MessageQueue {
     }
 
     void signalOne() {
+        if (this.singleThreadedReader) {
+            Thread t = this.waitingReader;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+            return;
+        }
+
         Thread t = waiters.poll();
         if (t != null) {
             LockSupport.unpark(t);
@@ -81,12 +153,17 @@ class MessageQueue {
     }
 
     void signalIfNotEmpty() {
-        if (this.length.get() > 0) {
+        if (this.length() > 0) {
             signalOne();
         }
     }
 
     void signalAll() {
+        if (this.singleThreadedReader) {
+            signalOne();
+            return;
+        }
+
         Thread t = waiters.poll();
         while(t != null) {
             LockSupport.unpark(t);
@@ -95,45 +172,136 @@ class MessageQueue {
     }
 
     void push(NatsMessage msg) {
-        this.queue.add(msg);
+        this.queue.offer(msg);
         this.sizeInBytes.getAndAdd(msg.getSizeInBytes());
-        this.length.incrementAndGet();
+        if (this.length != null) {
+            this.length.incrementAndGet();
+        }
+        int chunked = msg.getMessageCount() - 1;
+        if (chunked > 0) {
+            this.chunkedMessages.addAndGet(chunked);
+        }
+        signalOne();
+        notifyListener();
+    }
+
+    // Stage a message to be pushed with the next call to pushStaged(). Staged messages count toward
+    // the length and size of the queue. Returns true if nothing was staged before this message.
+    // Only a single thread, the connection reader, may stage messages.
+    boolean stage(NatsMessage msg) {
+        boolean first = (this.stagedHead == null);
+
+        if (first) {
+            this.stagedHead = msg;
+        } else {
+            this.stagedTail.next = msg;
+        }
+
+        this.stagedTail = msg;
+        this.stagedCount++;
+        this.stagedBytes += msg.getSizeInBytes();
+        return first;
+    }
+
+    // Push the staged messages with one append to the queue and one signal
+    void pushStaged() {
+        if (this.stagedHead == null) {
+            return;
+        }
+
+        this.queue.offerChain(this.stagedHead, this.stagedTail, this.stagedCount);
+        this.sizeInBytes.getAndAdd(this.stagedBytes);
+        if (this.length != null) {
+            this.length.addAndGet(this.stagedCount);
+        }
+
+        // Clear these after the push, so the messages are never missing from the counts
+        this.stagedHead = null;
+        this.stagedTail = null;
+        this.stagedCount = 0;
+        this.stagedBytes = 0;
+
         signalOne();
+        notifyListener();
+    }
+
+    private NatsMessage poll() {
+        if (!this.lockReads) {
+            return this.queue.poll();
+        }
+
+        synchronized (this.readLock) {
+            return this.queue.poll();
+        }
+    }
+
+    private void removed(long count, long size) {
+        this.sizeInBytes.addAndGet(-size);
+        if (this.length != null) {
+            this.length.addAndGet(-count);
+        }
+    }
+
+    // Called for each message taken off the queue, along with removed()
+    private void removedChunk(NatsMessage msg) {
+        int chunked = msg.getMessageCount() - 1;
+        if (chunked > 0) {
+            this.chunkedMessages.addAndGet(-chunked);
+        }
     }
 
-    public static final int MAX_SPINS = 200;
-    public static final int SPIN_WAIT = 50;
-    public static final int MAX_SPIN_TIME = SPIN_WAIT * MAX_SPINS;
+    // Adaptive waits spin for up to twice the recent average wait, but never longer than this
+    public static final long MAX_ADAPTIVE_SPIN_NANOS = 50_000;
 
     NatsMessage waitForTimeout(Duration timeout) throws InterruptedException {
+        return waitForTimeout(timeout, true);
+    }
+
+    // Waits like accumulate() until there is a message, without taking it. Returns false if the
+    // timeout passes or the queue stops first. Only works in single reader mode.
+    boolean waitForMessages(Duration timeout) throws InterruptedException {
+        if (!this.singleThreadedReader) {
+            throw new IllegalStateException("Waiting for messages is only supported in single reader mode.");
+        }
+
+        if (!this.isRunning()) {
+            return false;
+        }
+
+        return this.queue.peek() != null || this.waitForTimeout(timeout, false) != null;
+    }
+
+    // Polls, or only peeks when take is false, the first message to show up
+    private NatsMessage next(boolean take) {
+        return take ? this.poll() : this.queue.peek();
+    }
+
+    private NatsMessage waitForTimeout(Duration timeout, boolean take) throws InterruptedException {
         long timeoutNanos = (timeout != null) ? timeout.toNanos() : -1;
         NatsMessage retVal = null;
 
         if (timeoutNanos >= 0) {
             Thread t = Thread.currentThread();
             long start = System.nanoTime();
+            long spinNanos = spinTime(timeoutNanos);
 
-            // Semi-spin for at most MAX_SPIN_TIME
-            if (timeoutNanos > MAX_SPIN_TIME) {
-                int count = 0;
-                while (this.isRunning() && (retVal = this.queue.poll()) == null && count < MAX_SPINS) {
-
-                    if (this.isDraining()) {
-                        break;
-                    }
+            if (spinNanos != 0) {
+                retVal = spin(start, spinNanos, take);
 
-                    count++;
-                    LockSupport.parkNanos(SPIN_WAIT);
+                if (this.waitStrategy == WaitStrategy.BUSY_SPIN || this.waitStrategy == WaitStrategy.YIELD) {
+                    return retVal; // these never park
                 }
             }
 
             if (retVal != null) {
+                recordWait(System.nanoTime() - start);
                 return retVal;
             }
             
             long now = start;
+            long waitStart = start;
 
-            while (this.isRunning() && (retVal = this.queue.poll()) == null) {
+            while (this.isRunning() && (retVal = this.next(take)) == null) {
                 
                 if (this.isDraining()) {
                     break;
@@ -141,7 +309,7 @@ class MessageQueue {
                 
                 if (timeoutNanos > 0) { // If it is 0, keep it as zero, otherwise reduce based on time
                     now = System.nanoTime();
-                    timeoutNanos = timeoutNanos - (now - start); //include the semi-spin time
+                    timeoutNanos = timeoutNanos - (now - start); //include the spin time
                     start = now;
 
                     if (timeoutNanos <= 0) { // just in case we hit it exactly
@@ -149,37 +317,102 @@ class MessageQueue {
                     }
                 }
 
-                waiters.add(t);
-                if (timeoutNanos == 0) {
-                    LockSupport.park();
+                if (this.singleThreadedReader) {
+                    this.waitingReader = t;
+                    if (this.queue.isEmpty()) { // check again, a push may not have seen us waiting
+                        park(timeoutNanos);
+                    }
+                    this.waitingReader = null;
                 } else {
-                    LockSupport.parkNanos(timeoutNanos);
+                    waiters.add(t);
+                    park(timeoutNanos);
+                    waiters.remove(t);
                 }
-                waiters.remove(t);
 
                 if (Thread.interrupted()) {
                     throw new InterruptedException("Interrupted during timeout");
                 }
             }
+
+            recordWait(System.nanoTime() - waitStart);
         }
 
         return retVal;
     }
 
+    // Returns how long to spin before parking, -1 means until the timeout, which may be forever
+    private long spinTime(long timeoutNanos) {
+        switch (this.waitStrategy) {
+            case BUSY_SPIN:
+            case YIELD:
+                return (timeoutNanos == 0) ? -1 : timeoutNanos;
+            case ADAPTIVE:
+                long average = this.averageWaitNanos;
+                if (average >= MAX_ADAPTIVE_SPIN_NANOS) {
+                    return 0;
+                }
+                long spin = Math.min(2 * average + 1, MAX_ADAPTIVE_SPIN_NANOS);
+                return (timeoutNanos == 0) ? spin : Math.min(spin, timeoutNanos);
+            default:
+                return 0;
+        }
+    }
+
+    private NatsMessage spin(long start, long spinNanos, boolean take) throws InterruptedException {
+        NatsMessage retVal = null;
+
+        while (this.isRunning() && (retVal = this.next(take)) == null) {
+
+            if (this.isDraining()) {
+                break;
+            }
+
+            if (spinNanos > 0 && System.nanoTime() - start >= spinNanos) {
+                break;
+            }
+
+            if (this.waitStrategy != WaitStrategy.BUSY_SPIN) {
+                Thread.yield();
+            }
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted during timeout");
+            }
+        }
+
+        return retVal;
+    }
+
+    // Keeps a moving average, weighted 1/8 toward the latest, of how long adaptive waits took
+    private void recordWait(long nanos) {
+        if (this.waitStrategy == WaitStrategy.ADAPTIVE) {
+            long average = this.averageWaitNanos;
+            this.averageWaitNanos = average + ((Math.min(nanos, 2 * MAX_ADAPTIVE_SPIN_NANOS) - average) >> 3);
+        }
+    }
+
+    private void park(long timeoutNanos) {
+        if (timeoutNanos == 0) {
+            LockSupport.park();
+        } else {
+            LockSupport.parkNanos(timeoutNanos);
+        }
+    }
+
     NatsMessage pop(Duration timeout) throws InterruptedException {
         if (!this.isRunning()) {
             return null;
         }
 
-        NatsMessage retVal = this.queue.poll();
+        NatsMessage retVal = this.poll();
 
         if (retVal == null && timeout != null) {
             retVal = waitForTimeout(timeout);
         }
 
         if(retVal != null) {
-            this.sizeInBytes.getAndAdd(-retVal.getSizeInBytes());
-            this.length.decrementAndGet();
+            removed(1, retVal.getSizeInBytes());
+            removedChunk(retVal);
             signalIfNotEmpty();
         }
 
@@ -207,56 +440,149 @@ class MessageQueue {
             return null;
         }
 
-        NatsMessage msg = this.queue.poll();
+        if (this.queue.peek() == null) {
+            // Wait without taking the message, it is taken below where it is counted
+            if (waitForTimeout(timeout, false) == null || !this.isRunning()) {
+                return null;
+            }
+        }
 
-        if (msg == null) {
-            msg = waitForTimeout(timeout);
-            
-            if (!this.isRunning() || (msg == null)) {
+        NatsMessage msg;
+
+        synchronized (this.readLock) {
+            msg = this.queue.poll();
+
+            if (msg == null) { // dropped while we waited
                 return null;
             }
+
+            // Counted before dropOldest() can check the limits, so it doesn't drop to make room for it
+            long first = msg.getSizeInBytes();
+            removed(1, first);
+            removedChunk(msg);
+
+            long size = first;
+            long count = 1;
+            NatsMessage cursor = (maxMessages <= 1 || size >= maxSize) ? null : msg;
+
+            while (cursor != null) {
+                NatsMessage next = this.queue.peek();
+                if (next != null) {
+                    long s = next.getSizeInBytes();
+
+                    if (maxSize<0 || (size + s) < maxSize) { // keep going
+                        size += s;
+                        count++;
+                        
+                        cursor.next = this.queue.poll();
+                        cursor = cursor.next;
+                        removedChunk(cursor);
+
+                        if (count == maxMessages) {
+                            break;
+                        }
+                    } else { // One more is too far
+                        break;
+                    }
+                } else { // Didn't meet max condition
+                    break;
+                }
+            }
+
+            if (count > 1) {
+                removed(count - 1, size - first);
+            }
         }
 
-        long size = msg.getSizeInBytes();
+        signalIfNotEmpty();
+        return msg;
+    }
 
-        if (maxMessages <= 1 || size >= maxSize) {
-            this.sizeInBytes.addAndGet(-size);
-            this.length.decrementAndGet();
-            signalIfNotEmpty();
-            return msg;
+    // Pops a batch into messages, using the same limits as accumulate(), but in either reader mode. Waits like
+    // pop() for the first message, then up to linger for more, until the batch has maxMessages or at least
+    // maxSize bytes. A negative limit is ignored. Returns the number of messages added.
+    int popBatch(List<? super NatsMessage> messages, int maxMessages, long maxSize, Duration timeout, Duration linger)
+            throws InterruptedException {
+        if (!this.isRunning()) {
+            return 0;
         }
 
-        long count = 1;
-        NatsMessage cursor = msg;
+        NatsMessage msg = this.poll();
 
-        while (cursor != null) {
-            NatsMessage next = this.queue.peek();
-            if (next != null) {
-                long s = next.getSizeInBytes();
+        if (msg == null && timeout != null) {
+            msg = waitForTimeout(timeout);
+        }
 
-                if (maxSize<0 || (size + s) < maxSize) { // keep going
-                    size += s;
-                    count++;
-                    
-                    cursor.next = this.queue.poll();
-                    cursor = cursor.next;
+        int count = 0;
+        long size = 0;
+        long lingerNanos = (linger != null) ? linger.toNanos() : 0;
+        long deadline = System.nanoTime() + lingerNanos;
 
-                    if (count == maxMessages) {
-                        break;
+        while (msg != null) {
+            messages.add(msg);
+            count++;
+            size += msg.getSizeInBytes();
+            removedChunk(msg);
+
+            if ((maxMessages >= 0 && count >= maxMessages) || (maxSize >= 0 && size >= maxSize)) {
+                break;
+            }
+
+            msg = this.poll();
+
+            if (msg == null && lingerNanos > 0 && this.isRunning()) {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining > 0) {
+                    try {
+                        msg = waitForTimeout(Duration.ofNanos(remaining));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt(); // return what we have, the caller sees the interrupt next
                     }
-                } else { // One more is too far
-                    break;
                 }
-            } else { // Didn't meet max condition
-                break;
             }
         }
 
-        this.sizeInBytes.addAndGet(-size);
-        this.length.addAndGet(-count);
+        if (count > 0) {
+            removed(count, size);
+            signalIfNotEmpty();
+        }
 
-        signalIfNotEmpty();
-        return msg;
+        return count;
+    }
+
+    // Removes published messages from the front of the queue until it is within both limits, or the
+    // front is a protocol message, which can't be dropped. A negative limit is ignored. The message limit
+    // and the result count the messages in encoded chunks, see messageCount(). Can be called by any thread,
+    // and takes turns with the reader.
+    long dropOldest(long maxMessages, long maxBytes) {
+        return dropOldest(maxMessages, maxBytes, null);
+    }
+
+    // Same as dropOldest(maxMessages, maxBytes) but passes each dropped message to onDrop, if it isn't null
+    long dropOldest(long maxMessages, long maxBytes, Consumer<NatsMessage> onDrop) {
+        long count = 0;
+
+        synchronized (this.readLock) {
+            while ((maxMessages >= 0 && this.messageCount() > maxMessages) || (maxBytes >= 0 && this.sizeInBytes() > maxBytes)) {
+                NatsMessage oldest = this.queue.peek();
+
+                if (oldest == null || oldest.isProtocol()) {
+                    break;
+                }
+
+                this.queue.poll();
+                removed(1, oldest.getSizeInBytes());
+                removedChunk(oldest);
+                count += oldest.getMessageCount();
+
+                if (onDrop != null) {
+                    onDrop.accept(oldest);
+                }
+            }
+        }
+
+        return count;
     }
 
     // Returns a message or null
@@ -266,11 +592,24 @@ class MessageQueue {
 
     // Just for testing
     long length() {
-        return this.length.get();
+        if (this.length == null) {
+            return this.queue.size() + this.stagedCount;
+        }
+        return this.length.get() + this.stagedCount;
+    }
+
+    // Like length(), but an encoded chunk counts as the messages in it
+    long messageCount() {
+        return this.length() + this.chunkedMessages.get();
+    }
+
+    // True if there are no pushed messages, unlike length() this ignores staged messages
+    boolean isEmpty() {
+        return this.queue.isEmpty();
     }
 
     long sizeInBytes() {
-        return this.sizeInBytes.get();
+        return this.sizeInBytes.get() + this.stagedBytes;
     }
 
     void filter(Predicate<NatsMessage> p) {
@@ -278,20 +617,24 @@ class MessageQueue {
             throw new IllegalStateException("Filter is only supported when the queue is paused");
         }
     
-        ConcurrentLinkedQueue<NatsMessage> newQueue = new ConcurrentLinkedQueue<>();
-        NatsMessage cursor = this.queue.poll();
-
-        while (cursor != null) {
-            if (!p.test(cursor)) {
-                newQueue.add(cursor);
-            } else {
-                this.sizeInBytes.addAndGet(-cursor.getSizeInBytes());
-                this.length.decrementAndGet();
+        synchronized (this.readLock) {
+            ArrayList<NatsMessage> newQueue = new ArrayList<>();
+            NatsMessage cursor = this.queue.poll();
+
+            while (cursor != null) {
+                if (!p.test(cursor)) {
+                    newQueue.add(cursor);
+                } else {
+                    removed(1, cursor.getSizeInBytes());
+                    removedChunk(cursor);
+                }
+                
+                cursor = this.queue.poll();
             }
-            
-            cursor = this.queue.poll();
-        }
 
-        this.queue.addAll(newQueue);
+            for (NatsMessage msg : newQueue) {
+                this.queue.offer(msg);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,181 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * An unbounded multi-producer, single-consumer queue of messages, stored in a linked list
+ * of fixed size array chunks.
+ *
+ * <p>Each producer claims a slot with a single increment of the padded producer sequence and
+ * then stores its message in the chunk that owns that slot, adding a chunk if it is the first
+ * to get that far. The consumer reads slots in sequence order, so messages come out in the order
+ * their slots were claimed. A claimed slot that hasn't been filled yet looks empty to the consumer
+ * until the producer stores its message.
+ *
+ * <p>Only one thread may call {@link #poll() poll()} or {@link #peek() peek()} at a time.
+ */
+class MpscArrayQueue implements MessageChainQueue {
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    static final class Chunk {
+        final long index;
+        final AtomicReferenceArray<NatsMessage> slots;
+        volatile Chunk next;
+
+        Chunk(long index) {
+            this.index = index;
+            this.slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+        }
+    }
+
+    private static final AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "next");
+    private static final AtomicReferenceFieldUpdater<NatsMessage, NatsMessage> NEXT_MESSAGE =
+            AtomicReferenceFieldUpdater.newUpdater(NatsMessage.class, NatsMessage.class, "next");
+
+    private final PaddedAtomicLong producerSequence;
+    private final PaddedAtomicLong consumerSequence;
+
+    // Hint for producers, it may trail the newest chunk but is never ahead of it
+    private volatile Chunk producerChunk;
+
+    // Written by the consumer, read by producers as a starting point if their hint is too new
+    private volatile Chunk consumerChunk;
+
+    MpscArrayQueue() {
+        Chunk first = new Chunk(0);
+        this.producerChunk = first;
+        this.consumerChunk = first;
+        this.producerSequence = new PaddedAtomicLong();
+        this.consumerSequence = new PaddedAtomicLong();
+    }
+
+    public boolean offer(NatsMessage msg) {
+        if (msg == null) {
+            throw new NullPointerException();
+        }
+
+        long sequence = this.producerSequence.getAndIncrement();
+        Chunk chunk = chunkFor(sequence >>> CHUNK_SHIFT);
+        chunk.slots.lazySet((int) (sequence & CHUNK_MASK), msg);
+        return true;
+    }
+
+    // Claims all of the slots with one increment, the chain may span chunks
+    public void offerChain(NatsMessage first, NatsMessage last, int count) {
+        long sequence = this.producerSequence.getAndAdd(count);
+        NatsMessage msg = first;
+        Chunk chunk = null;
+
+        for (int i = 0; i < count; i++, sequence++) {
+            long index = sequence >>> CHUNK_SHIFT;
+
+            if (chunk == null || chunk.index != index) {
+                chunk = chunkFor(index);
+            }
+
+            // Unlink before the store, once the message is visible the consumer owns next
+            NatsMessage next = msg.next;
+            NEXT_MESSAGE.lazySet(msg, null);
+            chunk.slots.lazySet((int) (sequence & CHUNK_MASK), msg);
+            msg = next;
+        }
+    }
+
+    private Chunk chunkFor(long index) {
+        Chunk chunk = this.producerChunk;
+
+        // The consumer can't pass a slot that hasn't been filled, so its chunk is never after ours
+        if (chunk.index > index) {
+            chunk = this.consumerChunk;
+        }
+
+        while (chunk.index < index) {
+            Chunk next = chunk.next;
+
+            if (next == null) {
+                Chunk added = new Chunk(chunk.index + 1);
+                next = NEXT.compareAndSet(chunk, null, added) ? added : chunk.next;
+            }
+
+            chunk = next;
+        }
+
+        if (this.producerChunk.index < chunk.index) {
+            this.producerChunk = chunk;
+        }
+
+        return chunk;
+    }
+
+    // Returns the chunk holding the consumer's next slot, or null if no producer has added it yet
+    private Chunk consumerChunkFor(long sequence) {
+        Chunk chunk = this.consumerChunk;
+
+        if (chunk.index < (sequence >>> CHUNK_SHIFT)) {
+            chunk = chunk.next;
+
+            if (chunk != null) {
+                this.consumerChunk = chunk;
+            }
+        }
+
+        return chunk;
+    }
+
+    public NatsMessage poll() {
+        long sequence = this.consumerSequence.get();
+        Chunk chunk = consumerChunkFor(sequence);
+
+        if (chunk == null) {
+            return null;
+        }
+
+        int slot = (int) (sequence & CHUNK_MASK);
+        NatsMessage msg = chunk.slots.get(slot);
+
+        if (msg != null) {
+            chunk.slots.lazySet(slot, null);
+            this.consumerSequence.lazySet(sequence + 1);
+        }
+
+        return msg;
+    }
+
+    public NatsMessage peek() {
+        long sequence = this.consumerSequence.get();
+        Chunk chunk = consumerChunkFor(sequence);
+
+        if (chunk == null) {
+            return null;
+        }
+
+        return chunk.slots.get((int) (sequence & CHUNK_MASK));
+    }
+
+    // Includes slots that have been claimed but not filled yet
+    public int size() {
+        long size = this.producerSequence.get() - this.consumerSequence.get();
+        return (int) Math.min(Math.max(size, 0), Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+}
@@ -0,0 +1,133 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * An unbounded multi-producer, single-consumer queue that links messages through their
+ * {@code next} field, so queueing a message doesn't allocate anything. This is the intrusive
+ * queue described by Dmitry Vyukov: a producer swaps itself in as the newest node and then links
+ * the previous newest node to it, while the consumer follows the links from the oldest node. A stub
+ * message keeps the list from ever being empty, so the consumer never has to race a producer for
+ * the last node.
+ *
+ * <p>A message can only be in one queue at a time, and its {@code next} field belongs to the queue
+ * until it is polled. Polled messages are returned with {@code next} cleared.
+ *
+ * <p>Only one thread may call {@link #poll() poll()} or {@link #peek() peek()} at a time.
+ */
+class MpscIntrusiveQueue implements MessageChainQueue {
+    private static final AtomicReferenceFieldUpdater<MpscIntrusiveQueue, NatsMessage> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(MpscIntrusiveQueue.class, NatsMessage.class, "head");
+    private static final AtomicReferenceFieldUpdater<NatsMessage, NatsMessage> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(NatsMessage.class, NatsMessage.class, "next");
+
+    private final NatsMessage stub;
+
+    // Newest node, swapped by producers
+    private volatile NatsMessage head;
+
+    // Oldest node, only touched by the consumer
+    private NatsMessage tail;
+
+    MpscIntrusiveQueue() {
+        this.stub = new NatsMessage();
+        this.head = this.stub;
+        this.tail = this.stub;
+    }
+
+    public boolean offer(NatsMessage msg) {
+        if (msg == null) {
+            throw new NullPointerException();
+        }
+
+        NEXT.lazySet(msg, null);
+        NatsMessage prev = HEAD.getAndSet(this, msg);
+        prev.next = msg; // Until this store the consumer sees the queue end at prev
+        return true;
+    }
+
+    // The chain is already linked, so it is spliced in with a single swap
+    public void offerChain(NatsMessage first, NatsMessage last, int count) {
+        NEXT.lazySet(last, null);
+        NatsMessage prev = HEAD.getAndSet(this, last);
+        prev.next = first;
+    }
+
+    public NatsMessage poll() {
+        NatsMessage oldest = this.tail;
+        NatsMessage next = oldest.next;
+
+        if (oldest == this.stub) {
+            if (next == null) {
+                return null;
+            }
+            this.tail = next;
+            oldest = next;
+            next = next.next;
+        }
+
+        if (next != null) {
+            this.tail = next;
+            NEXT.lazySet(oldest, null);
+            return oldest;
+        }
+
+        if (oldest != this.head) {
+            return null; // a producer has swapped in a node, but hasn't linked it yet
+        }
+
+        // oldest is the only node, put the stub behind it so we can take it
+        offer(this.stub);
+        next = oldest.next;
+
+        if (next != null) {
+            this.tail = next;
+            NEXT.lazySet(oldest, null);
+            return oldest;
+        }
+
+        return null;
+    }
+
+    public NatsMessage peek() {
+        NatsMessage oldest = this.tail;
+
+        if (oldest == this.stub) {
+            return oldest.next;
+        }
+
+        return oldest;
+    }
+
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    // Walks the list, MessageQueue keeps its own count instead of calling this
+    public int size() {
+        int size = 0;
+        NatsMessage cursor = this.tail;
+
+        while (cursor != null && size < Integer.MAX_VALUE) {
+            if (cursor != this.stub) {
+                size++;
+            }
+            cursor = cursor.next;
+        }
+
+        return size;
+    }
+}
@@ -23,36 +23,45 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
+import io.nats.client.BatchMessageHandler;
 import io.nats.client.Connection;
 import io.nats.client.ConnectionListener;
 import io.nats.client.Consumer;
 import io.nats.client.Dispatcher;
 import io.nats.client.ErrorListener;
+import io.nats.client.EventLoopGroup;
 import io.nats.client.Message;
 import io.nats.client.MessageHandler;
 import io.nats.client.NUID;
 import io.nats.client.Options;
+import io.nats.client.PublishBatch;
+import io.nats.client.RequestPipeline;
 import io.nats.client.Statistics;
 import io.nats.client.Subscription;
 import io.nats.client.ConnectionListener.Events;
@@ -96,18 +105,29 @@ class NatsConnection implements Connection {
 
     private NatsConnectionReader reader;
     private NatsConnectionWriter writer;
+    private EventLoopChannel loopChannel; // set while the socket is on an event loop
+    private PayloadPool payloadPool; // null unless the options turn it on
 
     private AtomicReference<NatsServerInfo> serverInfo;
 
-    private Map<String, NatsSubscription> subscribers;
+    private SubscriptionMap subscribers;
     private Map<String, NatsDispatcher> dispatchers; // use a concurrent map so we get more consistent iteration
                                                      // behavior
-    private Map<String, CompletableFuture<Message>> responses;
+    private ResponseMap responses;
+    private Map<String, ResponseMap.ResponseFuture> oldStyleResponses; // old style replies come to a whole inbox
+    private TimingWheel timeouts;
+    private Runnable timeoutTick; // advances the wheel, and runs again until the wheel is empty
+    private volatile ScheduledFuture<?> timeoutTicker; // only scheduled while requests are waiting
+    private java.util.function.Consumer<ResponseMap.ResponseFuture> doneHandler; // shared by every request
+    private AtomicLong nextResponseToken;
     private ConcurrentLinkedDeque<CompletableFuture<Boolean>> pongQueue;
+    private AtomicInteger pingsOut; // pings queued or written whose pong hasn't arrived
 
     private String mainInbox;
+    private byte[] mainInboxPrefix; // the main inbox without the *, request tokens follow it
     private AtomicReference<NatsDispatcher> inboxDispatcher;
-    private Timer timer;
+    private ScheduledExecutorService scheduler;
+    private List<ScheduledFuture<?>> scheduledTasks; // the repeating tasks, cancelled on close
 
     private AtomicLong nextSid;
     private NUID nuid;
@@ -117,6 +137,7 @@ class NatsConnection implements Connection {
     private AtomicBoolean blockPublishForDrain;
 
     private ExecutorService callbackRunner;
+    static final long CALLBACK_THREAD_IDLE_SECONDS = 30;
 
     NatsConnection(Options options) {
         this.options = options;
@@ -130,25 +151,43 @@ class NatsConnection implements Connection {
         this.reconnectWaiter.complete(Boolean.TRUE);
 
         this.dispatchers = new ConcurrentHashMap<>();
-        this.subscribers = new ConcurrentHashMap<>();
-        this.responses = new ConcurrentHashMap<>();
+        this.subscribers = new SubscriptionMap();
+        this.responses = new ResponseMap();
+        this.oldStyleResponses = new ConcurrentHashMap<>();
+        this.timeouts = new TimingWheel(this::expireResponse);
+        this.timeoutTick = guarded(this::tickTimeouts);
+        this.doneHandler = this::responseDone;
+        this.nextResponseToken = new AtomicLong(1);
 
         this.nextSid = new AtomicLong(1);
         this.nuid = new NUID();
         this.mainInbox = createInbox() + ".*";
+        this.mainInboxPrefix = this.mainInbox.substring(0, this.mainInbox.length() - 1).getBytes(StandardCharsets.UTF_8);
 
         this.lastError = new AtomicReference<>();
 
         this.serverInfo = new AtomicReference<>();
         this.inboxDispatcher = new AtomicReference<>();
         this.pongQueue = new ConcurrentLinkedDeque<>();
+        this.pingsOut = new AtomicInteger();
         this.draining = new AtomicReference<>();
         this.blockPublishForDrain = new AtomicBoolean();
 
+        if (this.options.getPayloadPoolSize() > 0) {
+            this.payloadPool = new PayloadPool(this.options.getPayloadPoolSize());
+        }
+
         this.reader = new NatsConnectionReader(this);
         this.writer = new NatsConnectionWriter(this);
 
-        this.callbackRunner = Executors.newSingleThreadExecutor();
+        // One thread keeps the callbacks in order, it ends when idle so quiet connections don't hold one
+        ThreadPoolExecutor callbacks = new ThreadPoolExecutor(1, 1, CALLBACK_THREAD_IDLE_SECONDS, TimeUnit.SECONDS,
+                                                                new LinkedBlockingQueue<>());
+        callbacks.allowCoreThreadTimeOut(true);
+        this.callbackRunner = callbacks;
+
+        ScheduledExecutorService s = this.options.getScheduler();
+        this.scheduler = (s != null) ? s : SharedScheduler.get();
     }
 
     // Connect is only called after creation
@@ -242,9 +281,9 @@ class NatsConnection implements Connection {
             return;
         }
 
-        this.subscribers.forEach((sid, sub) -> {
+        this.subscribers.forEach((sub) -> {
             if (sub.getDispatcher() == null && !sub.isDraining()) {
-                sendSubscriptionMessage(sub.getSID(), sub.getSubject(), sub.getQueueName(), true);
+                sendSubscriptionMessage(sub.getSIDString(), sub.getSubject(), sub.getQueueName(), true);
             }
         });
 
@@ -309,8 +348,18 @@ class NatsConnection implements Connection {
             upgradeToSecureIfNeeded();
 
             // start the reader and writer after we secured the connection, if necessary
-            this.reader.start(this.dataPortFuture);
-            this.writer.start(this.dataPortFuture);
+            NatsEventLoop loop = eventLoopFor(this.dataPort);
+
+            if (loop != null) {
+                EventLoopChannel ch = new EventLoopChannel(this, loop, ((SocketChannelDataPort) this.dataPort).getChannel());
+                ch.register();
+                this.loopChannel = ch;
+                this.reader.startOnLoop(loop.getThread());
+                this.writer.startOnLoop(ch::requestWrite);
+            } else {
+                this.reader.start(this.dataPortFuture);
+                this.writer.start(this.dataPortFuture);
+            }
 
             this.sendConnect(serverURI);
             Future<Boolean> pongFuture = sendPing();
@@ -319,29 +368,17 @@ class NatsConnection implements Connection {
                 pongFuture.get(connectTimeout.toNanos(), TimeUnit.NANOSECONDS);
             }
 
-            if (this.timer == null) {
-                this.timer = new Timer("Nats Connection Timer");
-
-                long pingMillis = this.options.getPingInterval().toMillis();
-
-                if (pingMillis > 0) {
-                    this.timer.schedule(new TimerTask() {
-                        public void run() {
-                            if (isConnected()) {
-                                softPing(); // The timer always uses the standard queue
-                            }
-                        }
-                    }, pingMillis, pingMillis);
-                }
+            if (this.scheduledTasks == null) {
+                this.scheduledTasks = new ArrayList<>();
 
-                long cleanMillis = this.options.getRequestCleanupInterval().toMillis();
+                long pingNanos = this.options.getPingInterval().toNanos();
 
-                if (cleanMillis > 0) {
-                    this.timer.schedule(new TimerTask() {
-                        public void run() {
-                            cleanResponses(false);
+                if (pingNanos > 0) {
+                    this.scheduledTasks.add(this.scheduler.scheduleWithFixedDelay(guarded(() -> {
+                        if (isConnected()) {
+                            softPing(); // The scheduler always uses the standard queue
                         }
-                    }, cleanMillis, cleanMillis);
+                    }), pingNanos, pingNanos, TimeUnit.NANOSECONDS));
                 }
             }
 
@@ -404,6 +441,17 @@ class NatsConnection implements Connection {
         }
     }
 
+    // Repeating tasks on the scheduler stop at their first exception, so report it instead
+    private Runnable guarded(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                processException(ex);
+            }
+        };
+    }
+
     // Called from reader/writer thread
     void handleCommunicationIssue(Exception io) {
         // If we are connecting or disconnecting, note exception and leave
@@ -421,16 +469,35 @@ class NatsConnection implements Connection {
 
         // Spawn a thread so we don't have timing issues with
         // waiting on read/write threads
-        String name = (this.getOptions().getConnectionName() != null) ? this.getOptions().getConnectionName()
-                : "Nats Connection";
-        Thread t = new Thread(() -> {
+        execute(() -> {
             try {
                 this.closeSocket(true);
             } catch (InterruptedException e) {
                 processException(e);
             }
-        }, name + " Reconnect");
-        t.start();
+        }, "Reconnect");
+    }
+
+    // Runs the task on the executor from the options, or on a new thread named for the connection
+    void execute(Runnable task, String purpose) {
+        Executor executor = this.options.getExecutor();
+
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            String name = (this.options.getConnectionName() != null) ? this.options.getConnectionName() : "Nats Connection";
+            new Thread(task, name + " " + purpose).start();
+        }
+    }
+
+    // Runs the task once on the connection's scheduler after the delay, returns false if the scheduler rejected it
+    boolean scheduleOnce(Runnable task, Duration delay) {
+        try {
+            this.scheduler.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
     }
 
     // Close socket is called when another connect attempt is possible
@@ -506,24 +573,33 @@ class NatsConnection implements Connection {
         }
 
         closeSocketImpl();
+        this.writer.cancelUnsent();
 
         this.dispatchers.forEach((nuid, d) -> {
             d.stop(false);
         });
 
-        this.subscribers.forEach((sid, sub) -> {
+        this.subscribers.forEach((sub) -> {
             sub.invalidate();
         });
 
         this.dispatchers.clear();
         this.subscribers.clear();
 
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
+        if (this.scheduledTasks != null) {
+            this.scheduledTasks.forEach((task) -> {
+                task.cancel(false);
+            });
+            this.scheduledTasks = null;
         }
 
-        cleanResponses(true);
+        cancelResponses();
+
+        ScheduledFuture<?> ticker = this.timeoutTicker;
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+        this.timeouts.clear();
 
         cleanUpPongQueue();
 
@@ -539,6 +615,8 @@ class NatsConnection implements Connection {
             statusLock.unlock();
         }
 
+        this.writer.signalOutgoing(); // wake publishers waiting for room
+
         // Stop the error handler code
         callbackRunner.shutdown();
         try {
@@ -556,6 +634,20 @@ class NatsConnection implements Connection {
         }
     }
 
+    // The event loop for a plain socket channel, when the options have a group, otherwise the
+    // reader and writer get their own threads
+    private NatsEventLoop eventLoopFor(DataPort port) {
+        EventLoopGroup group = this.options.getEventLoopGroup();
+
+        if (!(group instanceof NatsEventLoopGroup) || !(port instanceof SocketChannelDataPort)
+                || ((SocketChannelDataPort) port).isSecure()) {
+            return null;
+        }
+
+        NatsEventLoop loop = ((NatsEventLoopGroup) group).next();
+        return loop.isRunning() ? loop : null;
+    }
+
     // Should only be called from closeSocket or close
     void closeSocketImpl() {
         this.currentServerURI = null;
@@ -564,6 +656,13 @@ class NatsConnection implements Connection {
         this.reader.stop();
         this.writer.stop();
 
+        // Take the socket off its event loop, which completes the reader and writer futures
+        EventLoopChannel ch = this.loopChannel;
+        if (ch != null) {
+            ch.close();
+            this.loopChannel = null;
+        }
+
         // Close the current socket and cancel anyone waiting for it
         this.dataPortFuture.cancel(true);
 
@@ -588,6 +687,8 @@ class NatsConnection implements Connection {
         } catch (Exception ex) {
             processException(ex);
         }
+
+        cleanUpPongQueue(); // the writer may have registered a ping before it stopped
     }
 
     void cleanUpPongQueue() {
@@ -606,7 +707,34 @@ class NatsConnection implements Connection {
     }
 
     public void publish(String subject, String replyTo, byte[] body) {
+        publish(subject, replyTo, body, null);
+    }
+
+    public CompletableFuture<Boolean> publishAsync(String subject, byte[] body) {
+        return this.publishAsync(subject, null, body);
+    }
+
+    public CompletableFuture<Boolean> publishAsync(String subject, String replyTo, byte[] body) {
+        CompletableFuture<Boolean> ack = new CompletableFuture<>();
+        publish(subject, replyTo, body, ack);
+        return ack;
+    }
+
+    // The ack, if there is one, is completed by the writer's next ping after the message is written
+    void publish(String subject, String replyTo, byte[] body, CompletableFuture<Boolean> ack) {
+        checkPublish(subject, replyTo, body);
+
+        if (body == null) {
+            body = EMPTY_BODY;
+        }
+
+        NatsMessage msg = new NatsMessage(subject, replyTo, body, options.supportUTF8Subjects());
+        msg.setPongFuture(ack);
+        publishMessage(msg);
+    }
 
+    // Checks the connection and the arguments for a publish, a null body is allowed
+    void checkPublish(String subject, String replyTo, byte[] body) {
         if (isClosed()) {
             throw new IllegalStateException("Connection is Closed");
         } else if (blockPublishForDrain.get()) {
@@ -621,23 +749,90 @@ class NatsConnection implements Connection {
             throw new IllegalArgumentException("ReplyTo cannot be the empty string");
         }
 
-        if (body == null) {
-            body = EMPTY_BODY;
-        } else if (body.length > this.getMaxPayload() && this.getMaxPayload() > 0) {
+        if (body != null && body.length > this.getMaxPayload() && this.getMaxPayload() > 0) {
             throw new IllegalArgumentException(
                     "Message payload size exceed server configuration " + body.length + " vs " + this.getMaxPayload());
         }
+    }
 
-        NatsMessage msg = new NatsMessage(subject, replyTo, body, options.supportUTF8Subjects());
+    public PublishBatch batch() {
+        if (isClosed()) {
+            throw new IllegalStateException("Connection is Closed");
+        } else if (isDraining()) {
+            throw new IllegalStateException("Connection is Draining");
+        }
+
+        return new NatsPublishBatch(this);
+    }
 
+    // Queues a checked message, following the reconnect buffer and outgoing limits
+    void publishMessage(NatsMessage msg) {
         if ((this.status == Status.RECONNECTING || this.status == Status.DISCONNECTED)
                 && !this.writer.canQueue(msg, options.getReconnectBufferSize())) {
             throw new IllegalStateException(
                     "Unable to queue any more messages during reconnect, max buffer is " + getMaxPayload());
         }
+
+        if (options.getMaxOutgoingMessages() > 0 || options.getMaxOutgoingBytes() > 0) {
+            makeRoomForOutgoing(msg);
+        }
+
         queueOutgoing(msg);
     }
 
+    // Applies the outgoing policy when the outgoing queue is full
+    void makeRoomForOutgoing(NatsMessage msg) {
+        long maxMessages = options.getMaxOutgoingMessages();
+        long maxBytes = options.getMaxOutgoingBytes();
+
+        if (this.writer.hasRoomFor(msg, maxMessages, maxBytes)) {
+            return;
+        }
+
+        switch (options.getOutgoingPolicy()) {
+            case FAIL:
+                throw new IllegalStateException("Outgoing queue is full");
+            case DROP_OLDEST:
+                long dropped = this.writer.dropOldest(msg, maxMessages, maxBytes);
+                if (dropped > 0) {
+                    this.statistics.incrementOutgoingDroppedCount(dropped);
+                }
+                break;
+            default:
+                if (NatsEventLoop.inAnyLoop()) {
+                    // Only a loop thread makes room, waiting here would stall every connection on the loop
+                    throw new IllegalStateException("Outgoing queue is full, an event loop thread can't wait for room");
+                }
+
+                boolean room = false;
+
+                try {
+                    room = this.writer.awaitOutgoing(() -> {
+                        return this.writer.hasRoomFor(msg, maxMessages, maxBytes);
+                    }, options.getOutgoingTimeout());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for room in the outgoing queue", e);
+                }
+
+                if (isClosed()) {
+                    throw new IllegalStateException("Connection is Closed");
+                } else if (!room) {
+                    throw new IllegalStateException("Timed out waiting for room in the outgoing queue");
+                }
+        }
+    }
+
+    public boolean awaitOutgoingBelow(long bytes, Duration timeout) throws InterruptedException {
+        if (isClosed()) {
+            throw new IllegalStateException("Connection is Closed");
+        }
+
+        return this.writer.awaitOutgoing(() -> {
+            return this.writer.outgoingBytes() < bytes;
+        }, timeout);
+    }
+
     public Subscription subscribe(String subject) {
         if (subject == null || subject.length() == 0) {
             throw new IllegalArgumentException("Subject is required in subscribe");
@@ -659,9 +854,7 @@ class NatsConnection implements Connection {
     }
 
     void invalidate(NatsSubscription sub) {
-        CharSequence sid = sub.getSID();
-
-        subscribers.remove(sid);
+        subscribers.remove(sub.getSID());
 
         if (sub.getNatsDispatcher() != null) {
             sub.getNatsDispatcher().remove(sub);
@@ -693,7 +886,7 @@ class NatsConnection implements Connection {
     }
 
     void sendUnsub(NatsSubscription sub, int after) {
-        String sid = sub.getSID();
+        String sid = sub.getSIDString();
         StringBuilder protocolBuilder = new StringBuilder();
         protocolBuilder.append(OP_UNSUB);
         protocolBuilder.append(" ");
@@ -716,13 +909,12 @@ class NatsConnection implements Connection {
         }
 
         NatsSubscription sub = null;
-        long sidL = nextSid.getAndIncrement();
-        String sid = String.valueOf(sidL);
+        long sid = nextSid.getAndIncrement();
 
         sub = new NatsSubscription(sid, subject, queueName, this, dispatcher);
-        subscribers.put(sid, sub);
+        subscribers.put(sub);
 
-        sendSubscriptionMessage(sid, subject, queueName, false);
+        sendSubscriptionMessage(sub.getSIDString(), subject, queueName, false);
         return sub;
     }
 
@@ -760,51 +952,129 @@ class NatsConnection implements Connection {
         return builder.toString();
     }
 
-    int getRespInboxLength() {
-        String prefix = options.getInboxPrefix();
-        return prefix.length() + 22 + 1; // 22 for nuid, 1 for .
-    }
+    // Called by the timing wheel, the first of this and the reply to remove the future wins
+    void expireResponse(ResponseMap.ResponseFuture f) {
+        if (f instanceof RetryingResponse) {
+            RetryingResponse retrying = (RetryingResponse) f;
+            long now = System.nanoTime();
 
-    String createResponseInbox(String inbox) {
-        StringBuilder builder = new StringBuilder();
-        builder.append(inbox.substring(0, getRespInboxLength())); // Get rid of the *
-        builder.append(this.nuid.next());
-        return builder.toString();
+            if (retrying.takeResend(now)) {
+                if (resendRequest(retrying)) {
+                    statistics.incrementRequestsSent();
+                }
+                addTimeout(retrying, now, retrying.nextWait(now));
+                return;
+            }
+        }
+
+        if (f instanceof ResponseCollector) {
+            ResponseCollector collector = (ResponseCollector) f;
+            if (removeResponse(collector, collector.getInbox())) {
+                finishCollector(collector); // a timeout just ends the collection
+            }
+        } else if (removeResponse(f, f.getInbox())) {
+            statistics.decrementOutstandingRequests();
+            f.completeExceptionally(new TimeoutException("No reply to the request in time"));
+        }
     }
 
-    // If the inbox is long enough, pull out the end part, otherwise, just use the
-    // full thing
-    String getResponseToken(String responseInbox) {
-        int len = getRespInboxLength();
-        if (responseInbox.length() <= len) {
-            return responseInbox;
+    // The wheel ticks on a scheduler thread every connection shares, so a copy is only queued for the
+    // writer, never written here or left waiting for room. It is skipped if the connection is closed
+    // or draining, or the outgoing queue or reconnect buffer is full, the deadline still applies.
+    private boolean resendRequest(RetryingResponse retrying) {
+        if (isClosed() || blockPublishForDrain.get()) {
+            return false;
+        }
+
+        byte[] body = (retrying.getBody() != null) ? retrying.getBody() : EMPTY_BODY;
+        NatsMessage msg;
+
+        if (retrying.getInbox() != null) {
+            msg = new NatsMessage(retrying.getSubject(), retrying.getInbox(), body, options.supportUTF8Subjects());
+        } else {
+            msg = new NatsMessage(retrying.getSubject(), this.mainInboxPrefix, retrying.getToken(), body,
+                                    options.supportUTF8Subjects());
+        }
+
+        if ((this.status == Status.RECONNECTING || this.status == Status.DISCONNECTED)
+                && !this.writer.canQueue(msg, options.getReconnectBufferSize())) {
+            return false;
         }
-        return responseInbox.substring(len);
+
+        long maxMessages = options.getMaxOutgoingMessages();
+        long maxBytes = options.getMaxOutgoingBytes();
+
+        if ((maxMessages > 0 || maxBytes > 0) && !this.writer.hasRoomFor(msg, maxMessages, maxBytes)) {
+            return false;
+        }
+
+        this.writer.queueForWriter(msg);
+        return true;
     }
 
-    void cleanResponses(boolean cancelIfRunning) {
-        ArrayList<String> toRemove = new ArrayList<>();
+    // Called when a request's future completes, it is usually gone already, unless the caller
+    // cancelled or completed it
+    private void responseDone(ResponseMap.ResponseFuture f) {
+        if (removeResponse(f, f.getInbox())) {
+            statistics.decrementOutstandingRequests();
+            unsubscribeInbox(f);
+        }
+    }
 
-        responses.forEach((token, f) -> {
-            if (f.isDone() || cancelIfRunning) {
-                try {
-                    f.cancel(true); // does nothing if already done
-                } catch (CancellationException e) {
-                    // Expected
-                }
-                toRemove.add(token);
-                statistics.decrementOutstandingRequests();
+    // Old style requests each have an inbox subscription, which may already be gone if it reached its max replies
+    private void unsubscribeInbox(ResponseMap.ResponseFuture f) {
+        NatsDispatcher d = this.inboxDispatcher.get();
+        if (f.getInbox() != null && d != null && d.isActive()) {
+            try {
+                d.unsubscribe(f.getInbox());
+            } catch (IllegalStateException e) {
+                // Closed at the same time, the subscription is gone with it
             }
+        }
+    }
+
+    // Cancels every outstanding request, the futures remove themselves as they are cancelled
+    void cancelResponses() {
+        responses.forEach((f) -> {
+            f.cancel(true);
+            responseDone(f); // in case it was already done
         });
 
-        for (String token : toRemove) {
-            responses.remove(token);
+        oldStyleResponses.forEach((inbox, f) -> {
+            f.cancel(true);
+            responseDone(f);
+        });
+    }
+
+    private void addTimeout(ResponseMap.ResponseFuture f, long nowNanos, long timeoutNanos) {
+        if (this.timeouts.add(f, nowNanos, timeoutNanos)) {
+            scheduleTimeoutTick(); // the wheel was idle
+        }
+    }
+
+    private void scheduleTimeoutTick() {
+        try {
+            this.timeoutTicker = this.scheduler.schedule(this.timeoutTick, this.timeouts.getTickNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            processException(e); // the scheduler was shut down, requests can't time out
+        }
+    }
+
+    // Ticks one at a time, so only one thread ever advances the wheel
+    private void tickTimeouts() {
+        try {
+            this.timeouts.advance(System.nanoTime());
+        } finally {
+            if (!this.timeouts.disarmIfEmpty()) {
+                scheduleTimeoutTick();
+            }
         }
     }
 
     public Message request(String subject, byte[] body, Duration timeout) throws InterruptedException {
+        checkNotReaderThread();
         Message reply = null;
-        Future<Message> incoming = this.request(subject, body);
+        Future<Message> incoming = this.requestWithTimeout(subject, body, timeout);
         try {
             reply = incoming.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
         } catch (ExecutionException | TimeoutException e) {
@@ -814,8 +1084,72 @@ class NatsConnection implements Connection {
         return reply;
     }
 
+    // Makes the future for a request, the inbox is only set for old style requests
+    private interface ResponseFactory {
+        ResponseMap.ResponseFuture create(long token, String inbox);
+    }
+
     public CompletableFuture<Message> request(String subject, byte[] body) {
-        String responseInbox = null;
+        return createRequest(subject, body, -1, 1, (token, inbox) -> new ResponseMap.ResponseFuture(token, inbox));
+    }
+
+    public CompletableFuture<Message> requestWithTimeout(String subject, byte[] body, Duration timeout) {
+        if (timeout == null) {
+            throw new IllegalArgumentException("Timeout is required");
+        }
+        return createRequest(subject, body, Math.max(0, timeout.toNanos()), 1,
+                                (token, inbox) -> new ResponseMap.ResponseFuture(token, inbox));
+    }
+
+    public CompletableFuture<List<Message>> requestMany(String subject, byte[] body, int maxReplies, Duration timeout) {
+        if (timeout == null) {
+            throw new IllegalArgumentException("Timeout is required");
+        }
+        int max = Math.max(0, maxReplies);
+        ResponseMap.ResponseFuture collector = createRequest(subject, body, Math.max(0, timeout.toNanos()), max,
+                                                    (token, inbox) -> new ResponseCollector(token, max, inbox));
+        return ((ResponseCollector) collector).getResult();
+    }
+
+    public CompletableFuture<Message> requestHedged(String subject, byte[] body, Duration hedgeDelay, Duration timeout) {
+        if (hedgeDelay == null || timeout == null) {
+            throw new IllegalArgumentException("Hedge delay and timeout are required");
+        }
+        return createRetryingRequest(subject, body, Math.max(0, timeout.toNanos()), Math.max(0, hedgeDelay.toNanos()), 1, 1);
+    }
+
+    public CompletableFuture<Message> requestWithRetries(String subject, byte[] body, Duration attemptTimeout, int maxRetries) {
+        if (attemptTimeout == null) {
+            throw new IllegalArgumentException("Attempt timeout is required");
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Retries can't be negative");
+        }
+
+        // Each attempt waits twice as long as the one before it
+        long attemptNanos = Math.max(0, attemptTimeout.toNanos());
+        long timeoutNanos = 0;
+        long wait = attemptNanos;
+        for (int i = 0; i <= maxRetries && timeoutNanos < Long.MAX_VALUE / 4; i++) {
+            timeoutNanos += wait;
+            wait = (wait > Long.MAX_VALUE / 4) ? Long.MAX_VALUE / 4 : wait * 2;
+        }
+
+        return createRetryingRequest(subject, body, timeoutNanos, attemptNanos, maxRetries, 2);
+    }
+
+    private CompletableFuture<Message> createRetryingRequest(String subject, byte[] body, long timeoutNanos,
+                                                                long delayNanos, int maxResends, int backoff) {
+        long now = System.nanoTime();
+        return createRequest(subject, body, Math.min(delayNanos, timeoutNanos), 1,
+                                (token, inbox) -> new RetryingResponse(token, inbox, subject, body, now, timeoutNanos,
+                                                                        delayNanos, maxResends, backoff));
+    }
+
+    // A negative timeout means the request isn't put in the timing wheel. For old style requests, the
+    // inbox is unsubscribed after maxReplies, 0 means no limit.
+    private ResponseMap.ResponseFuture createRequest(String subject, byte[] body, long timeoutNanos, int maxReplies,
+                                                        ResponseFactory factory) {
         boolean oldStyle = options.isOldRequestStyle();
 
         if (isClosed()) {
@@ -836,9 +1170,13 @@ class NatsConnection implements Connection {
         }
 
         if (inboxDispatcher.get() == null) {
-            NatsDispatcher d = new NatsDispatcher(this, (msg) -> {
-                deliverReply(msg);
-            });
+            // Inline replies are matched on the reader thread, otherwise the dispatcher has its own thread, so
+            // stages added to the futures can call back into the connection
+            MessageHandler replyHandler = (msg) -> {
+                deliverReply((NatsMessage) msg);
+            };
+            NatsDispatcher d = options.isInlineReplies() ? new NatsDispatcher(this, replyHandler, (Duration) null)
+                                                            : new NatsDispatcher(this, replyHandler);
 
             if (inboxDispatcher.compareAndSet(null, d)) {
                 String id = this.nuid.next();
@@ -848,50 +1186,165 @@ class NatsConnection implements Connection {
             }
         }
 
+        long responseToken = this.nextResponseToken.getAndIncrement();
+        String responseInbox = oldStyle ? createInbox() : null;
+        ResponseMap.ResponseFuture future = factory.create(responseToken, responseInbox);
+        future.onDone = this.doneHandler;
+
         if (oldStyle) {
-            responseInbox = createInbox();
+            oldStyleResponses.put(responseInbox, future);
         } else {
-            responseInbox = createResponseInbox(this.mainInbox);
+            responses.put(future);
         }
-
-        String responseToken = getResponseToken(responseInbox);
-        CompletableFuture<Message> future = new CompletableFuture<>();
-
-        responses.put(responseToken, future);
         statistics.incrementOutstandingRequests();
 
+        if (timeoutNanos >= 0) {
+            addTimeout(future, System.nanoTime(), timeoutNanos);
+        }
+
         if (oldStyle) {
-            this.inboxDispatcher.get().subscribe(responseInbox).unsubscribe(responseInbox, 1);
+            NatsDispatcher d = this.inboxDispatcher.get();
+            d.subscribe(responseInbox);
+            if (maxReplies > 0) {
+                d.unsubscribe(responseInbox, maxReplies);
+            }
         }
 
-        this.publish(subject, responseInbox, body);
+        sendRequest(subject, body, responseToken, responseInbox);
         statistics.incrementRequestsSent();
 
         return future;
     }
 
-    void deliverReply(Message msg) {
-        String subject = msg.getSubject();
-        String token = getResponseToken(subject);
-        CompletableFuture<Message> f = null;
+    private void sendRequest(String subject, byte[] body, long token, String inbox) {
+        if (inbox != null) {
+            this.publish(subject, inbox, body);
+        } else {
+            // The reply subject ends with the token, which finds the future when the reply arrives
+            this.publishMessage(new NatsMessage(subject, this.mainInboxPrefix, token,
+                                    (body != null) ? body : EMPTY_BODY, options.supportUTF8Subjects()));
+        }
+    }
+
+    void deliverReply(NatsMessage msg) {
+        ResponseMap.ResponseFuture f;
+        String inbox = null;
 
-        f = responses.remove(token);
+        if (options.isOldRequestStyle()) {
+            inbox = msg.getSubject();
+            f = oldStyleResponses.get(inbox);
+        } else {
+            long token = msg.getSubjectToken();
+            f = (token >= 0) ? responses.get(token) : null;
+        }
 
-        if (f != null) {
+        if (f == null) {
+            return;
+        }
+
+        if (f instanceof ResponseCollector) {
+            ResponseCollector collector = (ResponseCollector) f;
+            if (collector.add(msg) && removeResponse(collector, inbox)) {
+                finishCollector(collector);
+            }
+            statistics.incrementRepliesReceived();
+        } else if (removeResponse(f, inbox)) {
             statistics.decrementOutstandingRequests();
-            f.complete(msg);
+            completeResponse(f, msg);
             statistics.incrementRepliesReceived();
         }
     }
 
+    // Only one of the reply, the timeout and a cancel gets to remove each request
+    private boolean removeResponse(ResponseMap.ResponseFuture f, String inbox) {
+        if (inbox != null) {
+            return oldStyleResponses.remove(inbox, f);
+        }
+        return responses.remove(f.getToken()) != null;
+    }
+
+    // Called by whoever removed the collector
+    private void finishCollector(ResponseCollector collector) {
+        statistics.decrementOutstandingRequests();
+        unsubscribeInbox(collector);
+
+        List<Message> replies = collector.finish();
+        if (replies != null) {
+            completeResponse(collector.getResult(), replies);
+        }
+    }
+
+    private <T> void completeResponse(CompletableFuture<T> future, T value) {
+        Executor replyExecutor = this.options.getReplyExecutor();
+        if (replyExecutor != null) {
+            replyExecutor.execute(() -> future.complete(value));
+        } else {
+            future.complete(value);
+        }
+    }
+
     public Dispatcher createDispatcher(MessageHandler handler) {
+        return createDispatcher(handler, 1, null);
+    }
+
+    public Dispatcher createDispatcher(MessageHandler handler, int parallelism, Function<? super Message, ?> keyFunction) {
+        if (isClosed()) {
+            throw new IllegalStateException("Connection is Closed");
+        } else if (isDraining()) {
+            throw new IllegalStateException("Connection is Draining");
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Dispatcher parallelism must be at least 1");
+        }
+
+        return startDispatcher(new NatsDispatcher(this, handler, parallelism, keyFunction));
+    }
+
+    public Dispatcher createInlineDispatcher(MessageHandler handler, Duration slowHandlerTime) {
+        if (isClosed()) {
+            throw new IllegalStateException("Connection is Closed");
+        } else if (isDraining()) {
+            throw new IllegalStateException("Connection is Draining");
+        }
+
+        return startDispatcher(new NatsDispatcher(this, handler, slowHandlerTime));
+    }
+
+    // The reader can't read the reply it would be waiting for
+    private void checkNotReaderThread() {
+        if (this.reader.isReaderThread()) {
+            throw new IllegalStateException("Can't wait for the server on the connection's reader thread, from an inline handler");
+        }
+    }
+
+    public Dispatcher createDispatcher(BatchMessageHandler handler, int maxMessages, long maxBytes, Duration linger) {
         if (isClosed()) {
             throw new IllegalStateException("Connection is Closed");
         } else if (isDraining()) {
             throw new IllegalStateException("Connection is Draining");
         }
 
-        NatsDispatcher dispatcher = new NatsDispatcher(this, handler);
+        if (maxMessages < 1) {
+            throw new IllegalArgumentException("Batch max messages must be at least 1");
+        }
+
+        return startDispatcher(new NatsDispatcher(this, handler, maxMessages, maxBytes, linger));
+    }
+
+    public RequestPipeline createRequestPipeline(int window, Duration timeout) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Pipeline window must be at least 1");
+        }
+
+        if (timeout == null) {
+            throw new IllegalArgumentException("Timeout is required");
+        }
+
+        return new NatsRequestPipeline(this, window, timeout);
+    }
+
+    private Dispatcher startDispatcher(NatsDispatcher dispatcher) {
         String id = this.nuid.next();
         this.dispatchers.put(id, dispatcher);
         dispatcher.start(id);
@@ -924,6 +1377,7 @@ class NatsConnection implements Connection {
     }
 
     public void flush(Duration timeout) throws TimeoutException, InterruptedException {
+        checkNotReaderThread();
 
         Instant start = Instant.now();
         waitForConnectOrClose(timeout);
@@ -1009,14 +1463,20 @@ class NatsConnection implements Connection {
             return retVal;
         }
 
-        if (max > 0 && pongQueue.size() + 1 > max) {
+        if (max > 0 && pingsOut.get() + 1 > max) {
             handleCommunicationIssue(new IllegalStateException("Max outgoing Ping count exceeded."));
             return null;
         }
 
+        // The writer puts the future on the pong queue when it writes the ping, so the queue
+        // stays in the same order as the pings on the wire
         CompletableFuture<Boolean> pongFuture = new CompletableFuture<>();
         NatsMessage msg = new NatsMessage(NatsConnection.OP_PING);
-        pongQueue.add(pongFuture);
+        msg.setPongFuture(pongFuture);
+        pingsOut.incrementAndGet();
+        pongFuture.whenComplete((result, error) -> {
+            pingsOut.decrementAndGet();
+        });
 
         if (treatAsInternal) {
             queueInternalOutgoing(msg);
@@ -1033,6 +1493,11 @@ class NatsConnection implements Connection {
         queueInternalOutgoing(msg);
     }
 
+    // Called by the writer, just before the ping for the future is written
+    void registerPong(CompletableFuture<Boolean> pongFuture) {
+        pongQueue.add(pongFuture);
+    }
+
     // Called by the reader
     void handlePong() {
         CompletableFuture<Boolean> pongFuture = pongQueue.pollFirst();
@@ -1127,7 +1592,10 @@ class NatsConnection implements Connection {
         this.writer.queueInternalMessage(msg);
     }
 
-    void deliverMessage(NatsMessage msg) {
+    // Stages the message on its consumer's queue, the reader pushes the staged messages when it
+    // finishes each read. Returns the queue if nothing was staged on it since its last push, so
+    // the reader knows to push it. Inline dispatchers are called right away instead.
+    MessageQueue deliverMessage(NatsMessage msg) {
         this.statistics.incrementInMsgs();
         this.statistics.incrementInBytes(msg.getSizeInBytes());
 
@@ -1137,13 +1605,20 @@ class NatsConnection implements Connection {
             msg.setSubscription(sub);
 
             NatsDispatcher d = sub.getNatsDispatcher();
+
+            if (d != null && d.isInline()) {
+                d.deliverInline(msg);
+                return null;
+            }
+
             NatsConsumer c = (d == null) ? sub : d;
-            MessageQueue q = ((d == null) ? sub.getMessageQueue() : d.getMessageQueue());
+            MessageQueue q = ((d == null) ? sub.getMessageQueue() : d.getMessageQueue(msg));
 
             if (c.hasReachedPendingLimits()) {
                 // Drop the message and count it
                 this.statistics.incrementDroppedCount();
                 c.incrementDroppedCount();
+                msg.release();
 
                 // Notify the first time
                 if (!c.isMarkedSlow()) {
@@ -1152,13 +1627,22 @@ class NatsConnection implements Connection {
                 }
             } else if (q != null) {
                 c.markNotSlow();
-                q.push(msg);
+                if (q.stage(msg)) {
+                    return q;
+                }
             }
 
         } else {
             // Drop messages we don't have a subscriber for (could be extras on an
             // auto-unsub for example)
+            msg.release();
         }
+
+        return null;
+    }
+
+    PayloadPool getPayloadPool() {
+        return this.payloadPool;
     }
 
     void processOK() {
@@ -1458,6 +1942,18 @@ class NatsConnection implements Connection {
     }
 
     // For testing
+    NatsConnectionWriter getWriter() {
+        return this.writer;
+    }
+
+    EventLoopChannel getLoopChannel() {
+        return this.loopChannel;
+    }
+
+    int getSubscriberCount() {
+        return this.subscribers.size();
+    }
+
     NatsConnectionReader getReader() {
         return this.reader;
     }
@@ -1528,30 +2024,29 @@ class NatsConnection implements Connection {
             cons.markUnsubedForDrain();
         });
 
-        // Wait for the timeout or the pending count to go to 0
-        Thread t = new Thread(() -> {
+        // Check every milli on the scheduler until the timeout or the pending count goes to 0, then
+        // finish on another thread, since the last flush waits for the server
+        CompletableFuture<Void> drained = new CompletableFuture<>();
+        ScheduledFuture<?> check = this.scheduler.scheduleWithFixedDelay(() -> {
+            for (Iterator<NatsConsumer> i = consumers.iterator(); i.hasNext();) {
+                NatsConsumer cons = i.next();
+                if (cons.isDrained()) {
+                    i.remove();
+                }
+            }
 
-            try {
-                Instant now = Instant.now();
-
-                while (timeout == null || timeout.equals(Duration.ZERO)
-                        || Duration.between(start, now).compareTo(timeout) < 0) {
-                    for (Iterator<NatsConsumer> i = consumers.iterator(); i.hasNext();) {
-                        NatsConsumer cons = i.next();
-                        if (cons.isDrained()) {
-                            i.remove();
-                        }
-                    }
-                    
-                    if (consumers.size() == 0) {
-                        break;
-                    }
+            boolean timedOut = timeout != null && !timeout.equals(Duration.ZERO)
+                    && Duration.between(start, Instant.now()).compareTo(timeout) >= 0;
 
-                    Thread.sleep(1); // Sleep 1 milli
+            if (consumers.size() == 0 || timedOut || isClosed()) {
+                drained.complete(null);
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS);
 
-                    now = Instant.now();
-                }
+        drained.whenComplete((v, error) -> check.cancel(false));
+        drained.thenRun(() -> execute(() -> {
 
+            try {
                 // Stop publishing
                 this.blockPublishForDrain.set(true);
 
@@ -1559,7 +2054,7 @@ class NatsConnection implements Connection {
                 if (timeout == null || timeout.equals(Duration.ZERO)) {
                     this.flush(Duration.ZERO);
                 } else {
-                    now = Instant.now();
+                    Instant now = Instant.now();
 
                     Duration passed = Duration.between(start, now);
                     Duration newTimeout = timeout.minus(passed);
@@ -1581,9 +2076,7 @@ class NatsConnection implements Connection {
                 }
                 tracker.complete(false);
             }
-        });
-        t.setName("Connection Drain");
-        t.start();
+        }, "Drain"));
 
         return tracker;
     }
@@ -15,8 +15,9 @@ package io.nats.client.impl;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -47,19 +48,32 @@ class NatsConnectionReader implements Runnable {
     private char[] opArray;
     private int opPos;
 
-    private char[] msgLineChars;
+    private byte[] msgLineBytes;
     private int msgLinePosition;
 
+    // Start and end of each element in the current message line, for up to 4 elements
+    static final int MAX_MSG_LINE_ELEMENTS = 4;
+    private final int[] msgLineElements;
+
     private Mode mode;
 
     private NatsMessage incoming;
     private byte[] msgData;
+    private int msgDataLength; // the data array may be a longer, pooled, buffer
     private int msgDataPosition;
+    private final PayloadPool payloadPool;
     
     private byte[] buffer;
     private int bufferPosition;
+    private ByteBuffer readWrapper; // wraps the buffer for reads from an event loop
+
+    // Reads a single event loop pass will do for one connection, so others get a turn
+    static final int MAX_LOOP_READS = 16;
+
+    // Queues with messages staged during the current read
+    private final ArrayList<MessageQueue> stagedQueues;
     
-    private Thread thread;
+    private volatile Thread thread; // set while running, for isReaderThread()
     private CompletableFuture<Boolean> stopped;
     private Future<DataPort> dataPortFuture;
     private final AtomicBoolean running;
@@ -74,10 +88,13 @@ class NatsConnectionReader implements Runnable {
         this.stopped.complete(Boolean.TRUE); // we are stopped on creation
 
         this.protocolBuffer = ByteBuffer.allocate(this.connection.getOptions().getMaxControlLine());
-        this.msgLineChars = new char[this.connection.getOptions().getMaxControlLine()];
+        this.msgLineBytes = new byte[this.connection.getOptions().getMaxControlLine()];
+        this.msgLineElements = new int[2 * MAX_MSG_LINE_ELEMENTS];
         this.opArray = new char[MAX_PROTOCOL_OP_LENGTH];
         this.buffer = new byte[connection.getOptions().getBufferSize()];
         this.bufferPosition = 0;
+        this.stagedQueues = new ArrayList<>();
+        this.payloadPool = connection.getPayloadPool();
 
         this.utf8Mode = connection.getOptions().supportUTF8Subjects();
     }
@@ -89,9 +106,16 @@ class NatsConnectionReader implements Runnable {
         this.dataPortFuture = dataPortFuture;
         this.running.set(true);
         this.stopped = new CompletableFuture<>(); // New future
-        String name = (this.connection.getOptions().getConnectionName() != null) ? this.connection.getOptions().getConnectionName() : "Nats Connection";
-        this.thread = new Thread(this, name + " Reader");
-        this.thread.start();
+        this.connection.execute(this, "Reader");
+    }
+
+    // Starts reading on an event loop, the loop calls readAvailable() when the socket has data
+    // and stoppedOnLoop() once it lets go of the socket.
+    void startOnLoop(Thread loopThread) {
+        this.running.set(true);
+        this.stopped = new CompletableFuture<>(); // New future
+        this.thread = loopThread;
+        resetParser();
     }
 
     // May be called several times on an error.
@@ -102,40 +126,25 @@ class NatsConnectionReader implements Runnable {
         return stopped;
     }
 
+    // True if called from inside the read loop, for example from an inline handler
+    boolean isReaderThread() {
+        return Thread.currentThread() == this.thread;
+    }
+
     public void run() {
+        this.thread = Thread.currentThread();
+
         try {
             DataPort dataPort = this.dataPortFuture.get(); // Will wait for the future to complete
-            this.mode = Mode.GATHER_OP;
-            this.gotCR = false;
-            this.opPos = 0;
+            resetParser();
 
             while (this.running.get()) {
-                this.bufferPosition = 0;
                 int bytesRead = dataPort.read(this.buffer, 0, this.buffer.length);
 
                 if (bytesRead > 0) {
                     connection.getNatsStatistics().registerRead(bytesRead);
-
-                    while (this.bufferPosition < bytesRead) {
-                        if (this.mode == Mode.GATHER_OP) {
-                            this.gatherOp(bytesRead);
-                        } else if (this.mode == Mode.GATHER_MSG_PROTO) {
-                            if (this.utf8Mode) {
-                                this.gatherProtocol(bytesRead);
-                            } else {
-                                this.gatherMessageProtocol(bytesRead);
-                            }
-                        } else if (this.mode == Mode.GATHER_PROTO) {
-                            this.gatherProtocol(bytesRead);
-                        } else {
-                            this.gatherMessageData(bytesRead);
-                        }
-
-                        if (this.mode == Mode.PARSE_PROTO) { // Could be the end of the read
-                            this.parseProtocolMessage();
-                            this.protocolBuffer.clear();
-                        }
-                    }
+                    this.process(bytesRead);
+                    this.pushStagedMessages();
                 } else if (bytesRead < 0) {
                     throw new IOException("Read channel closed.");
                 } else {
@@ -147,12 +156,80 @@ class NatsConnectionReader implements Runnable {
         } catch (CancellationException | ExecutionException | InterruptedException ex) {
             // Exit
         } finally {
+            this.pushStagedMessages(); // Deliver anything we read before an error
             this.running.set(false);
             // Clear the buffers, since they are only used inside this try/catch
             // We will reuse later
             this.protocolBuffer.clear();
-            this.stopped.complete(Boolean.TRUE);
             this.thread = null;
+            this.stopped.complete(Boolean.TRUE);
+        }
+    }
+
+    // Reads whatever the channel has without blocking, and parses it, for an event loop. The parser
+    // state stays in the fields between calls, so a read can end anywhere in a message.
+    void readAvailable(ReadableByteChannel channel) throws IOException {
+        if (this.readWrapper == null || this.readWrapper.array() != this.buffer) {
+            this.readWrapper = ByteBuffer.wrap(this.buffer);
+        }
+
+        try {
+            for (int reads = 0; reads < MAX_LOOP_READS && this.running.get(); reads++) {
+                this.readWrapper.clear();
+                int bytesRead = channel.read(this.readWrapper);
+
+                if (bytesRead < 0) {
+                    throw new IOException("Read channel closed.");
+                } else if (bytesRead == 0) {
+                    break;
+                }
+
+                connection.getNatsStatistics().registerRead(bytesRead);
+                this.process(bytesRead);
+
+                if (bytesRead < this.buffer.length) {
+                    break; // nothing left to read
+                }
+            }
+        } finally {
+            this.pushStagedMessages();
+        }
+    }
+
+    // Called on the event loop once it has let go of the socket
+    void stoppedOnLoop() {
+        this.pushStagedMessages();
+        this.running.set(false);
+        this.protocolBuffer.clear();
+        this.thread = null;
+        this.stopped.complete(Boolean.TRUE);
+    }
+
+    private void resetParser() {
+        this.mode = Mode.GATHER_OP;
+        this.gotCR = false;
+        this.opPos = 0;
+    }
+
+    // Runs the bytes read into the buffer through the parser
+    private void process(int bytesRead) throws IOException {
+        this.bufferPosition = 0;
+
+        while (this.bufferPosition < bytesRead) {
+            if (this.mode == Mode.GATHER_OP) {
+                this.gatherOp(bytesRead);
+            } else if (this.mode == Mode.GATHER_MSG_PROTO) {
+                this.gatherMessageProtocol(bytesRead);
+            } else if (this.mode == Mode.GATHER_PROTO) {
+                this.gatherProtocol(bytesRead);
+            } else {
+                this.gatherMessageData(bytesRead);
+            }
+
+            if (this.mode == Mode.PARSE_PROTO) { // Could be the end of the read
+                this.parseProtocolMessage();
+                this.protocolBuffer.clear();
+            }
         }
     }
 
@@ -195,7 +272,8 @@ class NatsConnectionReader implements Runnable {
         }
     }
 
-    // Stores the message protocol line in a char buffer that will be grepped for subject, reply
+    // Stores the message protocol line in a byte buffer that will be split into subject, sid, reply and length.
+    // The bytes are kept as is, so utf-8 subjects are decoded later, if they are used at all.
     void gatherMessageProtocol(int maxPos) throws IOException {
         try {
             while(this.bufferPosition < maxPos) {
@@ -213,10 +291,10 @@ class NatsConnectionReader implements Runnable {
                 } else if (b == NatsConnection.CR) {
                     this.gotCR = true;
                 } else {
-                    if (this.msgLinePosition >= this.msgLineChars.length) {
+                    if (this.msgLinePosition >= this.msgLineBytes.length) {
                         throw new IllegalStateException("Protocol line is too long");
                     }
-                    this.msgLineChars[this.msgLinePosition] = (char) b; // Assumes ascii, as per protocol doc
+                    this.msgLineBytes[this.msgLinePosition] = b;
                     this.msgLinePosition++;
                 }
             }
@@ -262,7 +340,7 @@ class NatsConnectionReader implements Runnable {
         try {
             while(this.bufferPosition < maxPos) {
                 int possible = maxPos - this.bufferPosition;
-                int want = msgData.length - msgDataPosition;
+                int want = msgDataLength - msgDataPosition;
 
                 // Grab all we can, until we get to the CR/LF
                 if (want > 0 && want <= possible) {
@@ -282,8 +360,11 @@ class NatsConnectionReader implements Runnable {
 
                 if (gotCR) {
                     if (b == NatsConnection.LF) {
-                        incoming.setData(msgData);
-                        this.connection.deliverMessage(incoming);
+                        incoming.setData(msgData, msgDataLength, payloadPool);
+                        MessageQueue staged = this.connection.deliverMessage(incoming);
+                        if (staged != null) {
+                            this.stagedQueues.add(staged);
+                        }
                         msgData = null;
                         msgDataPosition = 0;
                         incoming = null;
@@ -305,24 +386,35 @@ class NatsConnectionReader implements Runnable {
         }
     }
 
-    public String grabNextMessageLineElement(int max) {
-        if (this.msgLinePosition >= max) {
-            return null;
-        }
+    // Splits the message line on spaces and tabs, storing the start and end of each element,
+    // and returns the number of elements found. Extra elements are ignored.
+    int splitMessageLine(int max) {
+        int count = 0;
+        int position = 0;
 
-        int start = this.msgLinePosition;
+        while (position < max && count < MAX_MSG_LINE_ELEMENTS) {
+            int start = position;
 
-        while (this.msgLinePosition < max) {
-            char c = this.msgLineChars[this.msgLinePosition];
-            this.msgLinePosition++;
+            while (position < max) {
+                byte b = this.msgLineBytes[position];
 
-            if (c == SPACE || c == TAB) {
-                String slice = new String(this.msgLineChars, start, this.msgLinePosition - start -1); //don't grab the space, avoid an intermediate char sequence
-                return slice;
+                if (b == SPACE || b == TAB) {
+                    break;
+                }
+                position++;
             }
+
+            this.msgLineElements[2 * count] = start;
+            this.msgLineElements[2 * count + 1] = position;
+            count++;
+            position++; // skip the space
         }
 
-        return new String(this.msgLineChars, start, this.msgLinePosition-start);
+        return count;
+    }
+
+    private int elementLength(int element) {
+        return this.msgLineElements[2 * element + 1] - this.msgLineElements[2 * element];
     }
 
     public String opFor(char[] chars, int length) {
@@ -369,65 +461,113 @@ class NatsConnectionReader implements Runnable {
 
     private static int[] TENS = new int[] { 1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
 
-    public static int parseLength(String s) throws NumberFormatException {
-        int length = s.length();
+    public static int parseLength(byte[] bytes, int start, int end) throws NumberFormatException {
+        int length = end - start;
         int retVal = 0;
 
         if (length > TENS.length) {
-            throw new NumberFormatException("Long in message length \"" + s + "\" "+length+" > "+TENS.length);
+            throw new NumberFormatException("Long in message length \"" + new String(bytes, start, length, StandardCharsets.US_ASCII) + "\" "+length+" > "+TENS.length);
+        }
+
+        for (int i=start;i<end;i++) {
+            int d = (bytes[i] - '0');
+
+            if (d<0 || d>9) {
+                throw new NumberFormatException("Invalid char in message length \'" + (char) bytes[i] + "\'");
+            }
+
+            retVal = retVal * 10 + d;
+        }
+
+        return retVal;
+    }
+
+    // Sids are ours, so they are always positive and fit in a long
+    static long parseSid(byte[] bytes, int start, int end) throws NumberFormatException {
+        int length = end - start;
+        long retVal = 0;
+
+        if (length > 18) {
+            throw new NumberFormatException("Sid \"" + new String(bytes, start, length, StandardCharsets.US_ASCII) + "\" is too long");
         }
-        
-        for (int i=length-1;i>=0;i--) {
-            char c = s.charAt(i);
-            int d = (c - '0');
 
-            if (d>9) {
-                throw new NumberFormatException("Invalid char in message length \'" + c + "\'");
+        for (int i=start;i<end;i++) {
+            int d = (bytes[i] - '0');
+
+            if (d<0 || d>9) {
+                throw new NumberFormatException("Invalid char in sid \'" + (char) bytes[i] + "\'");
             }
 
-            retVal += d * TENS[length - i - 1];
+            retVal = retVal * 10 + d;
         }
 
         return retVal;
     }
 
+    public static int parseLength(String s) throws NumberFormatException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        return parseLength(bytes, 0, bytes.length);
+    }
+
+    // Push the messages staged during a read, one append and one wake up per queue
+    void pushStagedMessages() {
+        for (int i = 0, max = this.stagedQueues.size(); i < max; i++) {
+            this.stagedQueues.get(i).pushStaged();
+        }
+        this.stagedQueues.clear();
+    }
+
     void parseProtocolMessage() throws IOException {
         try {
+            if (this.op != NatsConnection.OP_MSG) {
+                // Messages read before a PONG, or any other protocol op, have to be delivered before
+                // we act on it, so a flush() that returns guarantees they are queued
+                this.pushStagedMessages();
+            }
+
             switch (this.op) {
             case NatsConnection.OP_MSG:
                 int protocolLength = this.msgLinePosition; //This is just after the last character
                 int protocolLineLength = protocolLength + 4; // 4 for the "MSG "
+                int elements = splitMessageLine(protocolLength);
+                int replyElement = (elements == 4) ? 2 : -1;
+                int lengthElement = elements - 1;
 
-                if (this.utf8Mode) {
-                    protocolLineLength = protocolBuffer.remaining() + 4;
-
-                    CharBuffer buff = StandardCharsets.UTF_8.decode(protocolBuffer);
-                    protocolLength = buff.remaining();
-                    buff.get(this.msgLineChars, 0, protocolLength);
+                if (elements < 3 || elementLength(0) == 0 || elementLength(1) == 0) {
+                    throw new IllegalStateException("Bad MSG control line, missing required fields");
                 }
-                
-                this.msgLinePosition = 0;
-                String subject = grabNextMessageLineElement(protocolLength);
-                String sid = grabNextMessageLineElement(protocolLength);
-                String replyTo = grabNextMessageLineElement(protocolLength);
-                String lengthChars = null;
 
-                if (this.msgLinePosition < protocolLength) {
-                    lengthChars = grabNextMessageLineElement(protocolLength);
+                int[] bounds = this.msgLineElements;
+                int incomingLength = parseLength(this.msgLineBytes, bounds[2 * lengthElement], bounds[2 * lengthElement + 1]);
+                long sid = parseSid(this.msgLineBytes, bounds[2], bounds[3]);
+
+                // Keep the subject and reply as one run of bytes, they are decoded if they are used. With a
+                // payload pool the message takes one pooled buffer, the payload followed by the subject and reply.
+                // Without one the payload needs its own array, since getData() returns exactly the payload.
+                int subjectLength = elementLength(0);
+                int replyLength = (replyElement > 0) ? elementLength(replyElement) : 0;
+                int headerLength = subjectLength + replyLength;
+                int headerOffset;
+                byte[] header;
+
+                if (this.payloadPool != null) {
+                    header = this.payloadPool.acquire(incomingLength + headerLength);
+                    headerOffset = incomingLength;
+                    this.msgData = header;
                 } else {
-                    lengthChars = replyTo;
-                    replyTo = null;
-                }
-                
-                if(subject==null || subject.length() == 0 || sid==null || sid.length() == 0 || lengthChars==null) {
-                    throw new IllegalStateException("Bad MSG control line, missing required fields");
+                    header = new byte[headerLength];
+                    headerOffset = 0;
+                    this.msgData = new byte[incomingLength];
                 }
 
-                int incomingLength = parseLength(lengthChars);
+                System.arraycopy(this.msgLineBytes, bounds[0], header, headerOffset, subjectLength);
+                if (replyLength > 0) {
+                    System.arraycopy(this.msgLineBytes, bounds[2 * replyElement], header, headerOffset + subjectLength, replyLength);
+                }
 
-                this.incoming = new NatsMessage(sid, subject, replyTo, protocolLineLength);
+                this.incoming = new NatsMessage(sid, header, headerOffset, headerLength, subjectLength, this.utf8Mode, protocolLineLength);
                 this.mode = Mode.GATHER_DATA;
-                this.msgData = new byte[incomingLength];
+                this.msgDataLength = incomingLength;
                 this.msgDataPosition = 0;
                 this.msgLinePosition = 0;
                 break;
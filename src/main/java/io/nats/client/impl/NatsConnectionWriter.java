@@ -15,30 +15,72 @@ package io.nats.client.impl;
 
 import java.io.IOException;
 import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import io.nats.client.Options.WaitStrategy;
 
 class NatsConnectionWriter implements Runnable {
 
     private final NatsConnection connection;
 
-    private Thread thread;
     private CompletableFuture<Boolean> stopped;
     private Future<DataPort> dataPortFuture;
     private final AtomicBoolean running;
     private final AtomicBoolean reconnectMode;
 
+    // Message bodies at least this large are written from the publisher's array when
+    // the data port supports gathering writes, rather than copied into the send buffer
+    static final int GATHER_THRESHOLD = 4 * 1024;
+    static final int MAX_SEGMENTS = 64;
+
     private byte[] sendBuffer;
+    private final ByteBuffer[] segments;
+
+    // Results of writeAvailable(), for the event loop
+    static final int LOOP_WRITE_DONE = 0;
+    static final int LOOP_WRITE_BLOCKED = 1; // the socket is full, wait until it is writable
+    static final int LOOP_WRITE_MORE = 2; // there is more, but let other connections have a turn first
+    static final int MAX_LOOP_BATCHES = 16;
+
+    // The event loop writes the segments for one pass at a time, keeping a partial write, and the rest
+    // of the accumulated messages until the send buffer is free again. The send buffer never grows there.
+    private int loopSegmentCount;
+    private int loopSegmentOffset;
+    private long loopWriteSize;
+    private NatsMessage loopRemaining;
+
+    // Acks for published messages, waiting for the next ping in the batch
+    private ArrayList<CompletableFuture<Boolean>> pendingAcks;
+    private final NatsMessage ackPing;
 
     private MessageQueue outgoing;
     private MessageQueue reconnectOutgoing;
 
+    // Publishers waiting for room in the outgoing queue
+    private final ReentrantLock outgoingLock;
+
+    // Held while taking messages off the queue and writing them, by the writer thread, or by a publisher
+    // writing its own message, so direct writes can't pass messages the writer has taken
+    private final ReentrantLock writeLock;
+    private final boolean directPublish;
+    private volatile DataPort directPort; // the writer thread's port, while it is running
+    private final Condition outgoingSpace;
+    private final AtomicInteger outgoingWaiters;
+
     NatsConnectionWriter(NatsConnection connection) {
         this.connection = connection;
 
@@ -48,9 +90,20 @@ class NatsConnectionWriter implements Runnable {
         this.stopped.complete(Boolean.TRUE); // we are stopped on creation
 
         this.sendBuffer = new byte[connection.getOptions().getBufferSize()];
+        this.segments = new ByteBuffer[MAX_SEGMENTS];
+        this.pendingAcks = new ArrayList<>();
+        this.ackPing = new NatsMessage(NatsConnection.OP_PING);
 
-        outgoing = new MessageQueue(true);
-        reconnectOutgoing = new MessageQueue(true);
+        WaitStrategy waitStrategy = connection.getOptions().getWaitStrategy();
+        outgoing = new MessageQueue(true, waitStrategy, true); // filtered on stop, and may drop the oldest
+        reconnectOutgoing = new MessageQueue(true, waitStrategy, true);
+
+        this.outgoingLock = new ReentrantLock();
+        this.outgoingSpace = this.outgoingLock.newCondition();
+        this.outgoingWaiters = new AtomicInteger();
+
+        this.writeLock = new ReentrantLock();
+        this.directPublish = connection.getOptions().isDirectPublish();
     }
 
     // Should only be called if the current thread has exited.
@@ -60,10 +113,19 @@ class NatsConnectionWriter implements Runnable {
         this.dataPortFuture = dataPortFuture;
         this.running.set(true);
         this.stopped = new CompletableFuture<>(); // New future
+        this.connection.execute(this, "Writer");
+    }
 
-        String name = (this.connection.getOptions().getConnectionName() != null) ? this.connection.getOptions().getConnectionName() : "Nats Connection";
-        this.thread = new Thread(this, name + " Writer");
-        this.thread.start();
+    // Starts writing on an event loop, the listener is told when messages are queued, and the loop
+    // calls writeAvailable() to send them and stoppedOnLoop() once it lets go of the socket
+    void startOnLoop(Runnable listener) {
+        this.running.set(true);
+        this.stopped = new CompletableFuture<>(); // New future
+        this.clearLoopWrite();
+        this.outgoing.setListener(listener);
+        this.reconnectOutgoing.setListener(listener);
+        this.outgoing.resume();
+        this.reconnectOutgoing.resume();
     }
 
     // May be called several times on an error.
@@ -78,8 +140,13 @@ class NatsConnectionWriter implements Runnable {
         byte[] pingRequest = NatsConnection.OP_PING.getBytes(StandardCharsets.UTF_8);
         byte[] pongRequest = NatsConnection.OP_PONG.getBytes(StandardCharsets.UTF_8);
         this.outgoing.filter((msg) -> {
-            return Arrays.equals(pingRequest, msg.getProtocolBytes()) || Arrays.equals(pongRequest, msg.getProtocolBytes());
+            if (Arrays.equals(pingRequest, msg.getProtocolBytes())) {
+                cancelPong(msg);
+                return true;
+            }
+            return Arrays.equals(pongRequest, msg.getProtocolBytes());
         });
+        signalOutgoing(); // publishers waiting for room check if the connection closed
         return this.stopped;
     }
 
@@ -90,76 +157,433 @@ class NatsConnectionWriter implements Runnable {
 
         try {
             DataPort dataPort = this.dataPortFuture.get(); // Will wait for the future to complete
+            GatheringDataPort gatheringPort = (dataPort instanceof GatheringDataPort) ? (GatheringDataPort) dataPort : null;
             NatsStatistics stats = this.connection.getNatsStatistics();
             this.outgoing.resume();
             this.reconnectOutgoing.resume();
+            this.directPort = dataPort;
 
             while (this.running.get()) {
-                int sendPosition = 0;
-                NatsMessage msg = null;
-                
-                if (reconnectMode.get()) {
-                    msg = this.reconnectOutgoing.accumulate(this.sendBuffer.length, maxMessages, reconnectWait);
-                } else {
-                    msg = this.outgoing.accumulate(this.sendBuffer.length, maxMessages, waitForMessage);
+                boolean reconnecting = reconnectMode.get();
+                MessageQueue queue = reconnecting ? this.reconnectOutgoing : this.outgoing;
+
+                // Wait without the lock, so publishers can write directly while we are idle
+                if (!queue.waitForMessages(reconnecting ? reconnectWait : waitForMessage)) {
+                    continue; // Make sure we are still running
                 }
 
-                if (msg == null) { // Make sure we are still running
-                    continue;
+                this.writeLock.lock();
+                try {
+                    NatsMessage msg = queue.accumulate(this.sendBuffer.length, maxMessages, null);
+
+                    if (msg == null) {
+                        continue;
+                    }
+
+                    signalOutgoing();
+                    registerPongs(msg, stats);
+
+                    if (gatheringPort != null) {
+                        sendGathered(msg, gatheringPort, stats);
+                    } else {
+                        sendBuffered(msg, dataPort, stats);
+                    }
+                } finally {
+                    this.writeLock.unlock();
+                }
+            }
+        } catch (IOException | BufferOverflowException io) {
+            this.connection.handleCommunicationIssue(io);
+        } catch (CancellationException | ExecutionException | InterruptedException ex) {
+            // Exit
+        } finally {
+            this.directPort = null;
+            this.running.set(false);
+            this.stopped.complete(Boolean.TRUE);
+        }
+    }
+
+    // Writes queued messages until the socket is full or the queue is empty, without blocking. Called
+    // on the event loop, a partial write is kept and finished on the next call.
+    int writeAvailable(GatheringByteChannel channel) throws IOException {
+        NatsStatistics stats = this.connection.getNatsStatistics();
+
+        for (int passes = 0; passes < MAX_LOOP_BATCHES; passes++) {
+            if (this.loopSegmentCount > 0) {
+                channel.write(this.segments, this.loopSegmentOffset, this.loopSegmentCount - this.loopSegmentOffset);
+
+                while (this.loopSegmentOffset < this.loopSegmentCount && !this.segments[this.loopSegmentOffset].hasRemaining()) {
+                    this.loopSegmentOffset++;
+                }
+
+                if (this.loopSegmentOffset < this.loopSegmentCount) {
+                    return LOOP_WRITE_BLOCKED;
                 }
 
-                while (msg != null) {
-                    long size = msg.getSizeInBytes();
-
-                    if (sendPosition + size > sendBuffer.length) {
-                        if (sendPosition == 0) { // have to resize
-                            this.sendBuffer = new byte[(int)Math.max(sendBuffer.length + size, sendBuffer.length * 2)];
-                        } else { // else send and go to next message
-                            dataPort.write(sendBuffer, sendPosition);
-                            connection.getNatsStatistics().registerWrite(sendPosition);
-                            sendPosition = 0;
-                            msg = msg.next;
-
-                            if (msg == null) {
-                                break;
-                            }
-                        }
+                stats.registerWrite(this.loopWriteSize);
+                Arrays.fill(this.segments, 0, this.loopSegmentCount, null); // Don't hold on to the published bodies
+                this.loopSegmentCount = 0;
+                this.loopSegmentOffset = 0;
+            }
+
+            if (!this.running.get()) {
+                return LOOP_WRITE_DONE;
+            }
+
+            NatsMessage msg = this.loopRemaining;
+
+            if (msg == null) {
+                try {
+                    if (reconnectMode.get()) {
+                        msg = this.reconnectOutgoing.accumulate(this.sendBuffer.length, 1000, null);
+                    } else {
+                        msg = this.outgoing.accumulate(this.sendBuffer.length, 1000, null);
                     }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return LOOP_WRITE_DONE;
+                }
 
-                    byte[] bytes = msg.getProtocolBytes();
-                    System.arraycopy(bytes, 0, sendBuffer, sendPosition, bytes.length);
-                    sendPosition += bytes.length;
+                if (msg == null) {
+                    return LOOP_WRITE_DONE;
+                }
+
+                signalOutgoing();
+                registerPongs(msg, stats);
+            }
 
+            this.loopRemaining = prepareSegments(msg, stats);
+        }
+
+        return LOOP_WRITE_MORE;
+    }
+
+    // Called on the event loop once it has let go of the socket
+    void stoppedOnLoop() {
+        this.outgoing.setListener(null);
+        this.reconnectOutgoing.setListener(null);
+        this.clearLoopWrite();
+        this.running.set(false);
+        this.stopped.complete(Boolean.TRUE);
+    }
+
+    private void clearLoopWrite() {
+        Arrays.fill(this.segments, 0, this.loopSegmentCount, null);
+        this.loopSegmentCount = 0;
+        this.loopSegmentOffset = 0;
+        this.loopRemaining = null;
+    }
+
+    // Lays out the segments for one gathering write on the event loop, like sendGathered(), but stops when
+    // the send buffer is full instead of writing, and returns the first message that didn't fit. A message
+    // that doesn't fit in the empty buffer is written from its own arrays.
+    private NatsMessage prepareSegments(NatsMessage msg, NatsStatistics stats) {
+        int sendPosition = 0;
+        int segmentStart = 0;
+        int segmentCount = 0;
+        long toWrite = 0;
+
+        while (msg != null) {
+            long size = msg.getSizeInBytes();
+            byte[] data = msg.isProtocol() ? null : msg.getData();
+            boolean gather = (data != null && data.length >= GATHER_THRESHOLD);
+            boolean gatherChunk = msg.isEncoded() && size >= GATHER_THRESHOLD;
+            long buffered = gather ? (size - data.length) : (gatherChunk ? 0 : size);
+
+            if (sendPosition + buffered > sendBuffer.length || segmentCount + 4 > segments.length) {
+                if (sendPosition > 0 || segmentCount > 0) {
+                    break; // the rest goes in the next pass
+                }
+
+                segmentCount = addWrapped(msg, segmentCount);
+            } else if (gatherChunk) {
+                segmentCount = addSegment(segmentStart, sendPosition, segmentCount);
+                segments[segmentCount++] = ByteBuffer.wrap(msg.getEncoded(), 0, (int) size);
+                segmentStart = sendPosition;
+            } else if (msg.isEncoded()) {
+                sendPosition = copyMessage(msg, sendPosition);
+            } else {
+                sendPosition = copyProtocolLine(msg, sendPosition);
+
+                if (gather) {
+                    segmentCount = addSegment(segmentStart, sendPosition, segmentCount);
+                    segments[segmentCount++] = ByteBuffer.wrap(data);
+                    segmentStart = sendPosition;
                     sendBuffer[sendPosition++] = '\r';
                     sendBuffer[sendPosition++] = '\n';
+                } else if (data != null) {
+                    sendPosition = copyData(data, sendPosition);
+                }
+            }
+
+            toWrite += size;
+            stats.incrementOutMsgs(msg.getMessageCount());
+            stats.incrementOutBytes(size);
+
+            msg = msg.next;
+        }
+
+        this.loopSegmentCount = addSegment(segmentStart, sendPosition, segmentCount);
+        this.loopSegmentOffset = 0;
+        this.loopWriteSize = toWrite;
+        return msg;
+    }
+
+    // Adds a message as segments of its own arrays, without copying it
+    private int addWrapped(NatsMessage msg, int segmentCount) {
+        if (msg.isEncoded()) {
+            segments[segmentCount++] = ByteBuffer.wrap(msg.getEncoded(), 0, (int) msg.getSizeInBytes());
+            return segmentCount;
+        }
+
+        segments[segmentCount++] = ByteBuffer.wrap(msg.getProtocolBytes());
+        segments[segmentCount++] = ByteBuffer.wrap(NatsConnection.CRLF);
+
+        if (!msg.isProtocol()) {
+            segments[segmentCount++] = ByteBuffer.wrap(msg.getData());
+            segments[segmentCount++] = ByteBuffer.wrap(NatsConnection.CRLF);
+        }
+
+        return segmentCount;
+    }
+
+    // Puts the pong futures in the batch on the connection's pong queue, in the order their pings will
+    // be written. Published messages waiting for an ack are covered by the next ping, if there isn't
+    // one in the batch, a ping is added to the end of it.
+    private void registerPongs(NatsMessage msg, NatsStatistics stats) {
+        NatsMessage last = null;
+
+        for (NatsMessage cursor = msg; cursor != null; cursor = cursor.next) {
+            CompletableFuture<Boolean> pong = cursor.getPongFuture();
 
-                    if (!msg.isProtocol()) {
-                        bytes = msg.getData();
-                        System.arraycopy(bytes, 0, sendBuffer, sendPosition, bytes.length);
-                        sendPosition += bytes.length;
+            if (pong != null) {
+                if (cursor.isProtocol()) {
+                    registerPong(pong);
+                } else {
+                    this.pendingAcks.add(pong);
+                }
+            }
+
+            last = cursor;
+        }
+
+        if (!this.pendingAcks.isEmpty()) {
+            this.ackPing.next = null;
+            last.next = this.ackPing;
+            registerPong(new CompletableFuture<>());
+            stats.incrementPingCount();
+        }
+    }
 
-                        sendBuffer[sendPosition++] = '\r';
-                        sendBuffer[sendPosition++] = '\n';
+    private void registerPong(CompletableFuture<Boolean> pong) {
+        if (!this.pendingAcks.isEmpty()) {
+            ArrayList<CompletableFuture<Boolean>> acks = this.pendingAcks;
+            this.pendingAcks = new ArrayList<>();
+
+            pong.whenComplete((result, error) -> {
+                for (CompletableFuture<Boolean> ack : acks) {
+                    if (error != null) {
+                        ack.completeExceptionally(error);
+                    } else {
+                        ack.complete(result);
                     }
+                }
+            });
+        }
+
+        this.connection.registerPong(pong);
+    }
 
-                    stats.incrementOutMsgs();
-                    stats.incrementOutBytes(size);
+    private void cancelPong(NatsMessage msg) {
+        CompletableFuture<Boolean> pong = msg.getPongFuture();
+        if (pong != null) {
+            pong.cancel(true);
+        }
+    }
+
+    // Cancels the futures on messages that will never be written, the connection is closed
+    void cancelUnsent() {
+        this.outgoing.filter((msg) -> {
+            cancelPong(msg);
+            return true;
+        });
+        this.reconnectOutgoing.filter((msg) -> {
+            cancelPong(msg);
+            return true;
+        });
+    }
+
+    // Copies each message into the send buffer, writing when it fills up
+    private void sendBuffered(NatsMessage msg, DataPort dataPort, NatsStatistics stats) throws IOException {
+        int sendPosition = 0;
+
+        while (msg != null) {
+            long size = msg.getSizeInBytes();
 
-                    msg = msg.next;
+            if (msg.isEncoded() && sendPosition + size > sendBuffer.length) { // write a large chunk from its own array
+                if (sendPosition > 0) {
+                    dataPort.write(sendBuffer, sendPosition);
+                    stats.registerWrite(sendPosition);
+                    sendPosition = 0;
                 }
 
-                dataPort.write(sendBuffer, sendPosition);
-                connection.getNatsStatistics().registerWrite(sendPosition);
+                dataPort.write(msg.getEncoded(), (int) size);
+                stats.registerWrite(size);
+                stats.incrementOutMsgs(msg.getMessageCount());
+                stats.incrementOutBytes(size);
+                msg = msg.next;
+                continue;
             }
-        } catch (IOException | BufferOverflowException io) {
-            this.connection.handleCommunicationIssue(io);
-        } catch (CancellationException | ExecutionException | InterruptedException ex) {
-            // Exit
-        } finally {
-            this.running.set(false);
-            this.stopped.complete(Boolean.TRUE);
-            this.thread = null;
+
+            if (sendPosition + size > sendBuffer.length) {
+                if (sendPosition == 0) { // have to resize
+                    this.sendBuffer = new byte[(int)Math.max(sendBuffer.length + size, sendBuffer.length * 2)];
+                } else { // else send and then add this message
+                    dataPort.write(sendBuffer, sendPosition);
+                    stats.registerWrite(sendPosition);
+                    sendPosition = 0;
+                    continue;
+                }
+            }
+
+            sendPosition = copyMessage(msg, sendPosition);
+
+            stats.incrementOutMsgs(msg.getMessageCount());
+            stats.incrementOutBytes(size);
+
+            msg = msg.next;
         }
+
+        dataPort.write(sendBuffer, sendPosition);
+        stats.registerWrite(sendPosition);
+    }
+
+    // Copies protocol lines and small bodies into the send buffer, but hands large bodies
+    // to the data port in place, as their own segment of a gathering write
+    private void sendGathered(NatsMessage msg, GatheringDataPort dataPort, NatsStatistics stats) throws IOException {
+        int sendPosition = 0;
+        int segmentStart = 0;
+        int segmentCount = 0;
+        long toWrite = 0;
+
+        while (msg != null) {
+            long size = msg.getSizeInBytes();
+            byte[] data = msg.isProtocol() ? null : msg.getData();
+            boolean gather = (data != null && data.length >= GATHER_THRESHOLD);
+            boolean gatherChunk = msg.isEncoded() && size >= GATHER_THRESHOLD;
+            long buffered = gather ? (size - data.length) : (gatherChunk ? 0 : size);
+
+            // The last segment may need one slot for the buffer and one for the gathered body
+            if (sendPosition + buffered > sendBuffer.length || segmentCount + 3 > segments.length) {
+                if (sendPosition == 0 && segmentCount == 0) { // have to resize
+                    this.sendBuffer = new byte[(int)Math.max(sendBuffer.length + buffered, sendBuffer.length * 2)];
+                } else { // else send and then add this message
+                    segmentCount = addSegment(segmentStart, sendPosition, segmentCount);
+                    writeSegments(dataPort, segmentCount, toWrite, stats);
+                    sendPosition = 0;
+                    segmentStart = 0;
+                    segmentCount = 0;
+                    toWrite = 0;
+                    continue;
+                }
+            }
+
+            if (gatherChunk) { // the chunk is already encoded, so it is a segment on its own
+                segmentCount = addSegment(segmentStart, sendPosition, segmentCount);
+                segments[segmentCount++] = ByteBuffer.wrap(msg.getEncoded(), 0, (int) size);
+                segmentStart = sendPosition;
+                toWrite += size;
+                stats.incrementOutMsgs(msg.getMessageCount());
+                stats.incrementOutBytes(size);
+                msg = msg.next;
+                continue;
+            } else if (msg.isEncoded()) {
+                sendPosition = copyMessage(msg, sendPosition);
+                toWrite += size;
+                stats.incrementOutMsgs(msg.getMessageCount());
+                stats.incrementOutBytes(size);
+                msg = msg.next;
+                continue;
+            }
+
+            sendPosition = copyProtocolLine(msg, sendPosition);
+
+            if (gather) {
+                segmentCount = addSegment(segmentStart, sendPosition, segmentCount);
+                segments[segmentCount++] = ByteBuffer.wrap(data);
+                segmentStart = sendPosition;
+                sendBuffer[sendPosition++] = '\r';
+                sendBuffer[sendPosition++] = '\n';
+            } else if (data != null) {
+                sendPosition = copyData(data, sendPosition);
+            }
+
+            toWrite += size;
+            stats.incrementOutMsgs();
+            stats.incrementOutBytes(size);
+
+            msg = msg.next;
+        }
+
+        segmentCount = addSegment(segmentStart, sendPosition, segmentCount);
+        writeSegments(dataPort, segmentCount, toWrite, stats);
+    }
+
+    private int addSegment(int start, int end, int segmentCount) {
+        if (end > start) {
+            segments[segmentCount++] = ByteBuffer.wrap(sendBuffer, start, end - start);
+        }
+        return segmentCount;
+    }
+
+    private void writeSegments(GatheringDataPort dataPort, int segmentCount, long toWrite, NatsStatistics stats) throws IOException {
+        if (segmentCount > 0) {
+            dataPort.write(segments, segmentCount);
+            stats.registerWrite(toWrite);
+        }
+
+        // Don't hold on to the published bodies
+        Arrays.fill(segments, 0, segmentCount, null);
+    }
+
+    // Copies the whole message, the send buffer must have room for it
+    private int copyMessage(NatsMessage msg, int sendPosition) {
+        if (msg.isEncoded()) {
+            int size = (int) msg.getSizeInBytes();
+            System.arraycopy(msg.getEncoded(), 0, sendBuffer, sendPosition, size);
+            return sendPosition + size;
+        }
+
+        sendPosition = copyProtocolLine(msg, sendPosition);
+
+        if (!msg.isProtocol()) {
+            sendPosition = copyData(msg.getData(), sendPosition);
+        }
+
+        return sendPosition;
+    }
+
+    private int copyProtocolLine(NatsMessage msg, int sendPosition) {
+        byte[] bytes = msg.getProtocolBytes();
+        System.arraycopy(bytes, 0, sendBuffer, sendPosition, bytes.length);
+        sendPosition += bytes.length;
+
+        sendBuffer[sendPosition++] = '\r';
+        sendBuffer[sendPosition++] = '\n';
+        return sendPosition;
+    }
+
+    private int copyData(byte[] bytes, int sendPosition) {
+        System.arraycopy(bytes, 0, sendBuffer, sendPosition, bytes.length);
+        sendPosition += bytes.length;
+
+        sendBuffer[sendPosition++] = '\r';
+        sendBuffer[sendPosition++] = '\n';
+        return sendPosition;
+    }
+
+    int getSendBufferLength() {
+        return this.sendBuffer.length;
     }
 
     void setReconnectMode(boolean tf) {
@@ -170,7 +594,124 @@ class NatsConnectionWriter implements Runnable {
         return (maxSize <= 0 || (outgoing.sizeInBytes() + msg.getSizeInBytes()) < maxSize);
     }
 
+    // A message always fits in an empty queue, even if it is larger than maxBytes, or is a chunk with
+    // more than maxMessages messages. Publishers push after this check without a lock, so racing
+    // publishers can overshoot the limits by one message each, which the options doc allows.
+    boolean hasRoomFor(NatsMessage msg, long maxMessages, long maxBytes) {
+        if (this.outgoing.length() == 0) {
+            return true;
+        }
+
+        return (maxMessages <= 0 || this.outgoing.messageCount() + msg.getMessageCount() <= maxMessages)
+                    && (maxBytes <= 0 || this.outgoing.sizeInBytes() + msg.getSizeInBytes() <= maxBytes);
+    }
+
+    long outgoingBytes() {
+        return this.outgoing.sizeInBytes();
+    }
+
+    long outgoingMessageCount() {
+        return this.outgoing.messageCount();
+    }
+
+    // Makes room for msg by dropping the oldest published messages, returns the number dropped, counting
+    // each message in a dropped chunk
+    long dropOldest(NatsMessage msg, long maxMessages, long maxBytes) {
+        long messages = (maxMessages > 0) ? Math.max(maxMessages - msg.getMessageCount(), 0) : -1;
+        long bytes = (maxBytes > 0) ? Math.max(maxBytes - msg.getSizeInBytes(), 0) : -1;
+        return this.outgoing.dropOldest(messages, bytes, this::cancelPong);
+    }
+
+    // Waits until the condition is true, or the timeout passes, re-checking it each time the writer
+    // takes messages off the queue. Returns the last result of the condition.
+    boolean awaitOutgoing(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        if (condition.getAsBoolean()) {
+            return true;
+        }
+
+        long nanos = (timeout != null) ? timeout.toNanos() : 0;
+        long end = System.nanoTime() + nanos;
+
+        this.outgoingWaiters.incrementAndGet();
+        this.outgoingLock.lock();
+        try {
+            while (!condition.getAsBoolean()) {
+                if (this.connection.isClosed()) {
+                    return false;
+                }
+
+                if (nanos <= 0) {
+                    this.outgoingSpace.await();
+                } else {
+                    long remaining = end - System.nanoTime();
+
+                    if (remaining <= 0) {
+                        return false;
+                    }
+
+                    this.outgoingSpace.awaitNanos(remaining);
+                }
+            }
+            return true;
+        } finally {
+            this.outgoingLock.unlock();
+            this.outgoingWaiters.decrementAndGet();
+        }
+    }
+
+    // Wakes threads in awaitOutgoing(), the waiter count keeps this cheap when no one is waiting
+    void signalOutgoing() {
+        if (this.outgoingWaiters.get() > 0) {
+            this.outgoingLock.lock();
+            try {
+                this.outgoingSpace.signalAll();
+            } finally {
+                this.outgoingLock.unlock();
+            }
+        }
+    }
+
     void queue(NatsMessage msg) {
+        if (this.directPublish && writeDirect(msg)) {
+            return;
+        }
+        this.outgoing.push(msg);
+    }
+
+    // Writes the message from the caller's thread if nothing is queued and no one else is writing.
+    // Returns false if the message should be queued instead. Messages waiting for an ack are always
+    // queued, since the writer sends the ping that covers them.
+    private boolean writeDirect(NatsMessage msg) {
+        DataPort dataPort = this.directPort;
+
+        if (dataPort == null || msg.getPongFuture() != null || this.reconnectMode.get() || !this.writeLock.tryLock()) {
+            return false;
+        }
+
+        try {
+            // The writer only takes messages with the lock, so an empty queue means nothing is ahead of us
+            if (this.directPort != dataPort || !this.running.get() || this.outgoing.length() != 0) {
+                return false;
+            }
+
+            NatsStatistics stats = this.connection.getNatsStatistics();
+
+            if (dataPort instanceof GatheringDataPort) {
+                sendGathered(msg, (GatheringDataPort) dataPort, stats);
+            } else {
+                sendBuffered(msg, dataPort, stats);
+            }
+            return true;
+        } catch (IOException | BufferOverflowException io) {
+            this.connection.handleCommunicationIssue(io);
+            return false; // queue it, so it is sent again after a reconnect
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    // Queues the message without trying to write it from the caller's thread
+    void queueForWriter(NatsMessage msg) {
         this.outgoing.push(msg);
     }
 
@@ -201,7 +201,7 @@ abstract class NatsConsumer implements Consumer {
 
         // Wait for the timeout or the pending count to go to 0, skipped if conn is
         // draining
-        Thread t = new Thread(() -> {
+        this.connection.execute(() -> {
             try {
                 Instant now = Instant.now();
 
@@ -222,9 +222,7 @@ abstract class NatsConsumer implements Consumer {
             } finally {
                 tracker.complete(this.isDrained());
             }
-       });
-       t.setName("Consumer Drain");
-       t.start();
+       }, "Consumer Drain");
 
        return getDrainingFuture();
    }
@@ -14,11 +14,18 @@
 package io.nats.client.impl;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+import io.nats.client.BatchMessageHandler;
 import io.nats.client.Dispatcher;
+import io.nats.client.Message;
 import io.nats.client.MessageHandler;
 
 class NatsDispatcher extends NatsConsumer implements Dispatcher, Runnable {
@@ -26,9 +33,35 @@ class NatsDispatcher extends NatsConsumer implements Dispatcher, Runnable {
     private MessageQueue incoming;
     private MessageHandler handler;
 
+    // Batch dispatchers have a single lane, and reuse one list for every batch. When the lane runs
+    // as a task, a batch that is still filling is kept in the list while the task waits out the linger.
+    private final BatchMessageHandler batchHandler;
+    private final int batchMaxMessages;
+    private final long batchMaxBytes;
+    private final Duration batchLinger;
+    private final ArrayList<Message> batch;
+
+    // Inline dispatchers have no queue consumer, the reader calls the handler itself. A call that
+    // takes longer than slowHandlerNanos marks the dispatcher slow.
+    private final boolean inline;
+    private final long slowHandlerNanos;
+
     private Thread thread;
     private final AtomicBoolean running;
 
+    // With more than one lane, each lane has its own queue and thread, and messages are assigned
+    // to a lane by the hash of their key. The first lane is incoming and thread.
+    private final MessageQueue[] lanes;
+    private final Thread[] laneThreads;
+    private final Function<? super Message, ?> keyFunction;
+    private final AtomicInteger runningLanes;
+
+    // With an executor from the options, each lane is a task that is submitted when messages are
+    // pushed to it, instead of a thread. The scheduled flag keeps one task per lane at a time.
+    private final Executor executor;
+    private final AtomicBoolean[] laneScheduled;
+    static final int MAX_TASK_MESSAGES = 1000; // then the task is resubmitted, so lanes take turns
+
     private String id;
 
     private Map<String, NatsSubscription> subscriptions;
@@ -36,84 +69,321 @@ class NatsDispatcher extends NatsConsumer implements Dispatcher, Runnable {
 
 
     NatsDispatcher(NatsConnection conn, MessageHandler handler) {
+        this(conn, handler, 1, null);
+    }
+
+    NatsDispatcher(NatsConnection conn, MessageHandler handler, int parallelism, Function<? super Message, ?> keyFunction) {
+        this(conn, handler, parallelism, keyFunction, null, 0, 0, null, false, null);
+    }
+
+    NatsDispatcher(NatsConnection conn, MessageHandler handler, Duration slowHandlerTime) {
+        this(conn, handler, 1, null, null, 0, 0, null, true, slowHandlerTime);
+    }
+
+    NatsDispatcher(NatsConnection conn, BatchMessageHandler handler, int maxMessages, long maxBytes, Duration linger) {
+        this(conn, null, 1, null, handler, maxMessages, maxBytes, linger, false, null);
+    }
+
+    private NatsDispatcher(NatsConnection conn, MessageHandler handler, int parallelism, Function<? super Message, ?> keyFunction,
+                            BatchMessageHandler batchHandler, int maxMessages, long maxBytes, Duration linger,
+                            boolean inline, Duration slowHandlerTime) {
         super(conn);
+        this.inline = inline;
+        this.slowHandlerNanos = (slowHandlerTime != null && !slowHandlerTime.isZero()) ? slowHandlerTime.toNanos() : Long.MAX_VALUE;
         this.handler = handler;
-        this.incoming = new MessageQueue(true);
+        this.batchHandler = batchHandler;
+        this.batchMaxMessages = maxMessages;
+        this.batchMaxBytes = (maxBytes > 0) ? maxBytes : -1;
+        this.batchLinger = linger;
+        this.batch = (batchHandler != null) ? new ArrayList<>(maxMessages) : null;
+        this.keyFunction = keyFunction;
+        this.lanes = new MessageQueue[parallelism];
+        this.laneThreads = new Thread[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            this.lanes[i] = new MessageQueue(true, conn.getOptions().getWaitStrategy());
+        }
+        this.incoming = this.lanes[0];
+        this.executor = conn.getOptions().getExecutor();
+        this.laneScheduled = new AtomicBoolean[parallelism];
+        if (this.executor != null && !inline) {
+            for (int i = 0; i < parallelism; i++) {
+                int index = i;
+                this.laneScheduled[i] = new AtomicBoolean();
+                this.lanes[i].setListener(() -> schedule(index));
+            }
+        }
         this.subscriptions = new ConcurrentHashMap<>();
         this.running = new AtomicBoolean(false);
+        this.runningLanes = new AtomicInteger();
         this.waitForMessage = Duration.ofMinutes(5); // This can be long since we aren't doing anything
     }
 
     void start(String id) {
         this.id = id;
         this.running.set(true);
+        this.runningLanes.set(this.lanes.length);
+
+        if (this.inline) {
+            return;
+        }
+
+        if (this.executor != null) {
+            for (int i = 0; i < this.lanes.length; i++) {
+                schedule(i);
+            }
+            return;
+        }
+
         String name = (this.connection.getOptions().getConnectionName() != null) ? this.connection.getOptions().getConnectionName() : "Nats Connection";
         this.thread = new Thread(this, name + " Dispatcher");
-        this.thread.start();
-    }
 
-    boolean breakRunLoop() {
-        return this.incoming.isDrained();
+        for (int i = 1; i < this.lanes.length; i++) {
+            MessageQueue lane = this.lanes[i];
+            this.laneThreads[i] = new Thread(() -> dispatch(lane), name + " Dispatcher " + i);
+        }
+        this.laneThreads[0] = this.thread;
+
+        for (Thread t : this.laneThreads) {
+            t.start();
+        }
     }
 
     public void run() {
+        dispatch(this.incoming);
+    }
+
+    void dispatch(MessageQueue queue) {
         try {
             while (this.running.get()) {
                 
-                NatsMessage msg = this.incoming.pop(this.waitForMessage);
+                dispatchNext(queue, this.waitForMessage);
 
-                if (msg == null) {
-                    if (breakRunLoop()) {
-                        return;
-                    } else {
-                        continue;
-                    }
+                if (queue.isDrained()) {
+                    // will set the dispatcher to not active, once every lane is done
+                    return;
                 }
+            }
+        } catch (InterruptedException exp) {
+            if (this.running.get()){
+                this.connection.processException(exp);
+            } //otherwise we did it
+        } finally {
+            if (this.runningLanes.decrementAndGet() == 0) {
+                this.running.set(false);
+                this.thread = null;
+            }
+        }
+    }
 
-                NatsSubscription sub = msg.getNatsSubscription();
+    boolean isInline() {
+        return this.inline;
+    }
 
-                if (sub != null && sub.isActive()) {
+    // Called by the connection on the reader thread, the next message can't be read until this returns
+    void deliverInline(NatsMessage msg) {
+        if (!this.running.get()) {
+            msg.release();
+            return;
+        }
 
-                    sub.incrementDeliveredCount();
-                    this.incrementDeliveredCount();
+        long start = System.nanoTime();
+        deliver(msg);
+        long elapsed = System.nanoTime() - start;
 
-                    try {
-                        handler.onMessage(msg);
-                    } catch (Exception exp) {
-                        this.connection.processException(exp);
-                    }
+        if (elapsed > this.slowHandlerNanos) {
+            // Notify the first time
+            if (!this.isMarkedSlow()) {
+                this.markSlow();
+                this.connection.processSlowConsumer(this);
+            }
+        } else {
+            this.markNotSlow();
+        }
+    }
 
-                    if (sub.reachedUnsubLimit()) {
-                        this.connection.invalidate(sub);
-                    }
+    // Pops the next message, or batch, and hands it to the handler. Returns the number of messages popped.
+    private int dispatchNext(MessageQueue queue, Duration timeout) throws InterruptedException {
+        if (this.batchHandler != null) {
+            int count = queue.popBatch(this.batch, this.batchMaxMessages, this.batchMaxBytes, timeout, this.batchLinger);
+            deliverBatch();
+            return count;
+        }
+
+        NatsMessage msg = queue.pop(timeout);
+
+        if (msg == null) {
+            return 0;
+        }
+
+        deliver(msg);
+        return 1;
+    }
+
+    private void deliver(NatsMessage msg) {
+        NatsSubscription sub = msg.getNatsSubscription();
+
+        if (sub != null && sub.isActive()) {
+
+            sub.incrementDeliveredCount();
+            this.incrementDeliveredCount();
+
+            try {
+                handler.onMessage(msg);
+            } catch (Exception exp) {
+                this.connection.processException(exp);
+            }
+
+            if (sub.reachedUnsubLimit()) {
+                this.connection.invalidate(sub);
+            }
+        }
+    }
+
+    // Leaves out messages for inactive subscriptions, or past their unsubscribe limit, then clears the batch
+    private void deliverBatch() {
+        ArrayList<Message> batch = this.batch;
+        int kept = 0;
+
+        for (int i = 0, max = batch.size(); i < max; i++) {
+            NatsMessage msg = (NatsMessage) batch.get(i);
+            NatsSubscription sub = msg.getNatsSubscription();
+
+            if (sub != null && sub.isActive() && !sub.reachedUnsubLimit()) {
+                sub.incrementDeliveredCount();
+                this.incrementDeliveredCount();
+                batch.set(kept++, msg);
+            }
+        }
+
+        batch.subList(kept, batch.size()).clear();
+
+        if (kept > 0) {
+            try {
+                batchHandler.onMessages(batch);
+            } catch (Exception exp) {
+                this.connection.processException(exp);
+            }
+
+            for (int i = 0; i < kept; i++) {
+                NatsSubscription sub = ((NatsMessage) batch.get(i)).getNatsSubscription();
+
+                if (sub.isActive() && sub.reachedUnsubLimit()) {
+                    this.connection.invalidate(sub);
                 }
+            }
+        }
 
-                if (breakRunLoop()) {
-                    // will set the dispatcher to not active
-                    return;
+        batch.clear();
+    }
+
+    private void schedule(int index) {
+        if (this.running.get() && this.laneScheduled[index].compareAndSet(false, true)) {
+            try {
+                this.executor.execute(() -> runTask(index));
+            } catch (RejectedExecutionException exp) {
+                // Usually called on the reader thread, which has to keep going, the next push tries again
+                this.laneScheduled[index].set(false);
+                this.connection.processException(exp);
+            }
+        }
+    }
+
+    // Handles the lane's messages on an executor thread. A drained lane keeps its scheduled flag,
+    // so it is never submitted again.
+    private void runTask(int index) {
+        MessageQueue queue = this.lanes[index];
+
+        try {
+            int handled = 0;
+
+            while (handled < MAX_TASK_MESSAGES && this.running.get()) {
+                int count = (this.batchHandler != null) ? dispatchTaskBatch(queue, index) : dispatchNext(queue, null);
+
+                if (count < 0) {
+                    return; // comes back after the linger, still scheduled
+                } else if (count == 0) {
+                    break;
                 }
+
+                handled += count;
             }
         } catch (InterruptedException exp) {
-            if (this.running.get()){
-                this.connection.processException(exp);
-            } //otherwise we did it
-        } finally {
-            this.running.set(false);
-            this.thread = null;
+            // the pops here don't wait for the first message, but pass the interrupt on to the executor
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.batchHandler != null && !this.batch.isEmpty()) {
+            deliverBatch(); // stopped while it was filling, inactive subscriptions are left out
+        }
+
+        if (queue.isDrained()) {
+            if (this.runningLanes.decrementAndGet() == 0) {
+                this.running.set(false);
+            }
+            return;
+        }
+
+        // Check again after clearing the flag, a push in between couldn't schedule us
+        this.laneScheduled[index].set(false);
+        if (!queue.isEmpty() || queue.isDrained()) {
+            schedule(index);
+        }
+    }
+
+    // Pops a batch for a lane running as a task, which mustn't hold the executor's thread for the linger.
+    // A batch that isn't full is kept, and the task is scheduled to come back and finish it once the
+    // linger is up. Returns the number of messages popped, or -1 if the task will come back.
+    private int dispatchTaskBatch(MessageQueue queue, int index) throws InterruptedException {
+        ArrayList<Message> batch = this.batch;
+        boolean lingered = !batch.isEmpty();
+        long roomBytes = (this.batchMaxBytes > 0) ? this.batchMaxBytes - batchBytes() : -1;
+        int count = queue.popBatch(batch, this.batchMaxMessages - batch.size(), roomBytes, null, null);
+
+        if (!lingered && count > 0 && this.batchLinger != null && !this.batchLinger.isZero()
+                && batch.size() < this.batchMaxMessages && (this.batchMaxBytes <= 0 || batchBytes() < this.batchMaxBytes)
+                && this.connection.scheduleOnce(() -> resubmit(index), this.batchLinger)) {
+            return -1;
+        }
+
+        deliverBatch();
+        return count;
+    }
+
+    private long batchBytes() {
+        long bytes = 0;
+        for (int i = 0, max = this.batch.size(); i < max; i++) {
+            bytes += ((NatsMessage) this.batch.get(i)).getSizeInBytes();
+        }
+        return bytes;
+    }
+
+    // Called on the scheduler once a batch has lingered, the lane is still marked scheduled
+    private void resubmit(int index) {
+        try {
+            this.executor.execute(() -> runTask(index));
+        } catch (RejectedExecutionException exp) {
+            // The kept batch goes out with the next message
+            this.laneScheduled[index].set(false);
+            this.connection.processException(exp);
         }
     }
 
     void stop(boolean unsubscribeAll) {
         this.running.set(false);
-        this.incoming.pause();
 
-        if (this.thread != null) {
-            try {
-                if (this.thread.isAlive()) {
-                    this.thread.interrupt();
+        for (MessageQueue lane : this.lanes) {
+            lane.pause();
+        }
+
+        for (Thread t : this.laneThreads) {
+            if (t != null) {
+                try {
+                    if (t.isAlive()) {
+                        t.interrupt();
+                    }
+                } catch (Exception exp) {
+                    // let it go
                 }
-            } catch (Exception exp) {
-                // let it go
             }
         }
 
@@ -138,9 +408,61 @@ class NatsDispatcher extends NatsConsumer implements Dispatcher, Runnable {
         return incoming;
     }
 
+    // Picks the lane for a message, messages with equal keys always share a lane
+    MessageQueue getMessageQueue(NatsMessage msg) {
+        if (this.lanes.length == 1) {
+            return this.incoming;
+        }
+
+        int hash;
+
+        try {
+            Object key = (this.keyFunction != null) ? this.keyFunction.apply(msg) : msg.getSubject();
+            hash = (key != null) ? key.hashCode() : 0;
+        } catch (RuntimeException exp) {
+            // Called on the reader thread, so a bad key can't be allowed to stop it
+            this.connection.processException(exp);
+            return this.lanes[0];
+        }
+
+        hash ^= (hash >>> 16);
+        return this.lanes[Math.floorMod(hash, this.lanes.length)];
+    }
+
+    int getParallelism() {
+        return this.lanes.length;
+    }
+
+    public long getPendingMessageCount() {
+        long count = 0;
+        for (MessageQueue lane : this.lanes) {
+            count += lane.length();
+        }
+        return count;
+    }
+
+    public long getPendingByteCount() {
+        long bytes = 0;
+        for (MessageQueue lane : this.lanes) {
+            bytes += lane.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    void markUnsubedForDrain() {
+        for (MessageQueue lane : this.lanes) {
+            lane.drain();
+        }
+
+        // The reader handled every message sent before the flush's pong, so there is nothing left
+        if (this.inline) {
+            this.running.set(false);
+        }
+    }
+
     void resendSubscriptions() {
         this.subscriptions.forEach((id, sub)->{
-            this.connection.sendSubscriptionMessage(sub.getSID(), sub.getSubject(), sub.getQueueName(), true);
+            this.connection.sendSubscriptionMessage(sub.getSIDString(), sub.getSubject(), sub.getQueueName(), true);
         });
     }
 
@@ -0,0 +1,162 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One thread and one selector, reading and writing the sockets of every connection registered on it.
+ * Work from other threads, like a publisher asking for a write, is queued as a task and the selector is
+ * woken up to run it. Anything a channel throws fails only that channel's connection, the loop keeps
+ * running for the others.
+ */
+class NatsEventLoop implements Runnable {
+
+    // Work queued for one channel
+    static final class Task {
+        final EventLoopChannel channel;
+        final Runnable work;
+
+        Task(EventLoopChannel channel, Runnable work) {
+            this.channel = channel;
+            this.work = work;
+        }
+    }
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Task> tasks;
+    private final AtomicBoolean running;
+    private final Thread thread;
+
+    NatsEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.running = new AtomicBoolean(true);
+        this.thread = new LoopThread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    Thread getThread() {
+        return this.thread;
+    }
+
+    Selector getSelector() {
+        return this.selector;
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    // True on the thread of any event loop, which mustn't wait for a loop to do something
+    static boolean inAnyLoop() {
+        return Thread.currentThread() instanceof LoopThread;
+    }
+
+    boolean isRunning() {
+        return this.running.get();
+    }
+
+    // Runs the task on the loop, tasks run in the order they are queued
+    void execute(Task task) {
+        this.tasks.add(task);
+
+        if (!inLoop()) {
+            this.selector.wakeup();
+        }
+    }
+
+    void stop() {
+        this.running.set(false);
+        this.selector.wakeup();
+    }
+
+    public void run() {
+        try {
+            while (this.running.get()) {
+                // Tasks queued on the loop itself, like a write requested by an inline handler, don't wake it up
+                if (this.tasks.isEmpty()) {
+                    this.selector.select();
+                } else {
+                    this.selector.selectNow();
+                }
+                runTasks();
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    EventLoopChannel channel = (EventLoopChannel) key.attachment();
+                    try {
+                        channel.onReady(key);
+                    } catch (RuntimeException | Error ex) {
+                        channel.failOnLoop(ex);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException ex) {
+            // Exit, the channels are failed below
+        } finally {
+            this.running.set(false);
+
+            IOException closed = new IOException("Event loop stopped.");
+
+            try {
+                for (SelectionKey key : this.selector.keys()) {
+                    ((EventLoopChannel) key.attachment()).fail(closed);
+                }
+            } catch (ClosedSelectorException ex) {
+                // Nothing was registered
+            }
+
+            runTasks(); // let closes that were queued finish
+
+            try {
+                this.selector.close();
+            } catch (IOException ex) {
+                // Ignore, we are done with it
+            }
+        }
+    }
+
+    private void runTasks() {
+        Task task;
+
+        while ((task = this.tasks.poll()) != null) {
+            try {
+                task.work.run();
+            } catch (RuntimeException | Error ex) {
+                task.channel.failOnLoop(ex);
+            }
+        }
+    }
+
+    private static final class LoopThread extends Thread {
+        LoopThread(Runnable target, String name) {
+            super(target, name);
+        }
+    }
+}
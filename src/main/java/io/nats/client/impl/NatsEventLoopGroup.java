@@ -0,0 +1,70 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.nats.client.EventLoopGroup;
+
+/**
+ * The event loop group created by {@link NatsImpl#createEventLoopGroup(int) createEventLoopGroup()}, connections
+ * are given its loops in turn.
+ */
+class NatsEventLoopGroup implements EventLoopGroup {
+    private final NatsEventLoop[] loops;
+    private final AtomicInteger next;
+
+    // Creates the group and starts its threads
+    NatsEventLoopGroup(int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An event loop group needs at least one thread");
+        }
+
+        this.loops = new NatsEventLoop[threads];
+        this.next = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++) {
+            this.loops[i] = new NatsEventLoop("Nats Event Loop " + i);
+        }
+
+        for (NatsEventLoop loop : this.loops) {
+            loop.start();
+        }
+    }
+
+    public int getThreadCount() {
+        return this.loops.length;
+    }
+
+    // The loop for the next connection
+    NatsEventLoop next() {
+        return this.loops[Math.floorMod(this.next.getAndIncrement(), this.loops.length)];
+    }
+
+    boolean isClosed() {
+        for (NatsEventLoop loop : this.loops) {
+            if (loop.isRunning()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void close() {
+        for (NatsEventLoop loop : this.loops) {
+            loop.stop();
+        }
+    }
+}
@@ -17,6 +17,7 @@ import java.io.IOException;
 
 import io.nats.client.AuthHandler;
 import io.nats.client.Connection;
+import io.nats.client.EventLoopGroup;
 import io.nats.client.Options;
 import io.nats.client.Statistics;
 
@@ -30,6 +31,14 @@ public class NatsImpl {
         return conn;
     }
 
+    public static Connection createShardedConnection(Options options, int shards) throws IOException, InterruptedException {
+        return ShardedConnection.connect(options, shards);
+    }
+
+    public static EventLoopGroup createEventLoopGroup(int threads) throws IOException {
+        return new NatsEventLoopGroup(threads);
+    }
+
     public static Statistics createEmptyStats() {
         return new NatsStatistics(false);
     }
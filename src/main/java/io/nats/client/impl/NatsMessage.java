@@ -13,21 +13,42 @@
 
 package io.nats.client.impl;
 
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 import io.nats.client.Message;
 import io.nats.client.Subscription;
 
 class NatsMessage implements Message {
-    private String sid;
+    private long sid;
     private String subject;
     private String replyTo;
     private byte[] data;
+    private int dataLength;
+    private PayloadPool pool; // set while data is a pooled buffer
+
+    // Completed by the PONG for the first PING written after this message, used by pings and publishAsync
+    private CompletableFuture<Boolean> pongFuture;
     private byte[] protocolBytes;
     private NatsSubscription subscription;
     private long sizeInBytes;
+    private boolean protocol;
+
+    // A chunk of messages encoded by a publish batch, the writer sends these bytes as they are
+    private byte[] encoded;
+    private int encodedCount;
+
+    // Incoming messages keep the subject and reply bytes from the control line, and decode them when asked.
+    // With a payload pool the header is stored after the payload in the same pooled buffer.
+    private byte[] header;
+    private int headerOffset;
+    private int headerLength;
+    private int subjectLength;
+    private boolean utf8;
     
-    NatsMessage next; // for linked list
+    volatile NatsMessage next; // for linked list, and as the node in an MpscIntrusiveQueue
 
     static final byte[] digits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
 
@@ -42,6 +63,7 @@ class NatsMessage implements Message {
 
     private static String PUB_SPACE = NatsConnection.OP_PUB + " ";
     private static String SPACE = " ";
+    private static byte[] PUB_SPACE_BYTES = PUB_SPACE.getBytes(StandardCharsets.US_ASCII);
 
     // Create a message to publish
     NatsMessage(String subject, String replyTo, byte[] data, boolean utf8mode) {
@@ -113,26 +135,111 @@ class NatsMessage implements Message {
         this.sizeInBytes = this.protocolBytes.length + data.length + 4;// for 2x \r\n
     }
 
+    // Create a request to publish, the reply to is the inbox prefix followed by the token's digits.
+    // Builds the protocol bytes directly, without making a string for the reply to.
+    NatsMessage(String subject, byte[] replyPrefix, long replyToken, byte[] data, boolean utf8mode) {
+        this.subject = subject;
+        this.data = data;
+
+        byte[] subjectBytes = utf8mode ? subject.getBytes(StandardCharsets.UTF_8) : null;
+        int subjectLength = (subjectBytes != null) ? subjectBytes.length : subject.length();
+        int tokenDigits = digitCount(replyToken);
+        int lengthDigits = digitCount(data.length);
+
+        this.protocolBytes = new byte[4 + subjectLength + 1 + replyPrefix.length + tokenDigits + 1 + lengthDigits];
+
+        int pos = 4;
+        System.arraycopy(PUB_SPACE_BYTES, 0, protocolBytes, 0, 4);
+
+        if (subjectBytes != null) {
+            System.arraycopy(subjectBytes, 0, protocolBytes, pos, subjectLength);
+            pos += subjectLength;
+        } else {
+            pos = copy(protocolBytes, pos, subject);
+        }
+
+        protocolBytes[pos] = ' ';
+        pos++;
+        System.arraycopy(replyPrefix, 0, protocolBytes, pos, replyPrefix.length);
+        pos += replyPrefix.length;
+        pos = copyDigits(protocolBytes, pos, replyToken, tokenDigits);
+        protocolBytes[pos] = ' ';
+        pos++;
+        copyDigits(protocolBytes, pos, data.length, lengthDigits);
+
+        this.sizeInBytes = this.protocolBytes.length + data.length + 4;// for 2x \r\n
+    }
+
+    static int digitCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    // Writes a non-negative value as count decimal digits
+    static int copyDigits(byte[] dest, int pos, long value, int count) {
+        for (int i = pos + count - 1; i >= pos; i--) {
+            dest[i] = digits[(int) (value % 10)];
+            value /= 10;
+        }
+        return pos + count;
+    }
+
+    // Create an empty message, used as the stub node in an MpscIntrusiveQueue
+    NatsMessage() {
+    }
+
+    // Create a chunk from the first length bytes of encoded, holding count publishes, see NatsPublishBatch
+    NatsMessage(byte[] encoded, int length, int count) {
+        this.encoded = encoded;
+        this.encodedCount = count;
+        this.sizeInBytes = length;
+    }
+
+    boolean isEncoded() {
+        return this.encoded != null;
+    }
+
+    // The encoded bytes, only the first getSizeInBytes() are used
+    byte[] getEncoded() {
+        return this.encoded;
+    }
+
+    // The number of messages this one is sent as, more than one for an encoded chunk
+    int getMessageCount() {
+        return (this.encoded != null) ? this.encodedCount : 1;
+    }
+
     // Create a protocol only message to publish
     NatsMessage(String protocol) {
+        this.protocol = true;
         this.protocolBytes = protocol.getBytes(StandardCharsets.UTF_8);
         this.sizeInBytes = this.protocolBytes.length + 2;// for \r\n
     }
 
-    // Create an incoming message for a subscriber
+    // Create an incoming message for a subscriber, the header holds the subject followed by the reply to, if there is one
     // Doesn't check controlline size, since the server sent us the message
-    NatsMessage(String sid, String subject, String replyTo, int protocolLength) {
+    NatsMessage(long sid, byte[] header, int subjectLength, boolean utf8, int protocolLength) {
+        this(sid, header, 0, header.length, subjectLength, utf8, protocolLength);
+    }
+
+    // Create an incoming message whose header is a slice of a larger buffer, headerLength bytes from headerOffset
+    NatsMessage(long sid, byte[] header, int headerOffset, int headerLength, int subjectLength, boolean utf8, int protocolLength) {
         this.sid = sid;
-        this.subject = subject;
-        if (replyTo != null) {
-            this.replyTo = replyTo;
-        }
+        this.header = header;
+        this.headerOffset = headerOffset;
+        this.headerLength = headerLength;
+        this.subjectLength = subjectLength;
+        this.utf8 = utf8;
         this.sizeInBytes = protocolLength + 2;
         this.data = null; // will set data and size after we read it
     }
 
     boolean isProtocol() {
-        return this.subject == null;
+        return this.protocol;
     }
 
     // Will be null on an incoming message
@@ -148,14 +255,29 @@ class NatsMessage implements Message {
         return sizeInBytes;
     }
 
-    String getSID() {
+    long getSID() {
         return this.sid;
     }
 
     // Only for incoming messages, with no protocol bytes
     void setData(byte[] data) {
+        setData(data, data.length, null);
+    }
+
+    // The data may be a pooled buffer that is longer than the payload
+    void setData(byte[] data, int length, PayloadPool pool) {
         this.data = data;
-        this.sizeInBytes += data.length + 2;// for \r\n, we already set the length for the protocol bytes in the constructor
+        this.dataLength = length;
+        this.pool = pool;
+        this.sizeInBytes += length + 2;// for \r\n, we already set the length for the protocol bytes in the constructor
+    }
+
+    void setPongFuture(CompletableFuture<Boolean> future) {
+        this.pongFuture = future;
+    }
+
+    CompletableFuture<Boolean> getPongFuture() {
+        return this.pongFuture;
     }
 
     void setSubscription(NatsSubscription sub) {
@@ -166,21 +288,111 @@ class NatsMessage implements Message {
         return this.subscription;
     }
 
+    private Charset headerCharset() {
+        // Without utf-8 support subjects are treated as one byte per character
+        return this.utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+    }
+
+    // Decoding may race on different threads, but they all produce equal strings
     public String getSubject() {
+        if (this.subject == null && this.header != null) {
+            this.subject = new String(this.header, this.headerOffset, this.subjectLength, headerCharset());
+        }
         return this.subject;
     }
 
     public String getReplyTo() {
-        if (this.replyTo == null) {
-            return null;
+        if (this.replyTo == null && this.header != null && this.headerLength > this.subjectLength) {
+            this.replyTo = new String(this.header, this.headerOffset + this.subjectLength,
+                                        this.headerLength - this.subjectLength, headerCharset());
+        } else if (this.replyTo == null && this.header == null && this.protocolBytes != null && !this.protocol) {
+            this.replyTo = replyFromProtocol();
         }
         return this.replyTo;
     }
 
+    // A request built from a reply prefix and token keeps the reply to only in its protocol bytes,
+    // which are PUB subject reply length when there is one
+    private String replyFromProtocol() {
+        int start = -1;
+        int spaces = 0;
+
+        for (int i = 0; i < this.protocolBytes.length; i++) {
+            if (this.protocolBytes[i] == ' ') {
+                spaces++;
+                if (spaces == 2) {
+                    start = i + 1;
+                } else if (spaces == 3) {
+                    return new String(this.protocolBytes, start, i - start, StandardCharsets.UTF_8);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    // Reads the decimal token at the end of the subject, after the last '.', without decoding the subject.
+    // Returns -1 if the subject doesn't end with a token.
+    long getSubjectToken() {
+        byte[] bytes;
+        int first;
+        int end;
+
+        if (this.header != null) {
+            bytes = this.header;
+            first = this.headerOffset;
+            end = first + this.subjectLength;
+        } else if (this.subject != null) {
+            bytes = this.subject.getBytes(StandardCharsets.UTF_8);
+            first = 0;
+            end = bytes.length;
+        } else {
+            return -1;
+        }
+
+        int start = end;
+        while (start > first && bytes[start - 1] != '.') {
+            start--;
+        }
+
+        if (start == end) {
+            return -1;
+        }
+
+        try {
+            return NatsConnectionReader.parseSid(bytes, start, end);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     public byte[] getData() {
         return this.data;
     }
 
+    public int getDataLength() {
+        if (this.header != null) { // incoming
+            return this.dataLength;
+        }
+        return (this.data != null) ? this.data.length : 0;
+    }
+
+    public void release() {
+        PayloadPool p = this.pool;
+        byte[] d = this.data;
+
+        if (p != null && d != null) {
+            if (this.header == d) {
+                // The buffer is about to be reused, keep a copy of the subject and reply
+                this.header = Arrays.copyOfRange(d, this.headerOffset, this.headerOffset + this.headerLength);
+                this.headerOffset = 0;
+            }
+            this.pool = null;
+            this.data = null;
+            p.release(d);
+        }
+    }
+
     public Subscription getSubscription() {
         return this.subscription;
     }
@@ -0,0 +1,154 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.nio.charset.StandardCharsets;
+
+import io.nats.client.PublishBatch;
+
+/**
+ * Encodes each publish straight into a growing buffer, the same bytes the writer would produce, and
+ * queues the buffer as a single message on close.
+ */
+class NatsPublishBatch implements PublishBatch {
+    static final int INITIAL_SIZE = 4 * 1024;
+    static final int MAX_SIZE = Integer.MAX_VALUE - 8; // leave room for the array header
+
+    private final NatsConnection connection;
+    private final boolean utf8;
+    private final int maxControlLine;
+
+    private byte[] buffer;
+    private int position;
+    private int count;
+    private boolean closed;
+
+    NatsPublishBatch(NatsConnection connection) {
+        this.connection = connection;
+        this.utf8 = connection.getOptions().supportUTF8Subjects();
+        this.maxControlLine = connection.getOptions().getMaxControlLine();
+        this.buffer = new byte[INITIAL_SIZE];
+    }
+
+    public void publish(String subject, byte[] body) {
+        this.publish(subject, null, body);
+    }
+
+    public void publish(String subject, String replyTo, byte[] body) {
+        if (this.closed) {
+            throw new IllegalStateException("Publish batch is closed");
+        }
+
+        this.connection.checkPublish(subject, replyTo, body);
+
+        if (body == null) {
+            body = NatsConnection.EMPTY_BODY;
+        }
+
+        byte[] subjectBytes = this.utf8 ? subject.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] replyBytes = (this.utf8 && replyTo != null) ? replyTo.getBytes(StandardCharsets.UTF_8) : null;
+        int subjectLength = (subjectBytes != null) ? subjectBytes.length : subject.length();
+        int replyLength = (replyTo == null) ? 0 : ((replyBytes != null) ? replyBytes.length : replyTo.length());
+        int lengthDigits = NatsMessage.digitCount(body.length);
+
+        // PUB subject [reply] length\r\n
+        int controlLine = 4 + subjectLength + 1 + ((replyTo != null) ? replyLength + 1 : 0) + lengthDigits + 2;
+
+        if (controlLine > this.maxControlLine) {
+            throw new IllegalArgumentException("Control line is too long");
+        }
+
+        ensureRoom((long) controlLine + body.length + 2);
+
+        byte[] b = this.buffer;
+        int pos = this.position;
+
+        b[pos++] = 'P';
+        b[pos++] = 'U';
+        b[pos++] = 'B';
+        b[pos++] = ' ';
+        pos = copy(subject, subjectBytes, pos);
+        b[pos++] = ' ';
+
+        if (replyTo != null) {
+            pos = copy(replyTo, replyBytes, pos);
+            b[pos++] = ' ';
+        }
+
+        pos = NatsMessage.copyDigits(b, pos, body.length, lengthDigits);
+        b[pos++] = '\r';
+        b[pos++] = '\n';
+        System.arraycopy(body, 0, b, pos, body.length);
+        pos += body.length;
+        b[pos++] = '\r';
+        b[pos++] = '\n';
+
+        this.position = pos;
+        this.count++;
+    }
+
+    // Copies the encoded bytes, or in ASCII mode the characters, like NatsMessage does
+    private int copy(String value, byte[] bytes, int pos) {
+        if (bytes == null) {
+            return NatsMessage.copy(this.buffer, pos, value);
+        }
+
+        System.arraycopy(bytes, 0, this.buffer, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    private void ensureRoom(long needed) {
+        long size = this.position + needed;
+
+        if (size <= this.buffer.length) {
+            return;
+        }
+
+        if (size > MAX_SIZE) {
+            throw new IllegalStateException("Publish batch is full, close it and start another");
+        }
+
+        byte[] larger = new byte[(int) Math.min(Math.max(size, 2L * this.buffer.length), MAX_SIZE)];
+        System.arraycopy(this.buffer, 0, larger, 0, this.position);
+        this.buffer = larger;
+    }
+
+    public int getMessageCount() {
+        return this.count;
+    }
+
+    public long getSizeInBytes() {
+        return this.position;
+    }
+
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+
+        if (this.count == 0) {
+            return;
+        }
+
+        if (this.connection.isClosed()) {
+            throw new IllegalStateException("Connection is Closed");
+        }
+
+        NatsMessage chunk = new NatsMessage(this.buffer, this.position, this.count);
+        this.buffer = null;
+        this.connection.publishMessage(chunk);
+    }
+}
@@ -0,0 +1,178 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.RequestPipeline;
+
+class NatsRequestPipeline implements RequestPipeline {
+
+    private final Connection connection;
+    private final int window;
+    private final Duration timeout;
+    private final Semaphore permits; // one per request in flight
+
+    // A request sent by requestAll, with its place in the iterator
+    private static class Pending {
+        final long index;
+        final CompletableFuture<Message> future;
+
+        Pending(long index, CompletableFuture<Message> future) {
+            this.index = index;
+            this.future = future;
+        }
+    }
+
+    NatsRequestPipeline(Connection connection, int window, Duration timeout) {
+        this.connection = connection;
+        this.window = window;
+        this.timeout = timeout;
+        this.permits = new Semaphore(window);
+    }
+
+    public int getWindow() {
+        return this.window;
+    }
+
+    public int getInFlight() {
+        return this.window - this.permits.availablePermits();
+    }
+
+    public CompletableFuture<Message> submit(String subject, byte[] data) throws InterruptedException {
+        this.permits.acquire();
+        CompletableFuture<Message> future = send(subject, data);
+        future.whenComplete((msg, ex) -> this.permits.release());
+        return future;
+    }
+
+    public void requestAll(String subject, Iterator<byte[]> bodies, boolean ordered, ReplyHandler handler) throws InterruptedException {
+        if (ordered) {
+            requestAllOrdered(subject, bodies, handler);
+        } else {
+            requestAllUnordered(subject, bodies, handler);
+        }
+    }
+
+    // Releases each permit when the reply arrives, the replies are queued for this thread to hand out
+    private void requestAllUnordered(String subject, Iterator<byte[]> bodies, ReplyHandler handler) throws InterruptedException {
+        LinkedBlockingQueue<Pending> done = new LinkedBlockingQueue<>();
+        long sent = 0;
+        long handled = 0;
+
+        while (bodies.hasNext()) {
+            byte[] body = bodies.next();
+            this.permits.acquire();
+
+            Pending pending = new Pending(sent, send(subject, body));
+            pending.future.whenComplete((msg, ex) -> {
+                this.permits.release();
+                done.add(pending);
+            });
+            sent++;
+
+            Pending next;
+            while ((next = done.poll()) != null) {
+                handler.onReply(next.index, replyOf(next.future));
+                handled++;
+            }
+        }
+
+        while (handled < sent) {
+            Pending next = done.take();
+            handler.onReply(next.index, replyOf(next.future));
+            handled++;
+        }
+    }
+
+    // Holds each permit until the reply is handed out, so replies waiting for earlier ones count
+    // toward the window
+    private void requestAllOrdered(String subject, Iterator<byte[]> bodies, ReplyHandler handler) throws InterruptedException {
+        ArrayDeque<Pending> pending = new ArrayDeque<>();
+        long sent = 0;
+
+        try {
+            while (bodies.hasNext()) {
+                byte[] body = bodies.next();
+
+                while (!this.permits.tryAcquire()) {
+                    if (pending.isEmpty()) {
+                        this.permits.acquire(); // the window is held by other threads
+                        break;
+                    }
+                    handleNext(pending, handler);
+                }
+
+                pending.add(new Pending(sent, send(subject, body)));
+                sent++;
+
+                while (!pending.isEmpty() && pending.peek().future.isDone()) {
+                    handleNext(pending, handler);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                handleNext(pending, handler);
+            }
+        } finally {
+            // If we stopped early, give back the permits as the abandoned requests finish
+            for (Pending p : pending) {
+                p.future.whenComplete((msg, ex) -> this.permits.release());
+            }
+        }
+    }
+
+    private void handleNext(ArrayDeque<Pending> pending, ReplyHandler handler) throws InterruptedException {
+        Pending next = pending.peek();
+        Message reply = awaitReply(next.future);
+        pending.poll();
+        this.permits.release();
+        handler.onReply(next.index, reply);
+    }
+
+    private CompletableFuture<Message> send(String subject, byte[] body) {
+        try {
+            return this.connection.requestWithTimeout(subject, body, this.timeout);
+        } catch (RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    private static Message awaitReply(CompletableFuture<Message> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    // Only called once the future is done
+    private static Message replyOf(CompletableFuture<Message> future) {
+        try {
+            return future.getNow(null);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
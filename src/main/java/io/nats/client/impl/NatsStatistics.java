@@ -39,6 +39,7 @@ class NatsStatistics implements Statistics {
     private AtomicLong errCount;
     private AtomicLong exceptionCount;
     private AtomicLong droppedCount;
+    private AtomicLong outgoingDroppedCount;
 
     final private boolean trackAdvanced;
 
@@ -62,6 +63,7 @@ class NatsStatistics implements Statistics {
         this.errCount = new AtomicLong();
         this.exceptionCount = new AtomicLong();
         this.droppedCount = new AtomicLong();
+        this.outgoingDroppedCount = new AtomicLong();
     }
 
     void incrementPingCount() {
@@ -72,6 +74,10 @@ class NatsStatistics implements Statistics {
         this.droppedCount.incrementAndGet();
     }
 
+    void incrementOutgoingDroppedCount(long messages) {
+        this.outgoingDroppedCount.addAndGet(messages);
+    }
+
     void incrementOkCount() {
         this.okCount.incrementAndGet();
     }
@@ -104,6 +110,10 @@ class NatsStatistics implements Statistics {
         this.outMsgs.incrementAndGet();
     }
 
+    void incrementOutMsgs(long count) {
+        this.outMsgs.addAndGet(count);
+    }
+
     void incrementInBytes(long bytes) {
         this.inBytes.addAndGet(bytes);
     }
@@ -152,6 +162,10 @@ class NatsStatistics implements Statistics {
         return this.droppedCount.get();
     }
 
+    public long getOutgoingDroppedCount() {
+        return this.outgoingDroppedCount.get();
+    }
+
     public long getOKs() {
         return this.okCount.get();
     }
@@ -221,6 +235,7 @@ class NatsStatistics implements Statistics {
                 appendNumberStat(builder, "Successful Flush Calls:          ", this.flushCounter.get());
                 appendNumberStat(builder, "Outstanding Request Futures:     ", this.outstandingRequests.get());
                 appendNumberStat(builder, "Dropped Messages:                ", this.droppedCount.get());
+                appendNumberStat(builder, "Dropped Outgoing Messages:       ", this.outgoingDroppedCount.get());
             }
             builder.append("\n");
             builder.append("### Reader ###\n");
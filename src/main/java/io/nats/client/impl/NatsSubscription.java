@@ -14,6 +14,8 @@
 package io.nats.client.impl;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import io.nats.client.Dispatcher;
@@ -24,24 +26,26 @@ class NatsSubscription extends NatsConsumer implements Subscription {
 
     private String subject;
     private String queueName;
-    private String sid;
+    private long sid;
+    private String sidString; // the sid as sent in SUB and UNSUB
 
     private NatsDispatcher dispatcher;
     private MessageQueue incoming;
 
     private AtomicLong unSubMessageLimit;
 
-    NatsSubscription(String sid, String subject, String queueName, NatsConnection connection,
+    NatsSubscription(long sid, String subject, String queueName, NatsConnection connection,
             NatsDispatcher dispatcher) {
         super(connection);
         this.subject = subject;
         this.queueName = queueName;
         this.sid = sid;
+        this.sidString = String.valueOf(sid);
         this.dispatcher = dispatcher;
         this.unSubMessageLimit = new AtomicLong(-1);
 
         if (this.dispatcher == null) {
-            this.incoming = new MessageQueue(false);
+            this.incoming = new MessageQueue(false, connection.getOptions().getWaitStrategy());
         }
     }
 
@@ -67,10 +71,14 @@ class NatsSubscription extends NatsConsumer implements Subscription {
         return (max > 0) && (max <= recv);
     }
 
-    String getSID() {
+    long getSID() {
         return this.sid;
     }
 
+    String getSIDString() {
+        return this.sidString;
+    }
+
     NatsDispatcher getNatsDispatcher() {
         return this.dispatcher;
     }
@@ -114,6 +122,42 @@ class NatsSubscription extends NatsConsumer implements Subscription {
         return msg;
     }
 
+    public List<Message> nextMessages(int max, Duration timeout) throws InterruptedException, IllegalStateException {
+        if (max < 1) {
+            throw new IllegalArgumentException("Max messages must be at least 1");
+        }
+
+        if (this.dispatcher != null) {
+            throw new IllegalStateException(
+                    "Subscriptions that belong to a dispatcher cannot respond to nextMessages directly.");
+        } else if (this.incoming == null) {
+            throw new IllegalStateException("This subscription is inactive.");
+        }
+
+        // Don't take messages past the auto-unsubscribe limit
+        long limit = this.unSubMessageLimit.get();
+        if (limit > 0) {
+            max = (int) Math.max(1, Math.min(max, limit - this.getDeliveredCount()));
+        }
+
+        ArrayList<Message> messages = new ArrayList<>();
+        int count = incoming.popBatch(messages, max, -1, timeout, null);
+
+        if (this.incoming == null || !this.incoming.isRunning()) { // We were unsubscribed while waiting
+            throw new IllegalStateException("This subscription became inactive.");
+        }
+
+        for (int i = 0; i < count; i++) {
+            this.incrementDeliveredCount();
+        }
+
+        if (this.reachedUnsubLimit()) {
+            this.connection.invalidate(this);
+        }
+
+        return messages;
+    }
+
     /**
      * Unsubscribe this subscription and stop listening for messages.
      * 
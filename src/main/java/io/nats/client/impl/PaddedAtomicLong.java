@@ -0,0 +1,64 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// Fields are laid out superclass first, so each class in the chain adds its part after the last one
+abstract class PaddedAtomicLongLeftPad {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class PaddedAtomicLongValue extends PaddedAtomicLongLeftPad {
+    volatile long value;
+}
+
+abstract class PaddedAtomicLongRightPad extends PaddedAtomicLongValue {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * A long with a cache line of padding on each side, so that a heavily written counter doesn't
+ * share its cache line with the fields allocated before or after it. The padding is in the
+ * superclasses, like the JCTools queues do it, so it stays in place around the value.
+ *
+ * <p>Only the operations the queues use are provided.
+ */
+class PaddedAtomicLong extends PaddedAtomicLongRightPad {
+    private static final AtomicLongFieldUpdater<PaddedAtomicLongValue> VALUE =
+            AtomicLongFieldUpdater.newUpdater(PaddedAtomicLongValue.class, "value");
+
+    PaddedAtomicLong() {
+    }
+
+    PaddedAtomicLong(long initialValue) {
+        this.value = initialValue;
+    }
+
+    long get() {
+        return this.value;
+    }
+
+    void lazySet(long newValue) {
+        VALUE.lazySet(this, newValue);
+    }
+
+    long getAndIncrement() {
+        return VALUE.getAndIncrement(this);
+    }
+
+    long getAndAdd(long delta) {
+        return VALUE.getAndAdd(this, delta);
+    }
+}
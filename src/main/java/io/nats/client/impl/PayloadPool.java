@@ -0,0 +1,100 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A pool of payload buffers for incoming messages, grouped into power of two size classes.
+ * The reader takes a buffer from the smallest class that fits each payload along with its subject
+ * and reply to, and the application gives it back with {@link io.nats.client.Message#release() Message.release()}.
+ *
+ * <p>The byte limit is split evenly across the classes, so each class holds at most its share
+ * divided by its buffer size. Classes whose share is smaller than one buffer, and payloads larger
+ * than the largest class, are not pooled. When a class is empty a new buffer is allocated, and
+ * when it is full a released buffer is left for the garbage collector.
+ */
+class PayloadPool {
+    static final int MIN_CLASS_SHIFT = 6; // 64 bytes
+    static final int MAX_CLASS_SHIFT = 20; // 1MB, the server's default max payload
+    static final int CLASS_COUNT = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ArrayBlockingQueue<byte[]>[] classes;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    PayloadPool(long maxBytes) {
+        this.classes = new ArrayBlockingQueue[CLASS_COUNT];
+        long share = maxBytes / CLASS_COUNT;
+
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            long buffers = share >>> (MIN_CLASS_SHIFT + i);
+
+            if (buffers > 0) {
+                this.classes[i] = new ArrayBlockingQueue<>((int) Math.min(buffers, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    // Returns the index of the smallest class that holds length bytes, or -1 if it is too big
+    static int classFor(int length) {
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(length - 1));
+        return (shift <= MAX_CLASS_SHIFT) ? shift - MIN_CLASS_SHIFT : -1;
+    }
+
+    /**
+     * Returns a buffer with room for at least length bytes, it may be longer.
+     */
+    byte[] acquire(int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+
+        int index = classFor(length);
+        ArrayBlockingQueue<byte[]> pooled = (index >= 0) ? this.classes[index] : null;
+
+        if (pooled == null) {
+            return new byte[length];
+        }
+
+        byte[] buffer = pooled.poll();
+        return (buffer != null) ? buffer : new byte[1 << (MIN_CLASS_SHIFT + index)];
+    }
+
+    /**
+     * Returns a buffer from {@link #acquire(int) acquire()} to its class. Buffers that aren't
+     * a class size, which includes unpooled payloads, are ignored.
+     */
+    void release(byte[] buffer) {
+        int length = buffer.length;
+
+        if (length == 0 || Integer.bitCount(length) != 1) {
+            return;
+        }
+
+        int index = classFor(length);
+        ArrayBlockingQueue<byte[]> pooled = (index >= 0) ? this.classes[index] : null;
+
+        if (pooled != null) {
+            pooled.offer(buffer);
+        }
+    }
+
+    int available(int length) {
+        int index = classFor(length);
+        ArrayBlockingQueue<byte[]> pooled = (index >= 0) ? this.classes[index] : null;
+        return (pooled != null) ? pooled.size() : 0;
+    }
+}
@@ -0,0 +1,74 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import io.nats.client.Message;
+
+/**
+ * Collects the replies to one request that many responders may answer. The collector takes the
+ * request's place in the response table, and the replies are handed to the caller as a list once
+ * enough have arrived or the timeout passes.
+ *
+ * <p>The collector completes itself, as a future, when it finishes. This takes it out of the
+ * timing wheel like any other answered request. If the caller cancels or completes the result
+ * first, the collector is cancelled, which takes it out of the table and the wheel right away.
+ */
+class ResponseCollector extends ResponseMap.ResponseFuture {
+    private final int maxReplies;
+    private final CompletableFuture<List<Message>> result;
+    private ArrayList<Message> replies; // null once finished
+
+    ResponseCollector(long token, int maxReplies, String inbox) {
+        super(token, inbox);
+        this.maxReplies = maxReplies;
+        this.result = new CompletableFuture<>();
+        this.replies = new ArrayList<>();
+        this.result.whenComplete((replies, ex) -> this.cancel(false)); // does nothing once finished
+    }
+
+    CompletableFuture<List<Message>> getResult() {
+        return this.result;
+    }
+
+    // Adds a reply, returns true if it was the last one wanted
+    synchronized boolean add(Message msg) {
+        if (this.replies == null) {
+            return false;
+        }
+
+        this.replies.add(msg);
+        return this.maxReplies > 0 && this.replies.size() >= this.maxReplies;
+    }
+
+    // Stops collecting, returns the replies or null if the collector was already finished
+    synchronized List<Message> finish() {
+        List<Message> collected = this.replies;
+        this.replies = null;
+        this.complete(null);
+        return collected;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            this.replies = null;
+        }
+        this.result.cancel(mayInterruptIfRunning);
+        return super.cancel(mayInterruptIfRunning);
+    }
+}
@@ -0,0 +1,359 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import io.nats.client.Message;
+
+/**
+ * Maps request tokens to the futures waiting for their replies. Tokens are handed out in sequence, so
+ * each token has one slot in a power of two table, picked by its low bits, and the few tokens whose slot
+ * is taken go to an overflow map. The future holds its own token, so there is no entry object per request.
+ *
+ * <p>Lookups never lock, and no thread waits for another to finish a grow. Each future has a removed
+ * flag, and the first remove to set it owns the future and clears its slot. A slot holding a removed
+ * future is free, so slots are reused in place and there are no tombstones to clean up.
+ *
+ * <p>When the live futures reach half the table, one thread grows it. The new table is published first,
+ * with a link to the old one, and each future is copied before it is cleared from the old table. Lookups
+ * check the old table, then the overflow map, then the new table, and start over if the table changed
+ * under them, so a future being moved is always seen in one place or the other.
+ */
+class ResponseMap {
+    static final int MIN_CAPACITY = 16;
+
+    /**
+     * A future for a reply, keyed by the token in its reply subject, or for old style requests by
+     * its own inbox. However the future is completed, by a reply, a timeout or the caller cancelling
+     * it, it leaves the timing wheel and tells the connection right away, so nothing holds on to it
+     * until its deadline.
+     */
+    static class ResponseFuture extends CompletableFuture<Message> {
+        private final long token;
+        private final String inbox;
+
+        // Used by the TimingWheel, for requests with a timeout, guarded by the wheel
+        volatile TimingWheel wheel; // set while the future is in the wheel
+        long timeoutTick;
+        ResponseFuture nextTimeout;
+        ResponseFuture prevTimeout;
+
+        // Set by the connection before the future is handed out
+        Consumer<ResponseFuture> onDone;
+
+        // Set by the first remove from the ResponseMap, which owns the future from then on
+        private volatile int removed;
+        private static final AtomicIntegerFieldUpdater<ResponseFuture> REMOVED =
+                AtomicIntegerFieldUpdater.newUpdater(ResponseFuture.class, "removed");
+
+        ResponseFuture(long token) {
+            this(token, null);
+        }
+
+        ResponseFuture(long token, String inbox) {
+            this.token = token;
+            this.inbox = inbox;
+        }
+
+        long getToken() {
+            return this.token;
+        }
+
+        // Only for old style requests
+        String getInbox() {
+            return this.inbox;
+        }
+
+        @Override
+        public boolean complete(Message value) {
+            boolean completed = super.complete(value);
+            if (completed) {
+                done();
+            }
+            return completed;
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable ex) {
+            boolean completed = super.completeExceptionally(ex);
+            if (completed) {
+                done();
+            }
+            return completed;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                done();
+            }
+            return cancelled;
+        }
+
+        boolean isRemoved() {
+            return this.removed != 0;
+        }
+
+        private boolean claimRemoval() {
+            return REMOVED.compareAndSet(this, 0, 1);
+        }
+
+        private void done() {
+            TimingWheel w = this.wheel;
+            if (w != null) {
+                w.remove(this);
+            }
+
+            Consumer<ResponseFuture> handler = this.onDone;
+            if (handler != null) {
+                handler.accept(this);
+            }
+        }
+    }
+
+    private static final class Table {
+        final AtomicReferenceArray<ResponseFuture> slots;
+        final int mask;
+        volatile Table prev; // the table being copied into this one, null once it is done
+
+        Table(int capacity) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table;
+    private final ConcurrentHashMap<Long, ResponseFuture> overflow; // futures whose slot was taken
+    private final AtomicInteger size;
+    private final AtomicBoolean growing;
+
+    ResponseMap() {
+        this.table = new Table(MIN_CAPACITY);
+        this.overflow = new ConcurrentHashMap<>();
+        this.size = new AtomicInteger();
+        this.growing = new AtomicBoolean();
+    }
+
+    // Tokens are handed out in sequence, so the low bits alone spread them across the table
+    private static int indexFor(long token, int mask) {
+        return (int) (token ^ (token >>> 32)) & mask;
+    }
+
+    void put(ResponseFuture future) {
+        this.size.incrementAndGet();
+
+        Table t = this.table;
+        while (true) {
+            place(t, future);
+
+            Table current = this.table;
+            if (current == t || future.isRemoved()) {
+                break;
+            }
+            t = current; // grown while we placed it, the copy may have missed it
+        }
+
+        if (this.size.get() * 2 > t.slots.length()) {
+            grow();
+        }
+    }
+
+    // Puts the future in its slot, if it is free, or in the overflow map
+    private void place(Table t, ResponseFuture future) {
+        int index = indexFor(future.getToken(), t.mask);
+
+        while (true) {
+            ResponseFuture entry = t.slots.get(index);
+
+            if (entry == future) {
+                return;
+            }
+
+            if (entry == null || entry.isRemoved()) {
+                if (t.slots.compareAndSet(index, entry, future)) {
+                    return;
+                }
+                continue; // lost the slot, look at it again
+            }
+
+            this.overflow.put(future.getToken(), future);
+            return;
+        }
+    }
+
+    private static ResponseFuture find(Table t, long token) {
+        ResponseFuture entry = t.slots.get(indexFor(token, t.mask));
+        return (entry != null && entry.getToken() == token && !entry.isRemoved()) ? entry : null;
+    }
+
+    private ResponseFuture findOverflow(long token) {
+        if (this.overflow.isEmpty()) {
+            return null;
+        }
+
+        ResponseFuture entry = this.overflow.get(token);
+        return (entry != null && !entry.isRemoved()) ? entry : null;
+    }
+
+    ResponseFuture get(long token) {
+        while (true) {
+            Table t = this.table;
+            Table prev = t.prev;
+            ResponseFuture f;
+
+            if (prev != null) { // growing, look where futures are copied from before where they are copied to
+                f = find(prev, token);
+                if (f == null) {
+                    f = findOverflow(token);
+                }
+                if (f == null) {
+                    f = find(t, token);
+                }
+            } else {
+                f = find(t, token);
+                if (f == null) {
+                    f = findOverflow(token);
+                }
+            }
+
+            if (f != null || this.table == t) {
+                return f;
+            }
+        }
+    }
+
+    ResponseFuture remove(long token) {
+        ResponseFuture f = get(token);
+
+        if (f == null || !f.claimRemoval()) {
+            return null;
+        }
+
+        this.size.decrementAndGet();
+
+        // Let go of the future, a copy a grow is making right now is left as a free slot
+        Table t = this.table;
+        clear(t, f);
+        Table prev = t.prev;
+        if (prev != null) {
+            clear(prev, f);
+        }
+        if (!this.overflow.isEmpty()) {
+            this.overflow.remove(token, f);
+        }
+
+        return f;
+    }
+
+    private static void clear(Table t, ResponseFuture f) {
+        t.slots.compareAndSet(indexFor(f.getToken(), t.mask), f, null);
+    }
+
+    // Copies the live futures into a table with room for twice as many, the thread that starts a grow
+    // does all of it, others carry on with the tables as they are
+    private void grow() {
+        if (!this.growing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            Table old = this.table;
+            int live = this.size.get();
+
+            if (live * 2 <= old.slots.length()) {
+                return;
+            }
+
+            int capacity = old.slots.length();
+            while (capacity < 4 * live) {
+                capacity <<= 1;
+            }
+
+            Table t = new Table(capacity);
+            t.prev = old;
+            this.table = t;
+
+            for (int i = 0, max = old.slots.length(); i < max; i++) {
+                ResponseFuture entry = old.slots.get(i);
+
+                if (entry != null) {
+                    if (!entry.isRemoved()) {
+                        place(t, entry);
+                    }
+                    old.slots.compareAndSet(i, entry, null);
+                }
+            }
+
+            // The bigger table may have a free slot for futures that overflowed
+            for (ResponseFuture entry : this.overflow.values()) {
+                int index = indexFor(entry.getToken(), t.mask);
+                ResponseFuture current = t.slots.get(index);
+
+                if (entry.isRemoved()) {
+                    this.overflow.remove(entry.getToken(), entry);
+                } else if ((current == null || current.isRemoved()) && t.slots.compareAndSet(index, current, entry)) {
+                    this.overflow.remove(entry.getToken(), entry);
+                }
+            }
+
+            t.prev = null;
+        } finally {
+            this.growing.set(false);
+        }
+    }
+
+    int size() {
+        return this.size.get();
+    }
+
+    int capacity() {
+        return this.table.slots.length();
+    }
+
+    // Walks the current table and the overflow, futures added or removed during the walk may or may not
+    // be seen, and a future may be seen twice if the table grows during the walk
+    void forEach(Consumer<ResponseFuture> action) {
+        Table t = this.table;
+        Table prev = t.prev;
+
+        visit(t, action);
+        if (prev != null) {
+            visit(prev, action);
+        }
+
+        for (ResponseFuture entry : this.overflow.values()) {
+            if (!entry.isRemoved()) {
+                action.accept(entry);
+            }
+        }
+    }
+
+    private static void visit(Table t, Consumer<ResponseFuture> action) {
+        for (int i = 0, max = t.slots.length(); i < max; i++) {
+            ResponseFuture entry = t.slots.get(i);
+
+            if (entry != null && !entry.isRemoved()) {
+                action.accept(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+/**
+ * A request that is sent again if no reply has arrived after a delay. Every copy carries the
+ * same reply subject, so they all share this one entry in the response table. The first reply
+ * removes it, and replies to the other copies find nothing and are dropped.
+ *
+ * <p>The timing wheel holds the future until the next copy is due, or until the final
+ * deadline if there are no copies left. The delay is multiplied by the backoff after each copy.
+ */
+class RetryingResponse extends ResponseMap.ResponseFuture {
+    private final String subject;
+    private final byte[] body;
+    private final long deadlineNanos;
+    private final int backoff;
+    private int resendsLeft;
+    private long delayNanos;
+
+    RetryingResponse(long token, String inbox, String subject, byte[] body,
+                        long startNanos, long timeoutNanos, long delayNanos, int maxResends, int backoff) {
+        super(token, inbox);
+        this.subject = subject;
+        this.body = body;
+        this.deadlineNanos = startNanos + timeoutNanos;
+        this.delayNanos = delayNanos;
+        this.resendsLeft = maxResends;
+        this.backoff = backoff;
+    }
+
+    String getSubject() {
+        return this.subject;
+    }
+
+    byte[] getBody() {
+        return this.body;
+    }
+
+    // The time to wait from now until the next copy or the deadline
+    long nextWait(long nowNanos) {
+        long untilDeadline = Math.max(0, this.deadlineNanos - nowNanos);
+        return (this.resendsLeft > 0) ? Math.min(this.delayNanos, untilDeadline) : untilDeadline;
+    }
+
+    // Returns true if another copy should be sent now, only called from the timing wheel's thread
+    boolean takeResend(long nowNanos) {
+        if (this.resendsLeft <= 0 || nowNanos - this.deadlineNanos >= 0) {
+            return false;
+        }
+
+        this.resendsLeft--;
+        this.delayNanos = (this.delayNanos > Long.MAX_VALUE / this.backoff) ? Long.MAX_VALUE : this.delayNanos * this.backoff;
+        return true;
+    }
+}
@@ -0,0 +1,473 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import io.nats.client.BatchMessageHandler;
+import io.nats.client.Connection;
+import io.nats.client.Dispatcher;
+import io.nats.client.Message;
+import io.nats.client.MessageHandler;
+import io.nats.client.Options;
+import io.nats.client.PublishBatch;
+import io.nats.client.RequestPipeline;
+import io.nats.client.Statistics;
+import io.nats.client.Subscription;
+
+/**
+ * A connection made of several connections to the server, each with its own socket, reader and writer.
+ * Anything with a subject goes to the shard picked by the subject's hash, so messages on one
+ * subject keep their order. Dispatchers are handed out to the shards in turn, and their
+ * subscriptions live on the shard they were created on.
+ *
+ * <p><strong>The shards are separate connections to the server, so the ordering a single connection
+ * gives is lost between them.</strong> A subscription made on one shard can arrive at the server after
+ * a publish sent on another, so the first messages may be missed. This happens with wildcard
+ * subscriptions, with dispatchers, and with requests whose reply subject lands on a different
+ * shard than the subscription. Likewise noEcho only stops a shard from hearing its own messages,
+ * so the caller still receives what it published on other shards. Flush after subscribing if a
+ * publish on another subject has to see the subscription.
+ *
+ * <p>{@link #getServers() getServers()} is the union of the shards' servers, and
+ * {@link #getConnectedUrl() getConnectedUrl()} is the URL of the first connected shard.
+ */
+@SuppressWarnings("try") // close() throws InterruptedException, like NatsConnection
+class ShardedConnection implements Connection {
+
+    private final Options options;
+    private final NatsConnection[] shards;
+    private final AtomicInteger nextDispatcherShard;
+
+    private ShardedConnection(Options options, NatsConnection[] shards) {
+        this.options = options;
+        this.shards = shards;
+        this.nextDispatcherShard = new AtomicInteger();
+    }
+
+    static ShardedConnection connect(Options options, int count) throws IOException, InterruptedException {
+        if (count < 1) {
+            throw new IllegalArgumentException("A sharded connection needs at least 1 shard");
+        }
+
+        NatsConnection[] shards = new NatsConnection[count];
+
+        try {
+            for (int i = 0; i < count; i++) {
+                shards[i] = new NatsConnection(options);
+                shards[i].connect(false);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            for (NatsConnection shard : shards) {
+                if (shard != null) {
+                    shard.close();
+                }
+            }
+            throw e;
+        }
+
+        return new ShardedConnection(options, shards);
+    }
+
+    int getShardCount() {
+        return this.shards.length;
+    }
+
+    NatsConnection shardFor(String subject) {
+        return this.shards[shardIndex(subject)];
+    }
+
+    private int shardIndex(String subject) {
+        if (subject == null) {
+            return 0; // let the shard report the missing subject
+        }
+
+        int hash = subject.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & 0x7FFFFFFF) % this.shards.length;
+    }
+
+    private NatsConnection nextDispatcherShard() {
+        return this.shards[(this.nextDispatcherShard.getAndIncrement() & 0x7FFFFFFF) % this.shards.length];
+    }
+
+    public void publish(String subject, byte[] body) {
+        shardFor(subject).publish(subject, body);
+    }
+
+    public void publish(String subject, String replyTo, byte[] body) {
+        shardFor(subject).publish(subject, replyTo, body);
+    }
+
+    public CompletableFuture<Boolean> publishAsync(String subject, byte[] body) {
+        return shardFor(subject).publishAsync(subject, body);
+    }
+
+    public CompletableFuture<Boolean> publishAsync(String subject, String replyTo, byte[] body) {
+        return shardFor(subject).publishAsync(subject, replyTo, body);
+    }
+
+    // Keeps a batch for each shard that gets a message, closing sends them all
+    public PublishBatch batch() {
+        for (NatsConnection shard : this.shards) {
+            if (shard.isClosed()) {
+                throw new IllegalStateException("Connection is Closed");
+            }
+        }
+
+        NatsPublishBatch[] batches = new NatsPublishBatch[this.shards.length];
+
+        return new PublishBatch() {
+            private boolean closed;
+
+            public void publish(String subject, byte[] body) {
+                this.publish(subject, null, body);
+            }
+
+            public void publish(String subject, String replyTo, byte[] body) {
+                if (this.closed) {
+                    throw new IllegalStateException("Publish batch is closed");
+                }
+
+                int index = shardIndex(subject);
+
+                if (batches[index] == null) {
+                    batches[index] = new NatsPublishBatch(shards[index]);
+                }
+
+                batches[index].publish(subject, replyTo, body);
+            }
+
+            public int getMessageCount() {
+                int count = 0;
+                for (NatsPublishBatch batch : batches) {
+                    count += (batch != null) ? batch.getMessageCount() : 0;
+                }
+                return count;
+            }
+
+            public long getSizeInBytes() {
+                long size = 0;
+                for (NatsPublishBatch batch : batches) {
+                    size += (batch != null) ? batch.getSizeInBytes() : 0;
+                }
+                return size;
+            }
+
+            public void close() {
+                this.closed = true;
+                RuntimeException failure = null;
+
+                for (NatsPublishBatch batch : batches) {
+                    try {
+                        if (batch != null) {
+                            batch.close();
+                        }
+                    } catch (RuntimeException e) {
+                        failure = (failure == null) ? e : failure;
+                    }
+                }
+
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        };
+    }
+
+    public CompletableFuture<Message> request(String subject, byte[] data) {
+        return shardFor(subject).request(subject, data);
+    }
+
+    public CompletableFuture<Message> requestWithTimeout(String subject, byte[] data, Duration timeout) {
+        return shardFor(subject).requestWithTimeout(subject, data, timeout);
+    }
+
+    public CompletableFuture<List<Message>> requestMany(String subject, byte[] data, int maxReplies, Duration timeout) {
+        return shardFor(subject).requestMany(subject, data, maxReplies, timeout);
+    }
+
+    public CompletableFuture<Message> requestHedged(String subject, byte[] data, Duration hedgeDelay, Duration timeout) {
+        return shardFor(subject).requestHedged(subject, data, hedgeDelay, timeout);
+    }
+
+    public CompletableFuture<Message> requestWithRetries(String subject, byte[] data, Duration attemptTimeout, int maxRetries) {
+        return shardFor(subject).requestWithRetries(subject, data, attemptTimeout, maxRetries);
+    }
+
+    public Message request(String subject, byte[] data, Duration timeout) throws InterruptedException {
+        return shardFor(subject).request(subject, data, timeout);
+    }
+
+    public Subscription subscribe(String subject) {
+        return shardFor(subject).subscribe(subject);
+    }
+
+    public Subscription subscribe(String subject, String queueName) {
+        return shardFor(subject).subscribe(subject, queueName);
+    }
+
+    public Dispatcher createDispatcher(MessageHandler handler) {
+        return nextDispatcherShard().createDispatcher(handler);
+    }
+
+    public Dispatcher createDispatcher(MessageHandler handler, int parallelism, Function<? super Message, ?> keyFunction) {
+        return nextDispatcherShard().createDispatcher(handler, parallelism, keyFunction);
+    }
+
+    public Dispatcher createInlineDispatcher(MessageHandler handler, Duration slowHandlerTime) {
+        return nextDispatcherShard().createInlineDispatcher(handler, slowHandlerTime);
+    }
+
+    public Dispatcher createDispatcher(BatchMessageHandler handler, int maxMessages, long maxBytes, Duration linger) {
+        return nextDispatcherShard().createDispatcher(handler, maxMessages, maxBytes, linger);
+    }
+
+    public RequestPipeline createRequestPipeline(int window, Duration timeout) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Pipeline window must be at least 1");
+        }
+
+        if (timeout == null) {
+            throw new IllegalArgumentException("Timeout is required");
+        }
+
+        return new NatsRequestPipeline(this, window, timeout);
+    }
+
+    public void closeDispatcher(Dispatcher dispatcher) {
+        if (dispatcher instanceof NatsDispatcher) {
+            NatsConnection owner = ((NatsDispatcher) dispatcher).connection;
+
+            for (NatsConnection shard : this.shards) {
+                if (shard == owner) {
+                    shard.closeDispatcher(dispatcher);
+                    return;
+                }
+            }
+        }
+
+        throw new IllegalArgumentException("Connection can only manage its own dispatchers");
+    }
+
+    public void flush(Duration timeout) throws TimeoutException, InterruptedException {
+        long start = System.nanoTime();
+
+        for (NatsConnection shard : this.shards) {
+            shard.flush(remaining(timeout, start));
+        }
+    }
+
+    public boolean awaitOutgoingBelow(long bytes, Duration timeout) throws InterruptedException {
+        long start = System.nanoTime();
+
+        for (NatsConnection shard : this.shards) {
+            if (!shard.awaitOutgoingBelow(bytes, remaining(timeout, start))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // What is left of the timeout, null and 0 mean forever and stay that way
+    private static Duration remaining(Duration timeout, long startNanos) {
+        if (timeout == null || timeout.isZero()) {
+            return timeout;
+        }
+
+        long left = timeout.toNanos() - (System.nanoTime() - startNanos);
+        return Duration.ofNanos(Math.max(1, left));
+    }
+
+    public CompletableFuture<Boolean> drain(Duration timeout) throws TimeoutException, InterruptedException {
+        List<CompletableFuture<Boolean>> drains = new ArrayList<>(this.shards.length);
+
+        for (NatsConnection shard : this.shards) {
+            drains.add(shard.drain(timeout));
+        }
+
+        return CompletableFuture.allOf(drains.toArray(new CompletableFuture<?>[0])).thenApply((v) -> {
+            for (CompletableFuture<Boolean> drain : drains) {
+                if (!drain.join()) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    // Closes every shard, even if one fails, and throws the first failure with the rest suppressed
+    public void close() throws InterruptedException {
+        Exception failure = null;
+
+        for (NatsConnection shard : this.shards) {
+            try {
+                shard.close();
+            } catch (InterruptedException | RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure instanceof InterruptedException) {
+            throw (InterruptedException) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    // Connected only when every shard is, otherwise the status of the first one that isn't
+    public Status getStatus() {
+        for (NatsConnection shard : this.shards) {
+            Status status = shard.getStatus();
+            if (status != Status.CONNECTED) {
+                return status;
+            }
+        }
+        return Status.CONNECTED;
+    }
+
+    public long getMaxPayload() {
+        long max = Long.MAX_VALUE;
+
+        for (NatsConnection shard : this.shards) {
+            max = Math.min(max, shard.getMaxPayload());
+        }
+
+        return max;
+    }
+
+    public Collection<String> getServers() {
+        LinkedHashSet<String> servers = new LinkedHashSet<>();
+
+        for (NatsConnection shard : this.shards) {
+            servers.addAll(shard.getServers());
+        }
+
+        return servers;
+    }
+
+    public Statistics getStatistics() {
+        return new ShardedStatistics();
+    }
+
+    public Options getOptions() {
+        return this.options;
+    }
+
+    // The shards may be connected to different servers, this is the first one's
+    public String getConnectedUrl() {
+        for (NatsConnection shard : this.shards) {
+            String url = shard.getConnectedUrl();
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    public String getLastError() {
+        for (NatsConnection shard : this.shards) {
+            String error = shard.getLastError();
+            if (error != null) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    // Adds up the shards' statistics each time it is read
+    private class ShardedStatistics implements Statistics {
+        public long getInMsgs() {
+            long total = 0;
+            for (NatsConnection shard : shards) {
+                total += shard.getStatistics().getInMsgs();
+            }
+            return total;
+        }
+
+        public long getOutMsgs() {
+            long total = 0;
+            for (NatsConnection shard : shards) {
+                total += shard.getStatistics().getOutMsgs();
+            }
+            return total;
+        }
+
+        public long getInBytes() {
+            long total = 0;
+            for (NatsConnection shard : shards) {
+                total += shard.getStatistics().getInBytes();
+            }
+            return total;
+        }
+
+        public long getOutBytes() {
+            long total = 0;
+            for (NatsConnection shard : shards) {
+                total += shard.getStatistics().getOutBytes();
+            }
+            return total;
+        }
+
+        public long getReconnects() {
+            long total = 0;
+            for (NatsConnection shard : shards) {
+                total += shard.getStatistics().getReconnects();
+            }
+            return total;
+        }
+
+        public long getDroppedCount() {
+            long total = 0;
+            for (NatsConnection shard : shards) {
+                total += shard.getStatistics().getDroppedCount();
+            }
+            return total;
+        }
+
+        public long getOutgoingDroppedCount() {
+            long total = 0;
+            for (NatsConnection shard : shards) {
+                total += shard.getStatistics().getOutgoingDroppedCount();
+            }
+            return total;
+        }
+
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+
+            for (int i = 0; i < shards.length; i++) {
+                builder.append("### Shard ").append(i).append(" ###\n\n");
+                builder.append(shards[i].getStatistics().toString());
+                builder.append("\n");
+            }
+
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The scheduler for connections whose options don't set one. It runs every connection's pings,
+ * request timeouts and drain checks, is created with the first connection, and its daemon threads
+ * live as long as the JVM.
+ */
+class SharedScheduler {
+    private static volatile ScheduledExecutorService instance;
+
+    static ScheduledExecutorService get() {
+        ScheduledExecutorService s = instance;
+
+        if (s == null) {
+            synchronized (SharedScheduler.class) {
+                s = instance;
+                if (s == null) {
+                    s = create();
+                    instance = s;
+                }
+            }
+        }
+
+        return s;
+    }
+
+    // A couple of threads, so one slow task, like a ping waiting for room in a full outgoing queue,
+    // doesn't hold up every connection
+    private static ScheduledExecutorService create() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 4);
+        AtomicInteger count = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, (r) -> {
+            Thread t = new Thread(r, "Nats Scheduler " + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true); // closed connections don't leave their tasks behind
+        return executor;
+    }
+}
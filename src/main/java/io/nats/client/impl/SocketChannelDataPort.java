@@ -0,0 +1,175 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import io.nats.client.Options;
+
+/**
+ * A data port built on a blocking {@link SocketChannel SocketChannel}. Plain connections use
+ * gathering writes, so the writer can hand message bodies straight to the socket. Once upgraded
+ * to TLS, the port falls back to the SSL socket streams and writes each buffer in turn.
+ */
+public class SocketChannelDataPort implements GatheringDataPort {
+
+    private NatsConnection connection;
+    private String host;
+    private int port;
+    private SocketChannel channel;
+    private SSLSocket sslSocket;
+
+    private InputStream in;
+    private OutputStream out;
+
+    // Wrappers are cached for the reader and writer buffers, which are reused for each call
+    private ByteBuffer readWrapper;
+    private ByteBuffer writeWrapper;
+
+    public void connect(String serverURI, NatsConnection conn) throws IOException {
+
+        try {
+            this.connection = conn;
+
+            Options options = this.connection.getOptions();
+            long timeout = options.getConnectionTimeout().toMillis();
+            URI uri = options.createURIForServer(serverURI);
+            this.host = uri.getHost();
+            this.port = uri.getPort();
+
+            this.channel = SocketChannel.open();
+            this.channel.socket().connect(new InetSocketAddress(host, port), (int) timeout);
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Upgrade the port to SSL. If it is already secured, this is a no-op.
+     * If the data port type doesn't support SSL it should throw an exception.
+     */
+    public void upgradeToSecure() throws IOException {
+        Options options = this.connection.getOptions();
+        SSLContext context = options.getSslContext();
+
+        SSLSocketFactory factory = context.getSocketFactory();
+        Duration timeout = options.getConnectionTimeout();
+
+        this.sslSocket = (SSLSocket) factory.createSocket(channel.socket(), null, true);
+        this.sslSocket.setUseClientMode(true);
+
+        final CompletableFuture<Void> waitForHandshake = new CompletableFuture<>();
+
+        this.sslSocket.addHandshakeCompletedListener((evt) -> {
+            waitForHandshake.complete(null);
+        });
+
+        this.sslSocket.startHandshake();
+
+        try {
+            waitForHandshake.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (Exception ex) {
+            this.connection.handleCommunicationIssue(ex);
+        }
+
+        in = sslSocket.getInputStream();
+        out = sslSocket.getOutputStream();
+    }
+
+    public int read(byte[] dst, int off, int len) throws IOException {
+        if (this.sslSocket != null) {
+            return in.read(dst, off, len);
+        }
+
+        if (this.readWrapper == null || this.readWrapper.array() != dst) {
+            this.readWrapper = ByteBuffer.wrap(dst);
+        }
+
+        this.readWrapper.clear();
+        this.readWrapper.position(off);
+        this.readWrapper.limit(off + len);
+        return this.channel.read(this.readWrapper);
+    }
+
+    public void write(byte[] src, int toWrite) throws IOException {
+        if (this.sslSocket != null) {
+            out.write(src, 0, toWrite);
+            return;
+        }
+
+        if (this.writeWrapper == null || this.writeWrapper.array() != src) {
+            this.writeWrapper = ByteBuffer.wrap(src);
+        }
+
+        this.writeWrapper.clear();
+        this.writeWrapper.limit(toWrite);
+
+        while (this.writeWrapper.hasRemaining()) {
+            this.channel.write(this.writeWrapper);
+        }
+    }
+
+    public void write(ByteBuffer[] srcs, int count) throws IOException {
+        if (this.sslSocket != null) {
+            for (int i = 0; i < count; i++) {
+                ByteBuffer src = srcs[i];
+                out.write(src.array(), src.arrayOffset() + src.position(), src.remaining());
+                src.position(src.limit());
+            }
+            return;
+        }
+
+        int offset = 0;
+
+        while (offset < count) {
+            this.channel.write(srcs, offset, count - offset);
+
+            // Skip past the buffers that were written completely, a partial write leaves us on the
+            // buffer that still has data
+            while (offset < count && !srcs[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+    }
+
+    // The channel, for an event loop, which reads and writes it directly while the port is not secure
+    SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    boolean isSecure() {
+        return this.sslSocket != null;
+    }
+
+    public void close() throws IOException {
+        if (sslSocket != null) {
+            sslSocket.close(); // autocloses the underlying socket
+        } else {
+            channel.close();
+        }
+    }
+}
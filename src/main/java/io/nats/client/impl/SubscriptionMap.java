@@ -0,0 +1,193 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Maps numeric subscription ids to subscriptions, using an open addressing table with linear probing.
+ * The subscription holds its own sid, so the table only stores references and there is no boxing
+ * or entry object per subscription.
+ *
+ * <p>Lookups don't lock, they read the current table and probe until they find the sid or an empty
+ * slot. Writers are serialized on the map. Removed slots are marked with a tombstone so probes
+ * keep going past them, and the table is rebuilt into a new array, then published, when live
+ * entries plus tombstones reach half of its capacity.
+ */
+class SubscriptionMap {
+    static final int MIN_CAPACITY = 16;
+
+    private static final Object TOMBSTONE = new Object();
+
+    private volatile AtomicReferenceArray<Object> table;
+    private volatile int size;
+    private int used; // live entries plus tombstones, guarded by this
+
+    SubscriptionMap() {
+        this.table = new AtomicReferenceArray<>(MIN_CAPACITY);
+    }
+
+    // Sids are handed out in sequence, so the low bits alone spread them across the table
+    private static int indexFor(long sid, int mask) {
+        return (int) (sid ^ (sid >>> 32)) & mask;
+    }
+
+    NatsSubscription get(long sid) {
+        AtomicReferenceArray<Object> t = this.table;
+        int mask = t.length() - 1;
+        int index = indexFor(sid, mask);
+
+        while (true) {
+            Object entry = t.get(index);
+
+            if (entry == null) {
+                return null;
+            }
+
+            if (entry != TOMBSTONE && ((NatsSubscription) entry).getSID() == sid) {
+                return (NatsSubscription) entry;
+            }
+
+            index = (index + 1) & mask;
+        }
+    }
+
+    synchronized void put(NatsSubscription sub) {
+        AtomicReferenceArray<Object> t = this.table;
+        int mask = t.length() - 1;
+        long sid = sub.getSID();
+        int index = indexFor(sid, mask);
+        int free = -1;
+
+        while (true) {
+            Object entry = t.get(index);
+
+            if (entry == null) {
+                break;
+            }
+
+            if (entry == TOMBSTONE) {
+                if (free < 0) {
+                    free = index;
+                }
+            } else if (((NatsSubscription) entry).getSID() == sid) {
+                t.set(index, sub);
+                return;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        if (free >= 0) {
+            t.set(free, sub); // reuses a tombstone, used doesn't change
+        } else {
+            t.set(index, sub);
+            this.used++;
+        }
+
+        this.size++;
+
+        if (this.used * 2 >= t.length()) {
+            rebuild();
+        }
+    }
+
+    synchronized NatsSubscription remove(long sid) {
+        AtomicReferenceArray<Object> t = this.table;
+        int mask = t.length() - 1;
+        int index = indexFor(sid, mask);
+
+        while (true) {
+            Object entry = t.get(index);
+
+            if (entry == null) {
+                return null;
+            }
+
+            if (entry != TOMBSTONE && ((NatsSubscription) entry).getSID() == sid) {
+                t.set(index, TOMBSTONE);
+                this.size--;
+                return (NatsSubscription) entry;
+            }
+
+            index = (index + 1) & mask;
+        }
+    }
+
+    // Copies the live entries into a table sized for them, readers switch over when it is published
+    private void rebuild() {
+        AtomicReferenceArray<Object> old = this.table;
+        int capacity = MIN_CAPACITY;
+
+        while (capacity < 4 * this.size) {
+            capacity <<= 1;
+        }
+
+        AtomicReferenceArray<Object> t = new AtomicReferenceArray<>(capacity);
+        int mask = capacity - 1;
+
+        for (int i = 0, max = old.length(); i < max; i++) {
+            Object entry = old.get(i);
+
+            if (entry != null && entry != TOMBSTONE) {
+                int index = indexFor(((NatsSubscription) entry).getSID(), mask);
+
+                while (t.get(index) != null) {
+                    index = (index + 1) & mask;
+                }
+
+                t.set(index, entry);
+            }
+        }
+
+        this.used = this.size;
+        this.table = t;
+    }
+
+    synchronized void clear() {
+        this.table = new AtomicReferenceArray<>(MIN_CAPACITY);
+        this.size = 0;
+        this.used = 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int capacity() {
+        return this.table.length();
+    }
+
+    // Walks the current table, subscriptions added or removed during the walk may or may not be seen
+    void forEach(Consumer<NatsSubscription> action) {
+        AtomicReferenceArray<Object> t = this.table;
+
+        for (int i = 0, max = t.length(); i < max; i++) {
+            Object entry = t.get(i);
+
+            if (entry != null && entry != TOMBSTONE) {
+                action.accept((NatsSubscription) entry);
+            }
+        }
+    }
+
+    List<NatsSubscription> values() {
+        ArrayList<NatsSubscription> values = new ArrayList<>(this.size);
+        forEach(values::add);
+        return values;
+    }
+}
@@ -0,0 +1,227 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel for request timeouts. Time is cut into ticks, and each future goes into
+ * the bucket for the tick its deadline falls in. Each call to advance only looks at the buckets for
+ * the ticks that have passed, rather than at every outstanding request.
+ *
+ * <p>Deadlines more than a turn of the wheel away stay in their bucket until the turn they belong
+ * to comes around. The buckets are doubly linked, so a future that is completed before its deadline
+ * unlinks itself right away and doesn't keep its reply alive until then.
+ *
+ * <p>Every change happens under the wheel's lock, which is only held to link or unlink entries. The
+ * expired futures are handed to the callback after it is released. The wheel also tracks whether it
+ * needs ticking: add reports when the first future arrives, and {@link #disarmIfEmpty()} lets the
+ * ticker stop once the last one is gone. Only one thread may advance the wheel at a time.
+ */
+class TimingWheel {
+    static final long DEFAULT_TICK_NANOS = 10_000_000L; // 10ms
+    static final int DEFAULT_WHEEL_SIZE = 512; // a turn is just over 5 seconds with the default tick
+
+    private final long tickNanos;
+    private final int mask;
+    private final long startNanos;
+    private final ResponseMap.ResponseFuture[] buckets;
+    private final Consumer<ResponseMap.ResponseFuture> onExpired;
+
+    // Guarded by this
+    private int size;
+    private long nextTick; // the next tick to expire
+    private boolean armed; // true from the add that finds the wheel idle until disarmIfEmpty succeeds
+
+    TimingWheel(Consumer<ResponseMap.ResponseFuture> onExpired) {
+        this(DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE, System.nanoTime(), onExpired);
+    }
+
+    // wheelSize must be a power of 2
+    TimingWheel(long tickNanos, int wheelSize, long startNanos, Consumer<ResponseMap.ResponseFuture> onExpired) {
+        this.tickNanos = tickNanos;
+        this.mask = wheelSize - 1;
+        this.startNanos = startNanos;
+        this.buckets = new ResponseMap.ResponseFuture[wheelSize];
+        this.onExpired = onExpired;
+    }
+
+    long getTickNanos() {
+        return this.tickNanos;
+    }
+
+    synchronized int size() {
+        return this.size;
+    }
+
+    // Returns true if the wheel was idle, and the caller has to start ticking it
+    boolean add(ResponseMap.ResponseFuture future, long nowNanos, long timeoutNanos) {
+        long deadline = (nowNanos - this.startNanos + timeoutNanos + this.tickNanos - 1) / this.tickNanos;
+
+        synchronized (this) {
+            // Published before looking at isDone, a completion that misses it was seen here
+            future.wheel = this;
+
+            if (future.isDone()) {
+                future.wheel = null;
+                return false;
+            }
+
+            if (deadline < this.nextTick) {
+                deadline = this.nextTick;
+            }
+
+            future.timeoutTick = deadline;
+            link(future, (int) deadline & this.mask);
+            this.size++;
+
+            if (this.armed) {
+                return false;
+            }
+
+            this.armed = true;
+            return true;
+        }
+    }
+
+    // Called by a future when it completes, unlinks it if it is still waiting
+    synchronized void remove(ResponseMap.ResponseFuture future) {
+        if (future.wheel != this) {
+            return;
+        }
+
+        unlink(future, (int) future.timeoutTick & this.mask);
+        this.size--;
+    }
+
+    // Returns true, and marks the wheel idle, if nothing is waiting, the ticker can stop then
+    synchronized boolean disarmIfEmpty() {
+        if (this.size > 0) {
+            return false;
+        }
+
+        this.armed = false;
+        return true;
+    }
+
+    // Expires the futures for every tick up to now, returns the number expired
+    int advance(long nowNanos) {
+        long lastTick = (nowNanos - this.startNanos) / this.tickNanos;
+        ResponseMap.ResponseFuture expired = null;
+
+        synchronized (this) {
+            long tick = this.nextTick;
+
+            if (lastTick < tick) {
+                return 0;
+            }
+
+            // Don't walk more than a whole turn, the buckets repeat after that
+            if (this.size > 0) {
+                for (long t = Math.max(tick, lastTick - this.mask); t <= lastTick; t++) {
+                    expired = takeExpired(t, expired);
+                }
+            }
+
+            this.nextTick = lastTick + 1;
+        }
+
+        int count = 0;
+
+        while (expired != null) {
+            ResponseMap.ResponseFuture next = expired.nextTimeout;
+            expired.nextTimeout = null;
+
+            if (!expired.isDone()) {
+                this.onExpired.accept(expired);
+                count++;
+            }
+
+            expired = next;
+        }
+
+        return count;
+    }
+
+    // Unlinks the futures due by tick and pushes them onto the expired list, later turns stay put
+    private ResponseMap.ResponseFuture takeExpired(long tick, ResponseMap.ResponseFuture expired) {
+        int index = (int) tick & this.mask;
+        ResponseMap.ResponseFuture future = this.buckets[index];
+
+        while (future != null) {
+            ResponseMap.ResponseFuture next = future.nextTimeout;
+
+            if (future.timeoutTick <= tick) {
+                unlink(future, index);
+                this.size--;
+                future.nextTimeout = expired;
+                expired = future;
+            }
+
+            future = next;
+        }
+
+        return expired;
+    }
+
+    private void link(ResponseMap.ResponseFuture future, int index) {
+        ResponseMap.ResponseFuture head = this.buckets[index];
+        future.prevTimeout = null;
+        future.nextTimeout = head;
+
+        if (head != null) {
+            head.prevTimeout = future;
+        }
+
+        this.buckets[index] = future;
+    }
+
+    private void unlink(ResponseMap.ResponseFuture future, int index) {
+        ResponseMap.ResponseFuture prev = future.prevTimeout;
+        ResponseMap.ResponseFuture next = future.nextTimeout;
+
+        if (prev != null) {
+            prev.nextTimeout = next;
+        } else {
+            this.buckets[index] = next;
+        }
+
+        if (next != null) {
+            next.prevTimeout = prev;
+        }
+
+        future.prevTimeout = null;
+        future.nextTimeout = null;
+        future.wheel = null;
+    }
+
+    // Drops every future without expiring them
+    synchronized void clear() {
+        for (int i = 0; i < this.buckets.length; i++) {
+            ResponseMap.ResponseFuture future = this.buckets[i];
+
+            while (future != null) {
+                ResponseMap.ResponseFuture next = future.nextTimeout;
+                future.prevTimeout = null;
+                future.nextTimeout = null;
+                future.wheel = null;
+                future = next;
+            }
+
+            this.buckets[i] = null;
+        }
+
+        this.size = 0;
+    }
+}
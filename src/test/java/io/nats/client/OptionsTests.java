@@ -17,8 +17,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
@@ -27,6 +29,9 @@ import java.time.Duration;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.net.ssl.SSLContext;
 
@@ -34,6 +39,7 @@ import org.junit.Test;
 
 import io.nats.client.ConnectionListener.Events;
 import io.nats.client.impl.DataPort;
+import io.nats.client.impl.SocketChannelDataPort;
 import io.nats.client.utils.CloseOnUpgradeAttempt;
 
 public class OptionsTests {
@@ -45,6 +51,18 @@ public class OptionsTests {
         assertEquals("default url", Options.DEFAULT_URL, o.getServers().toArray()[0].toString());
 
         assertEquals("default data port type", Options.DEFAULT_DATA_PORT_TYPE, o.getDataPortType());
+        assertEquals("default wait strategy", Options.DEFAULT_WAIT_STRATEGY, o.getWaitStrategy());
+        assertEquals("default payload pool size", Options.DEFAULT_PAYLOAD_POOL_SIZE, o.getPayloadPoolSize());
+        assertEquals("default max outgoing messages", 0, o.getMaxOutgoingMessages());
+        assertEquals("default max outgoing bytes", 0, o.getMaxOutgoingBytes());
+        assertEquals("default outgoing policy", Options.DEFAULT_OUTGOING_POLICY, o.getOutgoingPolicy());
+        assertEquals("default outgoing timeout", Duration.ofMillis(Options.DEFAULT_OUTGOING_TIMEOUT_MILLIS), o.getOutgoingTimeout());
+        assertNull("default executor", o.getExecutor());
+        assertNull("default reply executor", o.getReplyExecutor());
+        assertNull("default event loop group", o.getEventLoopGroup());
+        assertNull("default scheduler", o.getScheduler());
+        assertFalse("default direct publish", o.isDirectPublish());
+        assertFalse("default inline replies", o.isInlineReplies());
 
         assertEquals("default verbose", false, o.isVerbose());
         assertEquals("default pedantic", false, o.isPedantic());
@@ -132,6 +150,69 @@ public class OptionsTests {
         assertEquals("chained cleanup interval", Duration.ofMillis(404), o.getRequestCleanupInterval());
     }
 
+    @Test
+    public void testChainedWaitStrategy() {
+        Options o = new Options.Builder().waitStrategy(Options.WaitStrategy.BUSY_SPIN).build();
+        assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+        assertEquals("chained wait strategy", Options.WaitStrategy.BUSY_SPIN, o.getWaitStrategy());
+    }
+
+    @Test
+    public void testChainedPayloadPoolSize() {
+        Options o = new Options.Builder().payloadPoolSize(1024 * 1024).build();
+        assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+        assertEquals("chained payload pool size", 1024 * 1024, o.getPayloadPoolSize());
+
+        o = new Options.Builder().payloadPoolSize(-1).build();
+        assertEquals("negative payload pool size", 0, o.getPayloadPoolSize());
+    }
+
+    @Test
+    public void testChainedOutgoingLimits() {
+        Options o = new Options.Builder().
+                            maxOutgoingMessages(100).
+                            maxOutgoingBytes(4096).
+                            outgoingPolicy(Options.OutgoingPolicy.DROP_OLDEST).
+                            outgoingTimeout(Duration.ofMillis(250)).
+                            build();
+        assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+        assertEquals("chained max outgoing messages", 100, o.getMaxOutgoingMessages());
+        assertEquals("chained max outgoing bytes", 4096, o.getMaxOutgoingBytes());
+        assertEquals("chained outgoing policy", Options.OutgoingPolicy.DROP_OLDEST, o.getOutgoingPolicy());
+        assertEquals("chained outgoing timeout", Duration.ofMillis(250), o.getOutgoingTimeout());
+    }
+
+    @Test
+    public void testChainedExecutor() {
+        Executor executor = Runnable::run;
+        Options o = new Options.Builder().executor(executor).replyExecutor(executor).build();
+        assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+        assertSame("chained executor", executor, o.getExecutor());
+        assertSame("chained reply executor", executor, o.getReplyExecutor());
+    }
+
+    @Test
+    public void testChainedScheduler() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Options o = new Options.Builder().scheduler(scheduler).build();
+            assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+            assertSame("chained scheduler", scheduler, o.getScheduler());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testChainedEventLoopGroup() throws IOException {
+        try (EventLoopGroup group = Nats.createEventLoopGroup(1)) {
+            Options o = new Options.Builder().eventLoopGroup(group).build();
+            assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+            assertSame("chained event loop group", group, o.getEventLoopGroup());
+            assertTrue("event loop data port", o.buildDataPort() instanceof SocketChannelDataPort);
+        }
+    }
+
     @Test
     public void testChainedErrorHandler() {
         TestHandler handler = new TestHandler();
@@ -185,6 +266,77 @@ public class OptionsTests {
         assertEquals("property connection name", "name", o.getConnectionName());
     }
 
+    @Test
+    public void testPropertiesWaitStrategy() {
+        Properties props = new Properties();
+        props.setProperty(Options.PROP_WAIT_STRATEGY, "blocking");
+
+        Options o = new Options.Builder(props).build();
+        assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+        assertEquals("property wait strategy", Options.WaitStrategy.BLOCKING, o.getWaitStrategy());
+    }
+
+    @Test
+    public void testPropertiesPayloadPoolSize() {
+        Properties props = new Properties();
+        props.setProperty(Options.PROP_PAYLOAD_POOL_SIZE, "65536");
+
+        Options o = new Options.Builder(props).build();
+        assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+        assertEquals("property payload pool size", 65536, o.getPayloadPoolSize());
+
+        props.setProperty(Options.PROP_PAYLOAD_POOL_SIZE, " 4096 ");
+        assertEquals("trimmed payload pool size", 4096, new Options.Builder(props).build().getPayloadPoolSize());
+    }
+
+    @Test
+    public void testPropertiesOutgoingLimits() {
+        Properties props = new Properties();
+        props.setProperty(Options.PROP_MAX_OUTGOING_MESSAGES, "100");
+        props.setProperty(Options.PROP_MAX_OUTGOING_BYTES, "4096");
+        props.setProperty(Options.PROP_OUTGOING_POLICY, "fail");
+        props.setProperty(Options.PROP_OUTGOING_TIMEOUT, "250");
+
+        Options o = new Options.Builder(props).build();
+        assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+        assertEquals("property max outgoing messages", 100, o.getMaxOutgoingMessages());
+        assertEquals("property max outgoing bytes", 4096, o.getMaxOutgoingBytes());
+        assertEquals("property outgoing policy", Options.OutgoingPolicy.FAIL, o.getOutgoingPolicy());
+        assertEquals("property outgoing timeout", Duration.ofMillis(250), o.getOutgoingTimeout());
+    }
+
+    @Test
+    public void testDirectPublish() {
+        Options o = new Options.Builder().directPublish().build();
+        assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+        assertTrue("chained direct publish", o.isDirectPublish());
+
+        Properties props = new Properties();
+        props.setProperty(Options.PROP_DIRECT_PUBLISH, "true");
+        o = new Options.Builder(props).build();
+        assertTrue("property direct publish", o.isDirectPublish());
+    }
+
+    @Test
+    public void testInlineReplies() {
+        Options o = new Options.Builder().inlineReplies().build();
+        assertEquals("default verbose", false, o.isVerbose()); // One from a different type
+        assertTrue("chained inline replies", o.isInlineReplies());
+
+        Properties props = new Properties();
+        props.setProperty(Options.PROP_INLINE_REPLIES, "true");
+        o = new Options.Builder(props).build();
+        assertTrue("property inline replies", o.isInlineReplies());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadWaitStrategyProperty() {
+        Properties props = new Properties();
+        props.setProperty(Options.PROP_WAIT_STRATEGY, "sleepy");
+        new Options.Builder(props);
+        assertFalse(true);
+    }
+
     @Test
     public void testPropertiesSSLOptions() throws Exception {
         // don't use default for tests, issues with forcing algorithm exception in other tests break it
@@ -19,8 +19,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -47,6 +50,40 @@ public class PublishTests {
         }
     }
 
+    @Test
+    public void testPublishAsyncAcks() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            Subscription sub = nc.subscribe("subject");
+            nc.flush(Duration.ofSeconds(1));
+
+            int count = 500;
+            ArrayList<CompletableFuture<Boolean>> acks = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                acks.add(nc.publishAsync("subject", String.valueOf(i).getBytes(StandardCharsets.UTF_8)));
+            }
+
+            for (CompletableFuture<Boolean> ack : acks) {
+                assertTrue("Acked", ack.get(5, TimeUnit.SECONDS));
+            }
+
+            for (int i = 0; i < count; i++) {
+                Message msg = sub.nextMessage(Duration.ofSeconds(1));
+                assertEquals(String.valueOf(i), new String(msg.getData(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void throwsIfClosedOnPublishAsync() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            nc.close();
+            nc.publishAsync("subject", null);
+            assertFalse(true);
+        }
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testThrowsWithoutSubject() throws IOException, InterruptedException {
         try (NatsTestServer ts = new NatsTestServer(false);
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 
@@ -129,6 +130,59 @@ public class SubscriberTests {
     }
 
 
+    @Test
+    public void testNextMessages() throws IOException, InterruptedException, TimeoutException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(ts.getURI())) {
+            assertTrue("Connected Status", Connection.Status.CONNECTED == nc.getStatus());
+
+            Subscription sub = nc.subscribe("subject");
+            for (int i = 0; i < 5; i++) {
+                nc.publish("subject", new byte[] {(byte) i});
+            }
+            nc.flush(Duration.ofSeconds(1));
+
+            List<Message> msgs = sub.nextMessages(3, Duration.ofMillis(500));
+            assertEquals(3, msgs.size());
+            assertEquals(0, msgs.get(0).getData()[0]);
+            assertEquals(2, msgs.get(2).getData()[0]);
+            assertEquals(sub, msgs.get(0).getSubscription());
+
+            msgs = sub.nextMessages(3, Duration.ofMillis(500));
+            assertEquals(2, msgs.size());
+            assertEquals(3, msgs.get(0).getData()[0]);
+
+            msgs = sub.nextMessages(3, Duration.ofMillis(100));
+            assertEquals(0, msgs.size());
+            assertEquals(5, sub.getDeliveredCount());
+        }
+    }
+
+    @Test
+    public void testNextMessagesStopsAtAutoUnsubscribe() throws IOException, InterruptedException, TimeoutException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(ts.getURI())) {
+            Subscription sub = nc.subscribe("subject").unsubscribe(2);
+            for (int i = 0; i < 5; i++) {
+                nc.publish("subject", new byte[16]);
+            }
+            nc.flush(Duration.ofSeconds(1));
+
+            List<Message> msgs = sub.nextMessages(10, Duration.ofMillis(500));
+            assertEquals(2, msgs.size());
+            assertFalse(sub.isActive());
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testThrowOnZeroNextMessages() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(ts.getURI())) {
+            nc.subscribe("subject").nextMessages(0, Duration.ofMillis(100));
+            assertFalse(true);
+        }
+    }
+
     @Test
     public void testUTF8Subjects() throws IOException, TimeoutException, InterruptedException {
         try (NatsTestServer ts = new NatsTestServer(false);
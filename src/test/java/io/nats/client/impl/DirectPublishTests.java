@@ -0,0 +1,143 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.NatsTestServer;
+import io.nats.client.Options;
+import io.nats.client.Subscription;
+
+public class DirectPublishTests {
+
+    // Remembers the threads that write to the socket
+    public static class ThreadRecordingDataPort extends SocketDataPort {
+        static final Set<Thread> writers = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void write(byte[] src, int toWrite) throws IOException {
+            writers.add(Thread.currentThread());
+            super.write(src, toWrite);
+        }
+    }
+
+    private static Options.Builder recordingOptions(NatsTestServer ts) {
+        return new Options.Builder().server(ts.getURI()).dataPortType(ThreadRecordingDataPort.class.getName());
+    }
+
+    @Test
+    public void testPublishWritesOnCallerThread() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(recordingOptions(ts).directPublish().build())) {
+            Subscription sub = nc.subscribe("direct");
+            nc.flush(Duration.ofSeconds(1));
+
+            ThreadRecordingDataPort.writers.clear();
+            nc.publish("direct", "one".getBytes(StandardCharsets.UTF_8));
+            assertTrue(ThreadRecordingDataPort.writers.contains(Thread.currentThread()));
+
+            Message msg = sub.nextMessage(Duration.ofSeconds(1));
+            assertNotNull(msg);
+            assertEquals("one", new String(msg.getData(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testPublishIsQueuedByDefault() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(recordingOptions(ts).build())) {
+            nc.flush(Duration.ofSeconds(1));
+
+            ThreadRecordingDataPort.writers.clear();
+            nc.publish("queued", null);
+            nc.flush(Duration.ofSeconds(1));
+            assertFalse(ThreadRecordingDataPort.writers.contains(Thread.currentThread()));
+        }
+    }
+
+    @Test
+    public void testOrderKeptWithManyPublishers() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).directPublish().build());
+                Connection sub = Nats.connect(ts.getURI())) {
+            Subscription s = sub.subscribe("order");
+            sub.flush(Duration.ofSeconds(1));
+
+            int threads = 4;
+            int count = 2000;
+            ArrayList<Thread> publishers = new ArrayList<>();
+
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                Thread publisher = new Thread(() -> {
+                    for (int i = 0; i < count; i++) {
+                        nc.publish("order", (id + ":" + i).getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+                publishers.add(publisher);
+                publisher.start();
+            }
+
+            for (Thread publisher : publishers) {
+                publisher.join();
+            }
+            nc.flush(Duration.ofSeconds(5));
+
+            int[] next = new int[threads];
+            for (int i = 0; i < threads * count; i++) {
+                Message msg = s.nextMessage(Duration.ofSeconds(5));
+                assertNotNull(msg);
+                String[] parts = new String(msg.getData(), StandardCharsets.UTF_8).split(":");
+                int id = Integer.parseInt(parts[0]);
+                assertEquals(next[id], Integer.parseInt(parts[1]));
+                next[id]++;
+            }
+        }
+    }
+
+    @Test
+    public void testAcksAndRequests() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).directPublish().build())) {
+            nc.createDispatcher((msg) -> {
+                nc.publish(msg.getReplyTo(), msg.getData());
+            }).subscribe("echo");
+            nc.flush(Duration.ofSeconds(1));
+
+            assertTrue(nc.publishAsync("acked", null).get(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < 100; i++) {
+                byte[] body = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+                Message reply = nc.request("echo", body).get(5, TimeUnit.SECONDS);
+                assertEquals(String.valueOf(i), new String(reply.getData(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
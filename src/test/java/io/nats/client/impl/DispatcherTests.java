@@ -20,12 +20,24 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -37,6 +49,7 @@ import io.nats.client.Message;
 import io.nats.client.Nats;
 import io.nats.client.NatsTestServer;
 import io.nats.client.Options;
+import io.nats.client.TestHandler;
 
 public class DispatcherTests {
     @Test
@@ -707,4 +720,401 @@ public class DispatcherTests {
             assertEquals(msgCount, q.size()); // Shoudl only get one since all the extra subs do nothing??
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParallelDispatcherKeepsOrderPerKey() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            int keys = 8;
+            int perKey = 200;
+            CountDownLatch latch = new CountDownLatch(keys * perKey);
+            ConcurrentHashMap<String, Integer> last = new ConcurrentHashMap<>();
+            ConcurrentHashMap<String, Boolean> threads = new ConcurrentHashMap<>();
+            AtomicInteger outOfOrder = new AtomicInteger();
+
+            Dispatcher d = nc.createDispatcher((msg) -> {
+                int seq = Integer.parseInt(new String(msg.getData(), StandardCharsets.UTF_8));
+                Integer prev = last.put(msg.getSubject(), seq);
+                if (prev != null && prev + 1 != seq) {
+                    outOfOrder.incrementAndGet();
+                }
+                threads.put(Thread.currentThread().getName(), Boolean.TRUE);
+                latch.countDown();
+            }, 4, null);
+
+            assertEquals(4, ((NatsDispatcher) d).getParallelism());
+            d.subscribe("key.*");
+            nc.flush(Duration.ofMillis(500));
+
+            for (int i = 0; i < perKey; i++) {
+                for (int k = 0; k < keys; k++) {
+                    nc.publish("key." + k, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(0, outOfOrder.get());
+            assertTrue(threads.size() > 1);
+            assertEquals(0, d.getPendingMessageCount());
+        }
+    }
+
+    @Test
+    public void testParallelDispatcherUsesKeyFunction() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            CountDownLatch latch = new CountDownLatch(100);
+            ConcurrentHashMap<String, Boolean> threads = new ConcurrentHashMap<>();
+
+            // Every message has the same key, so they all go to one thread
+            Dispatcher d = nc.createDispatcher((msg) -> {
+                threads.put(Thread.currentThread().getName(), Boolean.TRUE);
+                latch.countDown();
+            }, 4, (msg) -> "same");
+
+            d.subscribe("key.*");
+            nc.flush(Duration.ofMillis(500));
+
+            for (int i = 0; i < 100; i++) {
+                nc.publish("key." + i, new byte[16]);
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(1, threads.size());
+
+            nc.closeDispatcher(d);
+            assertFalse(d.isActive());
+        }
+    }
+
+    @Test
+    public void testThrowingKeyFunctionUsesFirstLane() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            CountDownLatch latch = new CountDownLatch(10);
+
+            Dispatcher d = nc.createDispatcher((msg) -> latch.countDown(), 4, (msg) -> {
+                throw new IllegalStateException("bad key");
+            });
+            d.subscribe("key");
+            nc.flush(Duration.ofMillis(500));
+
+            for (int i = 0; i < 10; i++) {
+                nc.publish("key", new byte[16]);
+            }
+
+            // The reader keeps going, so the messages still arrive and the connection still works
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            nc.flush(Duration.ofSeconds(1));
+            assertEquals(Connection.Status.CONNECTED, nc.getStatus());
+            assertEquals(10, ((NatsStatistics)nc.getStatistics()).getExceptions());
+        }
+    }
+
+    @Test
+    public void testDispatchersOnExecutor() throws Exception {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            Options options = new Options.Builder().server(ts.getURI()).executor(executor).build();
+            try (Connection nc = Nats.connect(options)) {
+                int count = 50;
+                CountDownLatch latch = new CountDownLatch(count * 10);
+                Dispatcher[] dispatchers = new Dispatcher[count];
+
+                for (int i = 0; i < count; i++) {
+                    dispatchers[i] = nc.createDispatcher((msg) -> latch.countDown());
+                    dispatchers[i].subscribe("subject." + i);
+                }
+                nc.flush(Duration.ofSeconds(1));
+
+                for (int j = 0; j < 10; j++) {
+                    for (int i = 0; i < count; i++) {
+                        nc.publish("subject." + i, new byte[16]);
+                    }
+                }
+                assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+                // Once the messages are handled only the reader and writer hold a thread
+                long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (executor.getActiveCount() > 2 && System.nanoTime() < end) {
+                    Thread.sleep(10);
+                }
+                assertEquals(2, executor.getActiveCount());
+
+                CompletableFuture<Boolean> drained = dispatchers[0].drain(Duration.ofSeconds(5));
+                assertTrue(drained.get(5, TimeUnit.SECONDS));
+                assertFalse(dispatchers[0].isActive());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedDispatchIsReported() throws Exception {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        AtomicBoolean reject = new AtomicBoolean();
+        Executor executor = (task) -> {
+            if (reject.get()) {
+                throw new RejectedExecutionException("full");
+            }
+            pool.execute(task);
+        };
+
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            Options options = new Options.Builder().server(ts.getURI()).executor(executor).build();
+            try (Connection nc = Nats.connect(options)) {
+                CountDownLatch latch = new CountDownLatch(2);
+                Dispatcher d = nc.createDispatcher((msg) -> latch.countDown());
+                d.subscribe("subject");
+                nc.flush(Duration.ofSeconds(1));
+
+                reject.set(true);
+                nc.publish("subject", null);
+                nc.flush(Duration.ofSeconds(1));
+                assertEquals(1, ((NatsStatistics)nc.getStatistics()).getExceptions());
+                assertEquals(Connection.Status.CONNECTED, nc.getStatus());
+
+                // The next message schedules the dispatcher again, and it handles both
+                reject.set(false);
+                nc.publish("subject", null);
+                assertTrue(latch.await(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelDispatcherOnExecutorKeepsOrderPerKey() throws Exception {
+        ForkJoinPool executor = new ForkJoinPool(4);
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            Options options = new Options.Builder().server(ts.getURI()).executor(executor).build();
+            try (Connection nc = Nats.connect(options)) {
+                int keys = 8;
+                int perKey = 500;
+                CountDownLatch latch = new CountDownLatch(keys * perKey);
+                ConcurrentHashMap<String, Integer> last = new ConcurrentHashMap<>();
+                AtomicInteger outOfOrder = new AtomicInteger();
+
+                Dispatcher d = nc.createDispatcher((msg) -> {
+                    int seq = Integer.parseInt(new String(msg.getData(), StandardCharsets.UTF_8));
+                    Integer prev = last.put(msg.getSubject(), seq);
+                    if (prev != null && prev + 1 != seq) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    latch.countDown();
+                }, 4, null);
+
+                d.subscribe("key.*");
+                nc.flush(Duration.ofMillis(500));
+
+                for (int i = 0; i < perKey; i++) {
+                    for (int k = 0; k < keys; k++) {
+                        nc.publish("key." + k, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+
+                assertTrue(latch.await(5, TimeUnit.SECONDS));
+                assertEquals(0, outOfOrder.get());
+
+                nc.closeDispatcher(d);
+                assertFalse(d.isActive());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchDispatcher() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            int msgCount = 1000;
+            CountDownLatch latch = new CountDownLatch(msgCount);
+            ConcurrentLinkedQueue<Integer> sizes = new ConcurrentLinkedQueue<>();
+            AtomicInteger outOfOrder = new AtomicInteger();
+            AtomicInteger next = new AtomicInteger();
+
+            Dispatcher d = nc.createDispatcher((List<Message> msgs) -> {
+                sizes.add(msgs.size());
+                for (Message msg : msgs) {
+                    int seq = Integer.parseInt(new String(msg.getData(), StandardCharsets.UTF_8));
+                    if (next.getAndIncrement() != seq) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            }, 100, 0, Duration.ofMillis(20));
+            d.subscribe("subject");
+            nc.flush(Duration.ofSeconds(1));
+
+            for (int i = 0; i < msgCount; i++) {
+                nc.publish("subject", String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(0, outOfOrder.get());
+            assertEquals(msgCount, ((NatsDispatcher) d).getDeliveredCount());
+            assertTrue(sizes.size() < msgCount);
+            for (int size : sizes) {
+                assertTrue(size <= 100);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchesLingerWithoutHoldingTheExecutor() throws Exception {
+        // The reader and writer take two threads, leaving one for both dispatchers
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).executor(pool).build())) {
+            CountDownLatch latch = new CountDownLatch(2);
+            ConcurrentLinkedQueue<Integer> sizes = new ConcurrentLinkedQueue<>();
+
+            for (String subject : new String[] {"a", "b"}) {
+                Dispatcher d = nc.createDispatcher((List<Message> msgs) -> {
+                    sizes.add(msgs.size());
+                    latch.countDown();
+                }, 100, 0, Duration.ofMillis(500));
+                d.subscribe(subject);
+            }
+            nc.flush(Duration.ofSeconds(1));
+
+            long start = System.nanoTime();
+            nc.publish("a", null);
+            nc.publish("b", null);
+            nc.flush(Duration.ofSeconds(1));
+            Thread.sleep(100);
+            nc.publish("a", null);
+            nc.publish("b", null);
+
+            // Waiting one linger after the other would take at least a second
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start < Duration.ofMillis(900).toNanos());
+            assertEquals(2, sizes.size());
+            for (int size : sizes) {
+                assertEquals(2, size);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchDispatcherAutoUnsub() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            AtomicInteger count = new AtomicInteger();
+
+            Dispatcher d = nc.createDispatcher((List<Message> msgs) -> {
+                count.addAndGet(msgs.size());
+            }, 100, 0, Duration.ofMillis(20));
+            d.subscribe("subject");
+            d.unsubscribe("subject", 5);
+            nc.flush(Duration.ofSeconds(1));
+
+            for (int i = 0; i < 20; i++) {
+                nc.publish("subject", new byte[16]);
+            }
+            nc.flush(Duration.ofSeconds(1));
+            Thread.sleep(100);
+
+            assertEquals(5, count.get());
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testThrowOnZeroBatchSize() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            nc.createDispatcher((List<Message> msgs) -> {}, 0, 0, null);
+            assertFalse(true);
+        }
+    }
+
+    @Test
+    public void testInlineDispatcher() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            CountDownLatch latch = new CountDownLatch(100);
+            ConcurrentHashMap<String, Boolean> threads = new ConcurrentHashMap<>();
+
+            Dispatcher d = nc.createInlineDispatcher((msg) -> {
+                threads.put(Thread.currentThread().getName(), Boolean.TRUE);
+                latch.countDown();
+            }, null);
+            d.subscribe("subject");
+            nc.flush(Duration.ofSeconds(1));
+
+            for (int i = 0; i < 100; i++) {
+                nc.publish("subject", new byte[16]);
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(1, threads.size());
+            assertTrue(threads.keys().nextElement().endsWith("Reader"));
+            assertEquals(100, ((NatsDispatcher) d).getDeliveredCount());
+            assertEquals(0, d.getPendingMessageCount());
+
+            CompletableFuture<Boolean> drained = d.drain(Duration.ofSeconds(5));
+            assertTrue(drained.get(5, TimeUnit.SECONDS));
+            assertFalse(d.isActive());
+        }
+    }
+
+    @Test
+    public void testInlineSlowHandlerIsReported() throws Exception {
+        TestHandler handler = new TestHandler();
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).errorListener(handler).build())) {
+            Future<Boolean> waitForSlow = handler.waitForSlow();
+
+            Dispatcher d = nc.createInlineDispatcher((msg) -> {
+                Thread.sleep(20);
+            }, Duration.ofMillis(5));
+            d.subscribe("subject");
+            nc.flush(Duration.ofSeconds(1));
+
+            nc.publish("subject", new byte[16]);
+            nc.publish("subject", new byte[16]);
+
+            waitForSlow.get(5, TimeUnit.SECONDS);
+            nc.flush(Duration.ofSeconds(1));
+            assertEquals(1, handler.getSlowConsumers().size()); // only the first time is reported
+            assertEquals(2, ((NatsDispatcher) d).getDeliveredCount());
+        }
+    }
+
+    @Test
+    public void testInlineHandlerCantFlush() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            CompletableFuture<Exception> thrown = new CompletableFuture<>();
+
+            Dispatcher d = nc.createInlineDispatcher((msg) -> {
+                try {
+                    nc.flush(Duration.ofSeconds(1));
+                    thrown.complete(null);
+                } catch (Exception e) {
+                    thrown.complete(e);
+                }
+            }, null);
+            d.subscribe("subject");
+            nc.flush(Duration.ofSeconds(1));
+
+            nc.publish("subject", new byte[16]);
+            assertTrue(thrown.get(5, TimeUnit.SECONDS) instanceof IllegalStateException);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testThrowOnZeroParallelism() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                    Connection nc = Nats.connect(ts.getURI())) {
+            nc.createDispatcher((msg) -> {}, 0, null);
+            assertFalse(true);
+        }
+    }
+}
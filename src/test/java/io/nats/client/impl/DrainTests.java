@@ -155,6 +155,41 @@ public class DrainTests {
         }
     }
 
+    @Test
+    public void testParallelDispatcherDrain() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection subCon = Nats.connect(new Options.Builder().server(ts.getURI()).maxReconnects(0).build());
+                Connection pubCon = Nats.connect(new Options.Builder().server(ts.getURI()).maxReconnects(0).build())) {
+            assertTrue("Connected Status", Connection.Status.CONNECTED == subCon.getStatus());
+            assertTrue("Connected Status", Connection.Status.CONNECTED == pubCon.getStatus());
+
+            AtomicInteger count = new AtomicInteger();
+            Dispatcher d = subCon.createDispatcher((msg) -> {
+                count.incrementAndGet();
+                try {
+                    Thread.sleep(100); // go slow so the main app can drain us
+                } catch (Exception e) {
+
+                }
+            }, 4, null);
+            d.subscribe("draintest.*");
+            subCon.flush(Duration.ofSeconds(1)); // Get the sub to the server
+
+            for (int i = 0; i < 8; i++) {
+                pubCon.publish("draintest." + i, null);
+            }
+            pubCon.flush(Duration.ofSeconds(1));
+            subCon.flush(Duration.ofSeconds(1));
+
+            CompletableFuture<Boolean> tracker = d.drain(Duration.ofSeconds(5));
+
+            assertTrue(tracker.get(5, TimeUnit.SECONDS));
+            assertEquals(8, count.get()); // Should get all of them
+            assertFalse(d.isActive());
+            assertTrue(((NatsDispatcher) d).isDrained());
+        }
+    }
+
     @Test
     public void testConnectionDrainWithZeroTimeout() throws Exception {
         try (NatsTestServer ts = new NatsTestServer(false);
@@ -0,0 +1,313 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.nats.client.Connection;
+import io.nats.client.ConnectionListener.Events;
+import io.nats.client.Dispatcher;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.NatsTestServer;
+import io.nats.client.Options;
+import io.nats.client.PublishBatch;
+import io.nats.client.Subscription;
+import io.nats.client.TestHandler;
+
+public class EventLoopTests {
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testGroupNeedsAThread() throws Exception {
+        new NatsEventLoopGroup(0);
+    }
+
+    @Test
+    public void testConnectionsShareLoops() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                NatsEventLoopGroup group = new NatsEventLoopGroup(2)) {
+            Options options = new Options.Builder().server(ts.getURI()).eventLoopGroup(group).build();
+            ArrayList<NatsConnection> connections = new ArrayList<>();
+            HashSet<Thread> readers = new HashSet<>();
+
+            try {
+                for (int i = 0; i < 10; i++) {
+                    NatsConnection nc = (NatsConnection) Nats.connect(options);
+                    connections.add(nc);
+                    assertEquals(Connection.Status.CONNECTED, nc.getStatus());
+                    assertNotNull(nc.getLoopChannel());
+                    readers.add(nc.getLoopChannel().getLoop().getThread());
+                }
+
+                assertEquals(2, readers.size());
+
+                Subscription[] subs = new Subscription[connections.size()];
+                for (int i = 0; i < connections.size(); i++) {
+                    subs[i] = connections.get(i).subscribe("loop." + i);
+                    connections.get(i).flush(Duration.ofSeconds(1));
+                }
+
+                // Each connection publishes to the next one's subject
+                for (int i = 0; i < connections.size(); i++) {
+                    String subject = "loop." + ((i + 1) % connections.size());
+                    connections.get(i).publish(subject, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                    connections.get(i).flush(Duration.ofSeconds(1));
+                }
+
+                for (int i = 0; i < connections.size(); i++) {
+                    Message msg = subs[i].nextMessage(Duration.ofSeconds(1));
+                    assertNotNull(msg);
+                    int from = (i + connections.size() - 1) % connections.size();
+                    assertEquals(String.valueOf(from), new String(msg.getData(), StandardCharsets.UTF_8));
+                }
+            } finally {
+                for (NatsConnection nc : connections) {
+                    nc.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRequestAndLargeMessages() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                NatsEventLoopGroup group = new NatsEventLoopGroup(1)) {
+            Options options = new Options.Builder().server(ts.getURI()).eventLoopGroup(group).build();
+
+            try (Connection responder = Nats.connect(options); Connection nc = Nats.connect(options)) {
+                Dispatcher d = responder.createDispatcher((msg) -> {
+                    responder.publish(msg.getReplyTo(), msg.getData());
+                });
+                d.subscribe("echo");
+                responder.flush(Duration.ofSeconds(1));
+
+                // Bigger than the socket buffers, so the writer has to wait for room and the reader
+                // sees the message over several reads
+                byte[] body = new byte[512 * 1024];
+                for (int i = 0; i < body.length; i++) {
+                    body[i] = (byte) ('a' + (i % 26));
+                }
+
+                for (int i = 0; i < 10; i++) {
+                    Message reply = nc.request("echo", body).get(5, TimeUnit.SECONDS);
+                    assertTrue(Arrays.equals(body, reply.getData()));
+                }
+
+                Message reply = nc.request("echo", "small".getBytes(StandardCharsets.UTF_8)).get(5, TimeUnit.SECONDS);
+                assertEquals("small", new String(reply.getData(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testLoopWritesDontGrowTheSendBuffer() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                NatsEventLoopGroup group = new NatsEventLoopGroup(1)) {
+            Options options = new Options.Builder().server(ts.getURI()).eventLoopGroup(group).bufferSize(256).build();
+
+            try (NatsConnection nc = (NatsConnection) Nats.connect(options)) {
+                Subscription sub = nc.subscribe("sizes");
+                nc.flush(Duration.ofSeconds(1));
+
+                // Smaller than the buffer, bigger than the buffer but copied, and gathered from the publisher's array
+                int[] sizes = {10, 1000, 10, 10000, 200, 3000, 10};
+
+                for (int i = 0; i < sizes.length; i++) {
+                    byte[] body = new byte[sizes[i]];
+                    Arrays.fill(body, (byte) ('a' + i));
+                    nc.publish("sizes", body);
+                }
+
+                try (PublishBatch batch = nc.batch()) {
+                    for (int i = 0; i < 20; i++) {
+                        batch.publish("sizes", new byte[100]);
+                    }
+                }
+
+                nc.flush(Duration.ofSeconds(2));
+
+                for (int i = 0; i < sizes.length; i++) {
+                    Message msg = sub.nextMessage(Duration.ofSeconds(1));
+                    assertNotNull(msg);
+                    assertEquals(sizes[i], msg.getData().length);
+                    assertEquals((byte) ('a' + i), msg.getData()[sizes[i] - 1]);
+                }
+
+                for (int i = 0; i < 20; i++) {
+                    assertNotNull(sub.nextMessage(Duration.ofSeconds(1)));
+                }
+
+                assertEquals(256, nc.getWriter().getSendBufferLength());
+            }
+        }
+    }
+
+    @Test
+    public void testThrowingConnectionDoesntStopTheLoop() throws Exception {
+        TestHandler handler = new TestHandler();
+
+        try (NatsTestServer ts = new NatsTestServer(false);
+                NatsEventLoopGroup group = new NatsEventLoopGroup(1)) {
+            Options failing = new Options.Builder().
+                                server(ts.getURI()).
+                                eventLoopGroup(group).
+                                reconnectWait(Duration.ofMillis(50)).
+                                connectionListener(handler).
+                                build();
+            Options options = new Options.Builder().server(ts.getURI()).eventLoopGroup(group).build();
+
+            try (NatsConnection bad = (NatsConnection) Nats.connect(failing);
+                    NatsConnection good = (NatsConnection) Nats.connect(options)) {
+                Thread loop = good.getLoopChannel().getLoop().getThread();
+                assertEquals(loop, bad.getLoopChannel().getLoop().getThread());
+
+                // Errors get past the dispatcher's handler catch, and out of the reader
+                Dispatcher d = bad.createInlineDispatcher((msg) -> {
+                    throw new Error("handler failed");
+                }, null);
+                d.subscribe("boom");
+                bad.flush(Duration.ofSeconds(1));
+
+                handler.prepForStatusChange(Events.RECONNECTED);
+                good.publish("boom", null);
+                good.flush(Duration.ofSeconds(1));
+                handler.waitForStatusChange(5, TimeUnit.SECONDS);
+
+                assertTrue(loop.isAlive());
+                assertEquals(Connection.Status.CONNECTED, good.getStatus());
+                Subscription sub = good.subscribe("still");
+                good.publish("still", null);
+                assertNotNull(sub.nextMessage(Duration.ofSeconds(1)));
+
+                assertEquals(Connection.Status.CONNECTED, bad.getStatus());
+                assertNotNull(bad.getLoopChannel());
+            }
+        }
+    }
+
+    @Test
+    public void testBlockingPublishOnTheLoopFailsFast() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                NatsEventLoopGroup group = new NatsEventLoopGroup(1)) {
+            Options options = new Options.Builder().
+                                server(ts.getURI()).
+                                eventLoopGroup(group).
+                                maxOutgoingMessages(5).
+                                outgoingTimeout(Duration.ofSeconds(30)).
+                                build();
+
+            try (NatsConnection nc = (NatsConnection) Nats.connect(options)) {
+                CompletableFuture<Long> failed = new CompletableFuture<>();
+
+                // The loop can't write while the handler runs, so the queue fills up
+                Dispatcher d = nc.createInlineDispatcher((msg) -> {
+                    long start = System.nanoTime();
+                    try {
+                        for (int i = 0; i < 100; i++) {
+                            nc.publish("out", null);
+                        }
+                        failed.complete(-1L);
+                    } catch (IllegalStateException e) {
+                        failed.complete(System.nanoTime() - start);
+                    }
+                }, null);
+                d.subscribe("in");
+                nc.flush(Duration.ofSeconds(1));
+
+                nc.publish("in", null);
+                long elapsed = failed.get(5, TimeUnit.SECONDS);
+                assertTrue(elapsed >= 0);
+                assertTrue(elapsed < Duration.ofSeconds(1).toNanos());
+
+                nc.flush(Duration.ofSeconds(1));
+                assertEquals(Connection.Status.CONNECTED, nc.getStatus());
+            }
+        }
+    }
+
+    @Test
+    public void testReconnectOnLoop() throws Exception {
+        TestHandler handler = new TestHandler();
+        int port = NatsTestServer.nextPort();
+        NatsConnection nc = null;
+        NatsEventLoopGroup group = new NatsEventLoopGroup(1);
+
+        try {
+            Options options = new Options.Builder().
+                                server("nats://localhost:" + port).
+                                maxReconnects(-1).
+                                reconnectWait(Duration.ofMillis(50)).
+                                connectionListener(handler).
+                                eventLoopGroup(group).
+                                build();
+
+            try (NatsTestServer ts = new NatsTestServer(port, false)) {
+                nc = (NatsConnection) Nats.connect(options);
+                assertNotNull(nc.getLoopChannel());
+                handler.prepForStatusChange(Events.DISCONNECTED);
+            }
+
+            handler.waitForStatusChange(5, TimeUnit.SECONDS);
+            assertNull(nc.getLoopChannel());
+
+            handler.prepForStatusChange(Events.RESUBSCRIBED);
+            try (NatsTestServer ts = new NatsTestServer(port, false)) {
+                handler.waitForStatusChange(5, TimeUnit.SECONDS);
+                assertEquals(Connection.Status.CONNECTED, nc.getStatus());
+                assertNotNull(nc.getLoopChannel());
+
+                Subscription sub = nc.subscribe("after");
+                nc.publish("after", null);
+                assertNotNull(sub.nextMessage(Duration.ofSeconds(1)));
+            }
+        } finally {
+            if (nc != null) {
+                nc.close();
+                assertEquals(Connection.Status.CLOSED, nc.getStatus());
+            }
+            group.close();
+        }
+    }
+
+    @Test
+    public void testClosedGroupFallsBackToThreads() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            NatsEventLoopGroup group = new NatsEventLoopGroup(1);
+            group.close();
+            group.next().getThread().join(5000);
+
+            Options options = new Options.Builder().server(ts.getURI()).eventLoopGroup(group).build();
+
+            try (Connection nc = Nats.connect(options)) {
+                assertNull(((NatsConnection) nc).getLoopChannel());
+                Subscription sub = nc.subscribe("threads");
+                nc.publish("threads", null);
+                assertNotNull(sub.nextMessage(Duration.ofSeconds(1)));
+            }
+        }
+    }
+}
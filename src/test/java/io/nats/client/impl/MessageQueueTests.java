@@ -22,6 +22,7 @@ import static org.junit.Assert.assertTrue;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +30,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import io.nats.client.Options.WaitStrategy;
+
 public class MessageQueueTests {
 
     @Test
@@ -519,4 +522,233 @@ public class MessageQueueTests {
         q.filter((msg) -> {return true;});
         assertFalse(true);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMultipleWritersSingleReader() throws InterruptedException {
+        MessageQueue q = new MessageQueue(true);
+        int writers = 4;
+        int msgCount = 3 * MpscArrayQueue.CHUNK_SIZE; // make sure we cross chunks
+        CountDownLatch ready = new CountDownLatch(1);
+
+        for (int i = 0; i < writers; i++) {
+            final String prefix = String.valueOf(i) + ".";
+            Thread t = new Thread(() -> {
+                try {ready.await();}catch(Exception e){}
+                for (int j = 0; j < msgCount; j++) {
+                    q.push(new NatsMessage(prefix + j));
+                }
+            });
+            t.start();
+        }
+
+        ready.countDown();
+
+        int[] next = new int[writers];
+        int received = 0;
+
+        while (received < writers * msgCount) {
+            NatsMessage msg = q.accumulate(1000, 100, Duration.ofSeconds(5));
+            assertNotNull(msg);
+
+            while (msg != null) {
+                String[] parts = new String(msg.getProtocolBytes(), StandardCharsets.UTF_8).split("\\.");
+                int writer = Integer.parseInt(parts[0]);
+
+                // Each writer's messages come out in the order it pushed them
+                assertEquals(next[writer], Integer.parseInt(parts[1]));
+                next[writer]++;
+                received++;
+                msg = msg.next;
+            }
+        }
+
+        assertEquals(0, q.length());
+        assertEquals(0, q.sizeInBytes());
+        assertNull(q.popNow());
+    }
+
+    @Test
+    public void testSingleReaderWakesOnPush() throws InterruptedException {
+        MessageQueue q = new MessageQueue(true);
+        NatsMessage expected = new NatsMessage("one");
+        Thread t = new Thread(() -> {try {Thread.sleep(100);}catch(Exception e){} q.push(expected);});
+        t.start();
+        NatsMessage msg = q.pop(Duration.ofSeconds(10));
+        assertEquals(expected, msg);
+    }
+
+    @Test
+    public void testMultipleReadersSeeEachMessageOnce() throws InterruptedException {
+        MessageQueue q = new MessageQueue(false);
+        int readers = 4;
+        int msgCount = 10_000;
+        AtomicInteger received = new AtomicInteger();
+        boolean[] seen = new boolean[msgCount];
+        CountDownLatch done = new CountDownLatch(readers);
+
+        for (int i = 0; i < readers; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    NatsMessage msg = q.pop(Duration.ofSeconds(1));
+                    while (msg != null) {
+                        assertNull(msg.next);
+                        int index = Integer.parseInt(new String(msg.getProtocolBytes(), StandardCharsets.UTF_8));
+                        synchronized (seen) {
+                            assertFalse(seen[index]);
+                            seen[index] = true;
+                        }
+                        received.incrementAndGet();
+                        msg = q.pop(Duration.ofSeconds(1));
+                    }
+                } catch (InterruptedException e) {
+                }
+                done.countDown();
+            });
+            t.start();
+        }
+
+        for (int i = 0; i < msgCount; i++) {
+            q.push(new NatsMessage(String.valueOf(i)));
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(msgCount, received.get());
+        assertEquals(0, q.length());
+        assertEquals(0, q.sizeInBytes());
+    }
+
+    @Test
+    public void testEachWaitStrategyWakesOnPush() throws InterruptedException {
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            for (boolean singleReader : new boolean[] {true, false}) {
+                MessageQueue q = new MessageQueue(singleReader, strategy);
+                NatsMessage expected = new NatsMessage("one");
+                Thread t = new Thread(() -> {try {Thread.sleep(50);}catch(Exception e){} q.push(expected);});
+                t.start();
+                NatsMessage msg = q.pop(Duration.ofSeconds(10));
+                assertEquals(strategy.toString(), expected, msg);
+                t.join();
+            }
+        }
+    }
+
+    @Test
+    public void testEachWaitStrategyTimesOut() throws InterruptedException {
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            MessageQueue q = new MessageQueue(true, strategy);
+            long start = System.nanoTime();
+            NatsMessage msg = q.accumulate(100, 100, Duration.ofMillis(50));
+            long elapsed = System.nanoTime() - start;
+            assertNull(strategy.toString(), msg);
+            assertTrue(strategy.toString(), elapsed >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    @Test
+    public void testSpinningWaitStopsOnPause() throws InterruptedException {
+        MessageQueue q = new MessageQueue(true, WaitStrategy.BUSY_SPIN);
+        Thread t = new Thread(() -> {try {Thread.sleep(100);}catch(Exception e){} q.pause();});
+        t.start();
+        NatsMessage msg = q.accumulate(100,100, Duration.ZERO);
+        assertNull(msg);
+    }
+
+    @Test
+    public void testStagedMessagesCountUntilPushed() throws InterruptedException {
+        for (boolean singleReader : new boolean[] {true, false}) {
+            MessageQueue q = new MessageQueue(singleReader);
+            NatsMessage msg1 = new NatsMessage("one");
+            NatsMessage msg2 = new NatsMessage("two");
+            NatsMessage msg3 = new NatsMessage("three");
+
+            q.push(msg1);
+            assertTrue(q.stage(msg2));
+            assertFalse(q.stage(msg3));
+
+            assertEquals(3, q.length());
+            assertEquals(msg1.getSizeInBytes() + msg2.getSizeInBytes() + msg3.getSizeInBytes(), q.sizeInBytes());
+
+            assertEquals(msg1, q.popNow());
+            assertNull(q.popNow()); // staged messages can't be read yet
+
+            q.pushStaged();
+            assertEquals(2, q.length());
+            assertEquals(msg2, q.popNow());
+            assertEquals(msg3, q.popNow());
+            assertNull(q.popNow());
+            assertEquals(0, q.length());
+            assertEquals(0, q.sizeInBytes());
+
+            assertTrue(q.stage(msg1)); // staging starts over after a push
+        }
+    }
+
+    @Test
+    public void testPushStagedAcrossChunks() throws InterruptedException {
+        MessageQueue q = new MessageQueue(true);
+        int msgCount = MpscArrayQueue.CHUNK_SIZE + 10;
+
+        q.push(new NatsMessage("first"));
+
+        for (int i = 0; i < msgCount; i++) {
+            q.stage(new NatsMessage(String.valueOf(i)));
+        }
+
+        Thread t = new Thread(() -> {try {Thread.sleep(50);}catch(Exception e){} q.pushStaged();});
+        t.start();
+
+        NatsMessage msg = q.accumulate(1000, 1, null);
+        assertEquals("first", new String(msg.getProtocolBytes(), StandardCharsets.UTF_8));
+
+        for (int i = 0; i < msgCount; i++) {
+            msg = q.pop(Duration.ofSeconds(5));
+            assertNotNull(msg);
+            assertEquals(String.valueOf(i), new String(msg.getProtocolBytes(), StandardCharsets.UTF_8));
+        }
+
+        assertEquals(0, q.length());
+    }
+
+    @Test
+    public void testPopBatchLimits() throws InterruptedException {
+        MessageQueue q = new MessageQueue(false);
+        for (int i = 0; i < 10; i++) {
+            q.push(new NatsMessage("PING")); // each one is 6 bytes
+        }
+
+        ArrayList<NatsMessage> batch = new ArrayList<>();
+        assertEquals(4, q.popBatch(batch, 4, -1, null, null));
+        assertEquals(4, batch.size());
+
+        batch.clear();
+        assertEquals(3, q.popBatch(batch, 100, 13, null, null)); // stops once the batch has 13 bytes
+        assertEquals(3, q.length());
+        assertEquals(18, q.sizeInBytes());
+
+        batch.clear();
+        assertEquals(3, q.popBatch(batch, 100, -1, null, null));
+        assertEquals(0, q.length());
+        assertEquals(0, q.sizeInBytes());
+        assertEquals(0, q.popBatch(batch, 100, -1, null, null));
+    }
+
+    @Test
+    public void testPopBatchLingers() throws InterruptedException {
+        MessageQueue q = new MessageQueue(true);
+        q.push(new NatsMessage("first"));
+
+        Thread t = new Thread(() -> {try {Thread.sleep(50);}catch(Exception e){} q.push(new NatsMessage("second"));});
+        t.start();
+
+        ArrayList<NatsMessage> batch = new ArrayList<>();
+        assertEquals(2, q.popBatch(batch, 2, -1, null, Duration.ofSeconds(5)));
+        assertEquals("second", new String(batch.get(1).getProtocolBytes(), StandardCharsets.UTF_8));
+
+        // Without more messages the linger runs out
+        q.push(new NatsMessage("third"));
+        batch.clear();
+        long start = System.nanoTime();
+        assertEquals(1, q.popBatch(batch, 2, -1, null, Duration.ofMillis(50)));
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+    }
+}
@@ -16,6 +16,7 @@ package io.nats.client.impl;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.charset.StandardCharsets;
@@ -56,6 +57,63 @@ public class NatsMessageTests {
         assertEquals("Size is correct", protocol.getBytes(StandardCharsets.UTF_8).length + body.length + 4, msg.getSizeInBytes());
     }
     
+    @Test
+    public void testIncomingSubjectAndReplyAreDecodedFromHeader() {
+        byte[] subject = "subject".getBytes(StandardCharsets.US_ASCII);
+        byte[] reply = "reply".getBytes(StandardCharsets.US_ASCII);
+        byte[] header = new byte[subject.length + reply.length];
+        System.arraycopy(subject, 0, header, 0, subject.length);
+        System.arraycopy(reply, 0, header, subject.length, reply.length);
+
+        NatsMessage msg = new NatsMessage(1, header, subject.length, false, 20);
+        assertFalse(msg.isProtocol());
+        assertEquals("subject", msg.getSubject());
+        assertEquals("reply", msg.getReplyTo());
+        assertTrue("Subject is cached", msg.getSubject() == msg.getSubject());
+
+        msg = new NatsMessage(1, subject, subject.length, false, 20);
+        assertEquals("subject", msg.getSubject());
+        assertNull(msg.getReplyTo());
+    }
+
+    @Test
+    public void testIncomingUTF8Subject() {
+        String subject = "s\u00fcbject";
+        byte[] header = subject.getBytes(StandardCharsets.UTF_8);
+
+        NatsMessage msg = new NatsMessage(1, header, header.length, true, 20);
+        assertEquals(subject, msg.getSubject());
+        assertNull(msg.getReplyTo());
+    }
+
+    @Test
+    public void testRequestWithReplyToken() {
+        byte[] body = new byte[10];
+        byte[] prefix = "_INBOX.abc.".getBytes(StandardCharsets.US_ASCII);
+
+        NatsMessage msg = new NatsMessage("subj", prefix, 1234, body, false);
+        assertEquals("PUB subj _INBOX.abc.1234 10", new String(msg.getProtocolBytes(), StandardCharsets.US_ASCII));
+        assertEquals(msg.getProtocolBytes().length + body.length + 4, msg.getSizeInBytes());
+        assertEquals("_INBOX.abc.1234", msg.getReplyTo());
+
+        msg = new NatsMessage("s\u00fcbj", prefix, 0, new byte[0], true);
+        assertEquals("PUB s\u00fcbj _INBOX.abc.0 0", new String(msg.getProtocolBytes(), StandardCharsets.UTF_8));
+        assertEquals("_INBOX.abc.0", msg.getReplyTo());
+    }
+
+    @Test
+    public void testSubjectToken() {
+        byte[] header = "_INBOX.abc.9876543210".getBytes(StandardCharsets.US_ASCII);
+        NatsMessage msg = new NatsMessage(1, header, header.length, false, 20);
+        assertEquals(9876543210L, msg.getSubjectToken());
+
+        header = "_INBOX.abc.12x".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(-1, new NatsMessage(1, header, header.length, false, 20).getSubjectToken());
+
+        header = "_INBOX.abc.".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(-1, new NatsMessage(1, header, header.length, false, 20).getSubjectToken());
+    }
+
     @Test(expected=IllegalArgumentException.class)
     public void testCustomMaxControlLine() throws Exception {
         byte[] body = new byte[10];
@@ -0,0 +1,221 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import io.nats.client.Connection;
+import io.nats.client.Nats;
+import io.nats.client.NatsTestServer;
+import io.nats.client.Options;
+import io.nats.client.Options.OutgoingPolicy;
+import io.nats.client.PublishBatch;
+
+// The connections that aren't connected have no writer thread, so their outgoing queue never drains
+public class OutgoingLimitTests {
+
+    @Test(expected=IllegalStateException.class)
+    public void testFailWhenFull() {
+        Options options = new Options.Builder().
+                                maxOutgoingMessages(2).
+                                outgoingPolicy(OutgoingPolicy.FAIL).
+                                build();
+        NatsConnection nc = new NatsConnection(options);
+        nc.publish("subject", new byte[10]);
+        nc.publish("subject", new byte[10]);
+        nc.publish("subject", new byte[10]);
+        assertFalse(true);
+    }
+
+    @Test
+    public void testBlockTimesOut() {
+        Options options = new Options.Builder().
+                                maxOutgoingBytes(1000).
+                                outgoingTimeout(Duration.ofMillis(100)).
+                                build();
+        NatsConnection nc = new NatsConnection(options);
+        nc.publish("subject", new byte[600]);
+
+        long start = System.nanoTime();
+        try {
+            nc.publish("subject", new byte[600]);
+            assertFalse(true);
+        } catch (IllegalStateException e) {
+            assertTrue(System.nanoTime() - start >= Duration.ofMillis(100).toNanos());
+        }
+    }
+
+    @Test
+    public void testLargeMessageFitsInEmptyQueue() {
+        Options options = new Options.Builder().
+                                maxOutgoingBytes(100).
+                                outgoingPolicy(OutgoingPolicy.FAIL).
+                                build();
+        NatsConnection nc = new NatsConnection(options);
+        nc.publish("subject", new byte[500]);
+        assertTrue(nc.getWriter().outgoingBytes() > 500);
+    }
+
+    @Test
+    public void testDropOldest() {
+        Options options = new Options.Builder().
+                                maxOutgoingMessages(3).
+                                outgoingPolicy(OutgoingPolicy.DROP_OLDEST).
+                                build();
+        NatsConnection nc = new NatsConnection(options);
+
+        for (int i = 0; i < 10; i++) {
+            nc.publish("subject", new byte[10]);
+        }
+
+        NatsMessage msg = new NatsMessage("subject", null, new byte[10], false);
+        assertEquals(3 * msg.getSizeInBytes(), nc.getWriter().outgoingBytes());
+    }
+
+    @Test
+    public void testBatchesCountEachMessage() throws Exception {
+        Options options = new Options.Builder().
+                                maxOutgoingMessages(5).
+                                outgoingPolicy(OutgoingPolicy.DROP_OLDEST).
+                                build();
+        NatsConnection nc = new NatsConnection(options);
+        NatsStatistics stats = nc.getNatsStatistics();
+
+        for (int i = 0; i < 3; i++) {
+            nc.publish("subject", new byte[10]);
+        }
+
+        // The batch is 4 messages, so 2 of the 3 have to go
+        try (PublishBatch batch = nc.batch()) {
+            for (int i = 0; i < 4; i++) {
+                batch.publish("subject", new byte[10]);
+            }
+        }
+        assertEquals(5, nc.getWriter().outgoingMessageCount());
+        assertEquals(2, stats.getOutgoingDroppedCount());
+
+        nc.publish("subject", new byte[10]); // drops the last single message
+        assertEquals(3, stats.getOutgoingDroppedCount());
+
+        nc.publish("subject", new byte[10]); // drops the whole batch, and counts all of it
+        assertEquals(7, stats.getOutgoingDroppedCount());
+        assertEquals(2, nc.getWriter().outgoingMessageCount());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testBatchOverTheLimitFails() throws Exception {
+        Options options = new Options.Builder().
+                                maxOutgoingMessages(3).
+                                outgoingPolicy(OutgoingPolicy.FAIL).
+                                build();
+        NatsConnection nc = new NatsConnection(options);
+        nc.publish("subject", new byte[10]);
+
+        try (PublishBatch batch = nc.batch()) {
+            for (int i = 0; i < 3; i++) {
+                batch.publish("subject", new byte[10]);
+            }
+        }
+    }
+
+    @Test
+    public void testResendsDontWaitForRoom() throws Exception {
+        Options options = new Options.Builder().
+                                maxOutgoingMessages(1).
+                                outgoingTimeout(Duration.ofSeconds(10)).
+                                build();
+        NatsConnection nc = new NatsConnection(options);
+        long queued = nc.getWriter().outgoingMessageCount();
+
+        // The retries are skipped instead of holding up the timer thread until the outgoing timeout
+        long start = System.nanoTime();
+        try {
+            nc.requestWithRetries("service", null, Duration.ofMillis(50), 2).get(5, TimeUnit.SECONDS);
+            assertFalse(true);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+        assertEquals(queued + 1, nc.getWriter().outgoingMessageCount());
+    }
+
+    @Test
+    public void testDropOldestKeepsProtocolMessages() throws InterruptedException {
+        MessageQueue q = new MessageQueue(true);
+        q.push(new NatsMessage("PING"));
+        q.push(new NatsMessage("subject", null, new byte[10], false));
+        q.push(new NatsMessage("subject", null, new byte[10], false));
+
+        assertEquals(0, q.dropOldest(1, -1));
+        assertEquals(3, q.length());
+
+        q.popNow();
+        assertEquals(1, q.dropOldest(1, -1));
+        assertEquals(1, q.length());
+        assertEquals(1, q.dropOldest(0, -1));
+        assertEquals(0, q.length());
+    }
+
+    @Test
+    public void testDropOldestAtTheByteBoundary() throws InterruptedException {
+        MessageQueue q = new MessageQueue(true, Options.DEFAULT_WAIT_STRATEGY, true);
+        for (int i = 0; i < 5; i++) {
+            q.push(new NatsMessage("subject", null, new byte[10], false));
+        }
+        long size = q.sizeInBytes() / 5;
+
+        // Messages the writer has taken aren't in the queue, so they don't count against the limit
+        NatsMessage msg = q.accumulate(1000, 1, null);
+        assertEquals(size, msg.getSizeInBytes());
+        assertEquals(4 * size, q.sizeInBytes());
+        assertEquals(0, q.dropOldest(-1, 4 * size));
+        assertEquals(4, q.length());
+
+        msg = q.accumulate(1000, 2, null);
+        assertEquals(2 * size, q.sizeInBytes());
+        assertEquals(0, q.dropOldest(-1, 2 * size));
+        assertEquals(1, q.dropOldest(-1, 2 * size - 1));
+        assertEquals(1, q.length());
+        assertEquals(size, q.sizeInBytes());
+    }
+
+    @Test
+    public void testAwaitOutgoingBelow() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(ts.getURI())) {
+            for (int i = 0; i < 1000; i++) {
+                nc.publish("subject", new byte[1000]);
+            }
+
+            assertTrue(nc.awaitOutgoingBelow(1, Duration.ofSeconds(5)));
+        }
+    }
+
+    @Test
+    public void testAwaitOutgoingBelowTimesOut() throws Exception {
+        NatsConnection nc = new NatsConnection(new Options.Builder().build());
+        nc.publish("subject", new byte[1000]);
+        assertFalse(nc.awaitOutgoingBelow(1000, Duration.ofMillis(50)));
+        assertTrue(nc.awaitOutgoingBelow(2000, Duration.ofMillis(50)));
+    }
+}
@@ -0,0 +1,185 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.NatsTestServer;
+import io.nats.client.Options;
+import io.nats.client.Subscription;
+
+public class PayloadPoolTests {
+
+    @Test
+    public void testSizeClasses() {
+        assertEquals(0, PayloadPool.classFor(1));
+        assertEquals(0, PayloadPool.classFor(64));
+        assertEquals(1, PayloadPool.classFor(65));
+        assertEquals(6, PayloadPool.classFor(4096));
+        assertEquals(7, PayloadPool.classFor(4097));
+        assertEquals(PayloadPool.CLASS_COUNT - 1, PayloadPool.classFor(1024 * 1024));
+        assertEquals(-1, PayloadPool.classFor(1024 * 1024 + 1));
+    }
+
+    @Test
+    public void testReleasedBuffersAreReused() {
+        PayloadPool pool = new PayloadPool(PayloadPool.CLASS_COUNT * 16 * 1024);
+
+        byte[] buffer = pool.acquire(5000);
+        assertEquals(8192, buffer.length);
+        assertEquals(0, pool.available(5000));
+
+        pool.release(buffer);
+        assertEquals(1, pool.available(5000));
+        assertSame(buffer, pool.acquire(8000));
+        assertEquals(0, pool.available(5000));
+
+        assertEquals(0, pool.acquire(0).length);
+        assertEquals(2 * 1024 * 1024, pool.acquire(2 * 1024 * 1024).length);
+    }
+
+    @Test
+    public void testPoolKeepsItsShare() {
+        PayloadPool pool = new PayloadPool(PayloadPool.CLASS_COUNT * 16 * 1024);
+
+        // Each class gets 16k, so two 8k buffers fit and the third is dropped
+        byte[][] buffers = {pool.acquire(8192), pool.acquire(8192), pool.acquire(8192)};
+        for (byte[] b : buffers) {
+            pool.release(b);
+        }
+        assertEquals(2, pool.available(8192));
+
+        // A 32k buffer is bigger than the share, so it isn't pooled
+        pool.release(pool.acquire(32 * 1024));
+        assertEquals(0, pool.available(32 * 1024));
+
+        // Buffers that aren't a class size are ignored
+        pool.release(new byte[100]);
+        assertEquals(0, pool.available(100));
+    }
+
+    @Test
+    public void testPooledMessages() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            Options options = new Options.Builder().
+                                    server(ts.getURI()).
+                                    payloadPoolSize(1024 * 1024).
+                                    build();
+            try (Connection nc = Nats.connect(options)) {
+                PayloadPool pool = ((NatsConnection) nc).getPayloadPool();
+                assertNotNull(pool);
+
+                Subscription sub = nc.subscribe("subject");
+                nc.flush(Duration.ofSeconds(1));
+
+                nc.publish("subject", "reply", "hello".getBytes(StandardCharsets.UTF_8));
+                Message msg = sub.nextMessage(Duration.ofSeconds(1));
+                assertNotNull(msg);
+                assertEquals(5, msg.getDataLength());
+                assertTrue(msg.getData().length >= 5 + "subjectreply".length());
+                assertEquals("hello", new String(msg.getData(), 0, msg.getDataLength(), StandardCharsets.UTF_8));
+
+                msg.release();
+                assertNull(msg.getData());
+                assertEquals(1, pool.available(5));
+
+                // The subject and reply shared the pooled buffer, they are kept when it is released
+                byte[] reused = pool.acquire(5);
+                Arrays.fill(reused, (byte) 'x');
+                assertEquals("subject", msg.getSubject());
+                assertEquals("reply", msg.getReplyTo());
+                pool.release(reused);
+                assertEquals(1, pool.available(5));
+
+                msg.release(); // second release is ignored
+                assertEquals(1, pool.available(5));
+
+                nc.publish("subject", "again".getBytes(StandardCharsets.UTF_8));
+                msg = sub.nextMessage(Duration.ofSeconds(1));
+                assertNotNull(msg);
+                assertEquals(0, pool.available(5));
+                assertEquals("again", new String(msg.getData(), 0, msg.getDataLength(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testUnpooledReleaseIsIgnored() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(ts.getURI())) {
+            assertNull(((NatsConnection) nc).getPayloadPool());
+
+            Subscription sub = nc.subscribe("subject");
+            nc.flush(Duration.ofSeconds(1));
+
+            nc.publish("subject", "hello".getBytes(StandardCharsets.UTF_8));
+            Message msg = sub.nextMessage(Duration.ofSeconds(1));
+            assertNotNull(msg);
+            assertEquals(5, msg.getData().length);
+            assertEquals(5, msg.getDataLength());
+
+            msg.release();
+            assertEquals(5, msg.getData().length);
+        }
+    }
+
+    @Test
+    public void testMessageDefaults() {
+        byte[] data = "hello".getBytes(StandardCharsets.UTF_8);
+
+        // Messages made outside the library, like test doubles, only need the original methods
+        Message msg = new Message() {
+            public String getSubject() {
+                return "subject";
+            }
+
+            public String getReplyTo() {
+                return null;
+            }
+
+            public byte[] getData() {
+                return data;
+            }
+
+            public Subscription getSubscription() {
+                return null;
+            }
+
+            public String getSID() {
+                return "1";
+            }
+
+            public Connection getConnection() {
+                return null;
+            }
+        };
+
+        assertEquals(5, msg.getDataLength());
+        msg.release();
+        assertSame(data, msg.getData());
+    }
+}
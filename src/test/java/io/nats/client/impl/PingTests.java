@@ -13,6 +13,7 @@
 
 package io.nats.client.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -22,12 +23,14 @@ import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.junit.Test;
 
 import io.nats.client.Connection;
+import io.nats.client.Message;
 import io.nats.client.Nats;
 import io.nats.client.NatsServerProtocolMock;
 import io.nats.client.NatsTestServer;
@@ -101,6 +104,45 @@ public class PingTests {
         }
     }
 
+    @Test
+    public void testPingOnCustomScheduler() throws IOException, InterruptedException, TimeoutException {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            Options options = new Options.Builder().server(ts.getURI()).pingInterval(Duration.ofMillis(5)).scheduler(scheduler).build();
+            NatsConnection nc = (NatsConnection) Nats.connect(options);
+            NatsStatistics stats = nc.getNatsStatistics();
+
+            try {
+                assertTrue("Connected Status", Connection.Status.CONNECTED == nc.getStatus());
+                assertEquals("ping task", 1, scheduler.getQueue().size());
+                Thread.sleep(200); // should get 10+ pings
+                assertTrue("got pings", stats.getPings() > 10);
+
+                // The timeout tick only runs while a request is waiting
+                CompletableFuture<Message> incoming = nc.requestWithTimeout("nobody", null, Duration.ofMillis(50));
+                assertEquals("ping and timeout tasks", 2, scheduler.getQueue().size());
+                try {
+                    incoming.get(5, TimeUnit.SECONDS);
+                    assertFalse(true);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof TimeoutException);
+                }
+                Thread.sleep(100);
+                assertEquals("ping task", 1, scheduler.getQueue().size());
+            } finally {
+                nc.close();
+                assertTrue("Closed Status", Connection.Status.CLOSED == nc.getStatus());
+            }
+
+            assertEquals("tasks cancelled on close", 0, scheduler.getQueue().size());
+            assertFalse("scheduler left running", scheduler.isShutdown());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
     @Test
     public void testPingFailsWhenClosed() throws Exception {
         try (NatsServerProtocolMock ts = new NatsServerProtocolMock(ExitAt.NO_EXIT)) {
@@ -0,0 +1,91 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.nats.client.Nats;
+import io.nats.client.NatsTestServer;
+import io.nats.client.Options;
+import io.nats.client.Options.OutgoingPolicy;
+
+public class PublishAsyncTests {
+
+    @Test
+    public void testBatchesShareAPing() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                NatsConnection nc = (NatsConnection) Nats.connect(ts.getURI())) {
+            nc.flush(Duration.ofSeconds(1));
+            long pings = nc.getNatsStatistics().getPings();
+
+            int count = 2000;
+            ArrayList<CompletableFuture<Boolean>> acks = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                acks.add(nc.publishAsync("subject", new byte[16]));
+            }
+
+            for (CompletableFuture<Boolean> ack : acks) {
+                assertTrue(ack.get(5, TimeUnit.SECONDS));
+            }
+
+            // At most one ping per write, and the writer takes up to 1000 messages at a time
+            assertTrue(nc.getNatsStatistics().getPings() - pings < count / 2);
+        }
+    }
+
+    @Test
+    public void testFlushCoversEarlierAcks() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                NatsConnection nc = (NatsConnection) Nats.connect(ts.getURI())) {
+            CompletableFuture<Boolean> ack = nc.publishAsync("subject", new byte[16]);
+            nc.flush(Duration.ofSeconds(1));
+            assertTrue(ack.isDone());
+            assertTrue(ack.get());
+        }
+    }
+
+    // Without a connection the messages stay queued
+    @Test
+    public void testUnsentAcksAreCancelled() {
+        NatsConnection nc = new NatsConnection(new Options.Builder().build());
+        CompletableFuture<Boolean> ack = nc.publishAsync("subject", new byte[16]);
+        assertFalse(ack.isDone());
+
+        nc.getWriter().stop();
+        nc.getWriter().cancelUnsent();
+        assertTrue(ack.isCancelled());
+    }
+
+    @Test
+    public void testDroppedAcksAreCancelled() {
+        Options options = new Options.Builder().
+                                maxOutgoingMessages(1).
+                                outgoingPolicy(OutgoingPolicy.DROP_OLDEST).
+                                build();
+        NatsConnection nc = new NatsConnection(options);
+        CompletableFuture<Boolean> first = nc.publishAsync("subject", new byte[16]);
+        CompletableFuture<Boolean> second = nc.publishAsync("subject", new byte[16]);
+
+        assertTrue(first.isCancelled());
+        assertFalse(second.isDone());
+    }
+}
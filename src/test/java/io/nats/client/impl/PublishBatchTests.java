@@ -0,0 +1,192 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.NatsTestServer;
+import io.nats.client.Options;
+import io.nats.client.PublishBatch;
+import io.nats.client.Subscription;
+
+public class PublishBatchTests {
+
+    @Test
+    public void testBatchArrivesInOrder() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(ts.getURI())) {
+            Subscription sub = nc.subscribe("batch");
+            nc.flush(Duration.ofSeconds(1));
+            long before = 0;
+
+            try (PublishBatch batch = nc.batch()) {
+                for (int i = 0; i < 100; i++) {
+                    batch.publish("batch", String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                }
+                assertEquals(100, batch.getMessageCount());
+
+                // Nothing goes out until the batch is closed
+                nc.flush(Duration.ofSeconds(1));
+                assertNull(sub.nextMessage(Duration.ofMillis(100)));
+                before = nc.getStatistics().getOutMsgs();
+            }
+
+            nc.flush(Duration.ofSeconds(1));
+            assertEquals(before + 101, nc.getStatistics().getOutMsgs()); // the batch and the flush's ping
+
+            for (int i = 0; i < 100; i++) {
+                Message msg = sub.nextMessage(Duration.ofSeconds(1));
+                assertNotNull(msg);
+                assertEquals(String.valueOf(i), new String(msg.getData(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testReplyToAndEmptyBody() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(ts.getURI())) {
+            Subscription sub = nc.subscribe("batch");
+            nc.flush(Duration.ofSeconds(1));
+
+            PublishBatch batch = nc.batch();
+            batch.publish("batch", "reply", null);
+            assertEquals("PUB batch reply 0\r\n\r\n".length(), batch.getSizeInBytes());
+            batch.close();
+
+            Message msg = sub.nextMessage(Duration.ofSeconds(1));
+            assertNotNull(msg);
+            assertEquals("reply", msg.getReplyTo());
+            assertEquals(0, msg.getData().length);
+        }
+    }
+
+    @Test
+    public void testLargeBatch() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).directPublish().build())) {
+            Subscription sub = nc.subscribe("large");
+            nc.flush(Duration.ofSeconds(1));
+
+            byte[] body = new byte[1024];
+            for (int i = 0; i < body.length; i++) {
+                body[i] = (byte) ('a' + (i % 26));
+            }
+
+            // Much bigger than the writer's buffer, so the chunk is written from its own array
+            try (PublishBatch batch = nc.batch()) {
+                for (int i = 0; i < 1000; i++) {
+                    batch.publish("large", body);
+                }
+                assertTrue(batch.getSizeInBytes() > NatsPublishBatch.INITIAL_SIZE);
+            }
+            nc.publish("large", "last".getBytes(StandardCharsets.UTF_8));
+
+            for (int i = 0; i < 1000; i++) {
+                Message msg = sub.nextMessage(Duration.ofSeconds(5));
+                assertNotNull(msg);
+                assertTrue(Arrays.equals(body, msg.getData()));
+            }
+
+            Message last = sub.nextMessage(Duration.ofSeconds(5));
+            assertNotNull(last);
+            assertEquals("last", new String(last.getData(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testBatchOnEventLoop() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                NatsEventLoopGroup group = new NatsEventLoopGroup(1);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).eventLoopGroup(group).build())) {
+            Subscription sub = nc.subscribe("loop");
+            nc.flush(Duration.ofSeconds(1));
+
+            try (PublishBatch batch = nc.batch()) {
+                for (int i = 0; i < 5000; i++) {
+                    batch.publish("loop", String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            for (int i = 0; i < 5000; i++) {
+                Message msg = sub.nextMessage(Duration.ofSeconds(5));
+                assertNotNull(msg);
+                assertEquals(String.valueOf(i), new String(msg.getData(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testShardedBatch() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connectSharded(new Options.Builder().server(ts.getURI()).build(), 4);
+                Connection sub = Nats.connect(ts.getURI())) {
+            Subscription s = sub.subscribe("sharded.*");
+            sub.flush(Duration.ofSeconds(1));
+
+            try (PublishBatch batch = nc.batch()) {
+                for (int i = 0; i < 20; i++) {
+                    batch.publish("sharded." + i, null);
+                }
+                assertEquals(20, batch.getMessageCount());
+            }
+            nc.flush(Duration.ofSeconds(1));
+
+            for (int i = 0; i < 20; i++) {
+                assertNotNull(s.nextMessage(Duration.ofSeconds(1)));
+            }
+        }
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testPublishAfterClose() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(ts.getURI())) {
+            PublishBatch batch = nc.batch();
+            batch.close();
+            batch.publish("closed", null);
+        }
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testCloseAfterConnectionClosed() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            Connection nc = Nats.connect(ts.getURI());
+            PublishBatch batch = nc.batch();
+            batch.publish("closed", null);
+            nc.close();
+            batch.close();
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadSubject() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(ts.getURI())) {
+            nc.batch().publish("", null);
+        }
+    }
+}
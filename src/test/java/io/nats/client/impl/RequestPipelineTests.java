@@ -0,0 +1,149 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.nats.client.Connection;
+import io.nats.client.Dispatcher;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.NatsTestServer;
+import io.nats.client.Options;
+import io.nats.client.RequestPipeline;
+
+public class RequestPipelineTests {
+
+    private static ArrayList<byte[]> numbers(int count) {
+        ArrayList<byte[]> bodies = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            bodies.add(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+        }
+        return bodies;
+    }
+
+    private static Dispatcher echo(Connection nc, int parallelism) {
+        // Parallel lanes answer out of order
+        Dispatcher d = nc.createDispatcher((msg) -> {
+            nc.publish(msg.getReplyTo(), msg.getData());
+        }, parallelism, (msg) -> msg.getData()[msg.getData().length - 1]);
+        d.subscribe("echo");
+        return d;
+    }
+
+    @Test
+    public void testOrderedReplies() throws IOException, TimeoutException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            echo(nc, 4);
+            nc.flush(Duration.ofSeconds(1));
+
+            RequestPipeline pipeline = nc.createRequestPipeline(16, Duration.ofSeconds(5));
+            AtomicInteger maxInFlight = new AtomicInteger();
+            ArrayList<String> replies = new ArrayList<>();
+
+            pipeline.requestAll("echo", numbers(1000).iterator(), true, (index, reply) -> {
+                assertEquals(replies.size(), index);
+                replies.add(new String(reply.getData(), StandardCharsets.UTF_8));
+                maxInFlight.set(Math.max(maxInFlight.get(), pipeline.getInFlight()));
+            });
+
+            assertEquals(1000, replies.size());
+            for (int i = 0; i < replies.size(); i++) {
+                assertEquals(String.valueOf(i), replies.get(i));
+            }
+            assertTrue(maxInFlight.get() <= 16);
+            assertEquals(0, pipeline.getInFlight());
+        }
+    }
+
+    @Test
+    public void testUnorderedReplies() throws IOException, TimeoutException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            echo(nc, 4);
+            nc.flush(Duration.ofSeconds(1));
+
+            RequestPipeline pipeline = nc.createRequestPipeline(16, Duration.ofSeconds(5));
+            HashSet<Long> indexes = new HashSet<>();
+
+            pipeline.requestAll("echo", numbers(1000).iterator(), false, (index, reply) -> {
+                assertEquals(String.valueOf(index), new String(reply.getData(), StandardCharsets.UTF_8));
+                assertTrue(pipeline.getInFlight() <= 16);
+                indexes.add(index);
+            });
+
+            assertEquals(1000, indexes.size());
+            assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+        }
+    }
+
+    @Test
+    public void testTimedOutRequestsAreNull() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            RequestPipeline pipeline = nc.createRequestPipeline(2, Duration.ofMillis(50));
+            AtomicInteger nulls = new AtomicInteger();
+
+            pipeline.requestAll("nobody", numbers(5).iterator(), true, (index, reply) -> {
+                assertNull(reply);
+                nulls.incrementAndGet();
+            });
+
+            assertEquals(5, nulls.get());
+        }
+    }
+
+    @Test
+    public void testSubmitWaitsForRoom() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            RequestPipeline pipeline = nc.createRequestPipeline(2, Duration.ofMillis(300));
+
+            CompletableFuture<Message> first = pipeline.submit("nobody", null);
+            CompletableFuture<Message> second = pipeline.submit("nobody", null);
+            assertEquals(2, pipeline.getInFlight());
+
+            // Either one timing out makes room
+            long start = System.nanoTime();
+            pipeline.submit("nobody", null);
+            assertTrue(first.isDone() || second.isDone());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+            assertFalse(pipeline.getInFlight() > 2);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testThrowOnZeroWindow() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            nc.createRequestPipeline(0, Duration.ofSeconds(1));
+        }
+    }
+}
@@ -23,10 +23,16 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -62,6 +68,63 @@ public class RequestTests {
         }
     }
 
+    @Test
+    public void testReplyStagesCanCallTheConnection() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).maxReconnects(0).build())) {
+            Dispatcher d = nc.createDispatcher((msg) -> {
+                Thread.sleep(100); // so the stage is added before the reply
+                nc.publish(msg.getReplyTo(), null);
+            });
+            d.subscribe("subject");
+
+            // By default replies aren't completed on the reader, so blocking calls work in the stage
+            CompletableFuture<String> thread = nc.request("subject", null).thenApply((msg) -> {
+                try {
+                    nc.flush(Duration.ofSeconds(1));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return Thread.currentThread().getName();
+            });
+            assertFalse(thread.get(5, TimeUnit.SECONDS).endsWith("Reader"));
+        }
+    }
+
+    @Test
+    public void testReplyCompletesOnReader() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).maxReconnects(0).inlineReplies().build())) {
+            Dispatcher d = nc.createDispatcher((msg) -> {
+                Thread.sleep(100); // so the stage is added before the reply
+                nc.publish(msg.getReplyTo(), null);
+            });
+            d.subscribe("subject");
+
+            CompletableFuture<String> thread = nc.request("subject", null).thenApply((msg) -> Thread.currentThread().getName());
+            assertTrue(thread.get(5, TimeUnit.SECONDS).endsWith("Reader"));
+            assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+        }
+    }
+
+    @Test
+    public void testReplyExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor((r) -> new Thread(r, "replies"));
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).replyExecutor(executor).build())) {
+            Dispatcher d = nc.createDispatcher((msg) -> {
+                Thread.sleep(100); // so the stage is added before the reply
+                nc.publish(msg.getReplyTo(), null);
+            });
+            d.subscribe("subject");
+
+            CompletableFuture<String> thread = nc.request("subject", null).thenApply((msg) -> Thread.currentThread().getName());
+            assertEquals("replies", thread.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testSafeRequest() throws IOException, ExecutionException, TimeoutException, InterruptedException {
         try (NatsTestServer ts = new NatsTestServer(false);
@@ -150,6 +213,220 @@ public class RequestTests {
         }
     }
 
+    @Test
+    public void testRequestWithTimeout() throws IOException, ExecutionException, TimeoutException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI())
+                                    .requestCleanupInterval(Duration.ofHours(1)).build())) {
+            Dispatcher d = nc.createDispatcher((msg) -> {
+                nc.publish(msg.getReplyTo(), null);
+            });
+            d.subscribe("subject");
+
+            Message msg = nc.requestWithTimeout("subject", null, Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+            assertNotNull(msg);
+
+            long start = System.nanoTime();
+            CompletableFuture<Message> incoming = nc.requestWithTimeout("nobody", null, Duration.ofMillis(100));
+
+            try {
+                incoming.get(5, TimeUnit.SECONDS);
+                assertFalse(true);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("timed out after " + elapsed, elapsed >= 100 && elapsed < 2000);
+
+            // Cleaned up right away, not by the hour long cleanup
+            assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+        }
+    }
+
+    @Test
+    public void testSyncRequestTimeoutCleansUp() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI())
+                                    .requestCleanupInterval(Duration.ofHours(1)).build())) {
+            assertNull(nc.request("nobody", null, Duration.ofMillis(50)));
+            Thread.sleep(200);
+            assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+        }
+    }
+
+    @Test
+    public void testRequestMany() throws IOException, ExecutionException, TimeoutException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            for (int i = 0; i < 5; i++) {
+                final byte[] id = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+                Dispatcher d = nc.createDispatcher((msg) -> {
+                    nc.publish(msg.getReplyTo(), id);
+                });
+                d.subscribe("service");
+            }
+            nc.flush(Duration.ofSeconds(1));
+
+            // The first three
+            List<Message> replies = nc.requestMany("service", null, 3, Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+            assertEquals(3, replies.size());
+
+            // Everything until the timeout
+            long start = System.nanoTime();
+            replies = nc.requestMany("service", null, 0, Duration.ofMillis(500)).get(5, TimeUnit.SECONDS);
+            assertEquals(5, replies.size());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 500);
+
+            HashSet<String> ids = new HashSet<>();
+            for (Message msg : replies) {
+                ids.add(new String(msg.getData(), StandardCharsets.UTF_8));
+            }
+            assertEquals(5, ids.size());
+
+            // Fewer than asked for
+            replies = nc.requestMany("service", null, 10, Duration.ofMillis(200)).get(5, TimeUnit.SECONDS);
+            assertEquals(5, replies.size());
+
+            // Nobody home
+            replies = nc.requestMany("nobody", null, 1, Duration.ofMillis(50)).get(5, TimeUnit.SECONDS);
+            assertEquals(0, replies.size());
+
+            assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+        }
+    }
+
+    @Test
+    public void testOldStyleRequestMany() throws IOException, ExecutionException, TimeoutException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).oldRequestStyle().build())) {
+            for (int i = 0; i < 3; i++) {
+                Dispatcher d = nc.createDispatcher((msg) -> {
+                    nc.publish(msg.getReplyTo(), null);
+                });
+                d.subscribe("service");
+            }
+            nc.flush(Duration.ofSeconds(1));
+
+            List<Message> replies = nc.requestMany("service", null, 2, Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+            assertEquals(2, replies.size());
+
+            replies = nc.requestMany("service", null, 0, Duration.ofMillis(300)).get(5, TimeUnit.SECONDS);
+            assertEquals(3, replies.size());
+            assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+        }
+    }
+
+    @Test
+    public void testCancelledRequestManyLeavesRightAway() throws Exception {
+        for (boolean oldStyle : new boolean[] {false, true}) {
+            Options.Builder builder = new Options.Builder();
+            if (oldStyle) {
+                builder.oldRequestStyle();
+            }
+
+            try (NatsTestServer ts = new NatsTestServer(false);
+                    NatsConnection nc = (NatsConnection) Nats.connect(builder.server(ts.getURI()).build())) {
+                nc.requestMany("nobody", null, 0, Duration.ofMillis(10)).get(5, TimeUnit.SECONDS); // sets up the inbox
+                int subscribers = nc.getSubscriberCount();
+
+                CompletableFuture<List<Message>> replies = nc.requestMany("nobody", null, 0, Duration.ofSeconds(30));
+                assertEquals(1, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+                replies.cancel(true);
+
+                // Long before the timeout
+                assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+                assertEquals(subscribers, nc.getSubscriberCount());
+
+                // Completing it yourself works the same way
+                replies = nc.requestMany("nobody", null, 0, Duration.ofSeconds(30));
+                replies.complete(new ArrayList<>());
+                assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+                assertEquals(subscribers, nc.getSubscriberCount());
+            }
+        }
+    }
+
+    @Test
+    public void testRequestManyCancelledOnClose() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build());
+            CompletableFuture<List<Message>> replies = nc.requestMany("nobody", null, 1, Duration.ofSeconds(30));
+            nc.close();
+            assertTrue(replies.isCancelled());
+        }
+    }
+
+    @Test
+    public void testHedgedRequest() throws IOException, ExecutionException, TimeoutException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            AtomicInteger received = new AtomicInteger();
+
+            // The first copy stalls, the second is answered right away
+            Dispatcher d = nc.createDispatcher((msg) -> {
+                if (received.incrementAndGet() == 2) {
+                    nc.publish(msg.getReplyTo(), "hedge".getBytes(StandardCharsets.UTF_8));
+                }
+            });
+            d.subscribe("service");
+            nc.flush(Duration.ofSeconds(1));
+
+            Message msg = nc.requestHedged("service", null, Duration.ofMillis(50), Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+            assertEquals("hedge", new String(msg.getData(), StandardCharsets.UTF_8));
+            assertEquals(2, received.get());
+            assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+
+            // An answered request doesn't send the copy
+            received.set(1);
+            msg = nc.requestHedged("service", null, Duration.ofMillis(100), Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+            assertNotNull(msg);
+            Thread.sleep(200);
+            assertEquals(2, received.get());
+        }
+    }
+
+    @Test
+    public void testRequestWithRetries() throws IOException, ExecutionException, TimeoutException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            AtomicInteger received = new AtomicInteger();
+
+            Dispatcher d = nc.createDispatcher((msg) -> {
+                if (received.incrementAndGet() == 3) {
+                    nc.publish(msg.getReplyTo(), null);
+                }
+            });
+            d.subscribe("service");
+            nc.flush(Duration.ofSeconds(1));
+
+            Message msg = nc.requestWithRetries("service", null, Duration.ofMillis(50), 5).get(5, TimeUnit.SECONDS);
+            assertNotNull(msg);
+            assertEquals(3, received.get());
+
+            // Gives up after the last retry, 50 + 100 + 200 ms
+            received.set(-100);
+            long start = System.nanoTime();
+            try {
+                nc.requestWithRetries("service", null, Duration.ofMillis(50), 2).get(5, TimeUnit.SECONDS);
+                assertFalse(true);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 350);
+            assertEquals(-97, received.get());
+            assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testThrowsWithoutTimeout() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            nc.requestWithTimeout("subject", null, null);
+        }
+    }
+
     @Test
     public void testRequireCleanupOnTimeout() throws IOException, ExecutionException, InterruptedException {
         try (NatsTestServer ts = new NatsTestServer(false)) {
@@ -188,7 +465,8 @@ public class RequestTests {
                 Future<Message> incoming = nc.request("subject", null);
                 incoming.cancel(true);
 
-                assertEquals(1, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+                // Cancelling lets go of the request right away, it doesn't wait for a cleanup
+                assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
             } finally {
                 nc.close();
                 assertTrue("Closed Status", Connection.Status.CLOSED == nc.getStatus());
@@ -197,10 +475,9 @@ public class RequestTests {
     }
 
     @Test
-    public void testCleanupTimerWorks() throws IOException, ExecutionException, TimeoutException, InterruptedException {
+    public void testCancelledRequestsAreRemoved() throws IOException, ExecutionException, TimeoutException, InterruptedException {
         try (NatsTestServer ts = new NatsTestServer(false)) {
-            long cleanupInterval = 50;
-            Options options = new Options.Builder().server(ts.getURI()).requestCleanupInterval(Duration.ofMillis(cleanupInterval)).build();
+            Options options = new Options.Builder().server(ts.getURI()).build();
             Connection nc = Nats.connect(options);
             try {
                 assertTrue("Connected Status", Connection.Status.CONNECTED == nc.getStatus());
@@ -210,20 +487,19 @@ public class RequestTests {
                 incoming = nc.request("subject", null);
                 incoming.cancel(true);
                 incoming = nc.request("subject", null);
+                assertEquals(1, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
                 incoming.cancel(true);
 
-                Thread.sleep(2 * cleanupInterval);
+                // Gone as soon as they are cancelled, there is no timer to wait for
                 assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
 
-                // Make sure it is still running
-                incoming = nc.request("subject", null);
-                incoming.cancel(true);
-                incoming = nc.request("subject", null);
-                incoming.cancel(true);
-                incoming = nc.request("subject", null);
-                incoming.cancel(true);
-
-                Thread.sleep(2 * cleanupInterval);
+                incoming = nc.requestWithTimeout("subject", null, Duration.ofMillis(50));
+                try {
+                    incoming.get(5, TimeUnit.SECONDS);
+                    assertFalse(true);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof TimeoutException);
+                }
                 assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
             } finally {
                 nc.close();
@@ -233,11 +509,11 @@ public class RequestTests {
     }
 
     @Test
-    public void testRequestsVsCleanup() throws IOException, ExecutionException, TimeoutException, InterruptedException {
+    public void testCompletedRequestsAreRemoved() throws IOException, ExecutionException, TimeoutException, InterruptedException {
         try (NatsTestServer ts = new NatsTestServer(false)) {
-            long cleanupInterval = 50;
+            long runTime = 100;
             int msgCount = 100;
-            Options options = new Options.Builder().server(ts.getURI()).requestCleanupInterval(Duration.ofMillis(cleanupInterval)).build();
+            Options options = new Options.Builder().server(ts.getURI()).build();
             Connection nc = Nats.connect(options);
             try {
                 assertTrue("Connected Status", Connection.Status.CONNECTED == nc.getStatus());
@@ -250,7 +526,7 @@ public class RequestTests {
                 long start = System.nanoTime();
                 long end = start;
 
-                while ((end-start) <= 2 * cleanupInterval * 1_000_000) {
+                while ((end-start) <= runTime * 1_000_000) {
                     for (int i=0;i<msgCount;i++) {
                         Future<Message> incoming = nc.request("subject", null);
                         Message msg = incoming.get(500, TimeUnit.MILLISECONDS);
@@ -260,8 +536,8 @@ public class RequestTests {
                     end = System.nanoTime();
                 }
 
-                assertTrue((end-start) > 2 * cleanupInterval * 1_000_000);
-                assertTrue(0 >= ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
+                assertTrue((end-start) > runTime * 1_000_000);
+                assertEquals(0, ((NatsStatistics)nc.getStatistics()).getOutstandingRequests());
             } finally {
                 nc.close();
                 assertTrue("Closed Status", Connection.Status.CLOSED == nc.getStatus());
@@ -0,0 +1,183 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ResponseMapTests {
+
+    @Test
+    public void testPutRemove() {
+        ResponseMap map = new ResponseMap();
+        ResponseMap.ResponseFuture[] futures = new ResponseMap.ResponseFuture[1000];
+
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = new ResponseMap.ResponseFuture(i + 1);
+            map.put(futures[i]);
+        }
+
+        assertEquals(futures.length, map.size());
+        assertTrue(map.capacity() >= 2 * futures.length);
+        for (int i = 0; i < futures.length; i++) {
+            assertSame(futures[i], map.get(i + 1));
+        }
+        assertNull(map.get(0));
+        assertNull(map.remove(0));
+        assertNull(map.remove(futures.length + 1));
+
+        // Remove every other one, their slots are free again
+        for (int i = 0; i < futures.length; i += 2) {
+            assertSame(futures[i], map.remove(i + 1));
+        }
+        assertNull(map.remove(1));
+        assertNull(map.get(1));
+        assertSame(futures[1], map.get(2));
+        assertEquals(futures.length / 2, map.size());
+
+        HashSet<Long> seen = new HashSet<>();
+        map.forEach((f) -> seen.add(f.getToken()));
+        assertEquals(futures.length / 2, seen.size());
+
+        for (int i = 1; i < futures.length; i += 2) {
+            assertTrue(seen.contains((long) (i + 1)));
+            assertSame(futures[i], map.remove(i + 1));
+        }
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testChurnDoesNotGrowTable() {
+        ResponseMap map = new ResponseMap();
+
+        for (long token = 1; token <= 100_000; token++) {
+            map.put(new ResponseMap.ResponseFuture(token));
+            if (token > 4) {
+                assertEquals(token - 4, map.remove(token - 4).getToken());
+            }
+        }
+
+        assertEquals(4, map.size());
+        assertTrue(map.capacity() <= 2 * ResponseMap.MIN_CAPACITY);
+    }
+
+    @Test
+    public void testTakenSlotsOverflow() {
+        ResponseMap map = new ResponseMap();
+        int capacity = map.capacity();
+        ResponseMap.ResponseFuture first = new ResponseMap.ResponseFuture(1);
+        ResponseMap.ResponseFuture second = new ResponseMap.ResponseFuture(1 + capacity); // same slot
+        ResponseMap.ResponseFuture third = new ResponseMap.ResponseFuture(1 + 2 * capacity);
+
+        map.put(first);
+        map.put(second);
+        assertEquals(capacity, map.capacity());
+        assertSame(first, map.get(1));
+        assertSame(second, map.get(1 + capacity));
+        assertNull(map.get(1 + 2 * capacity));
+
+        // The slot is reused once the first is removed
+        assertSame(first, map.remove(1));
+        assertNull(map.remove(1));
+        map.put(third);
+        assertSame(third, map.get(1 + 2 * capacity));
+        assertSame(second, map.remove(1 + capacity));
+        assertSame(third, map.remove(1 + 2 * capacity));
+        assertEquals(0, map.size());
+
+        AtomicInteger seen = new AtomicInteger();
+        map.forEach((f) -> seen.incrementAndGet());
+        assertEquals(0, seen.get());
+    }
+
+    @Test
+    public void testLookupsWhileGrowing() throws Exception {
+        ResponseMap map = new ResponseMap();
+        ResponseMap.ResponseFuture held = new ResponseMap.ResponseFuture(Long.MAX_VALUE / 2);
+        map.put(held);
+
+        AtomicInteger missing = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                if (map.get(held.getToken()) != held) {
+                    missing.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        // Grow the table from its smallest size, several times, under the reader
+        ResponseMap.ResponseFuture[] futures = new ResponseMap.ResponseFuture[100_000];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = new ResponseMap.ResponseFuture(i + 1);
+            map.put(futures[i]);
+        }
+        assertTrue(map.capacity() >= 2 * futures.length);
+
+        for (int i = 0; i < futures.length; i++) {
+            assertSame(futures[i], map.remove(i + 1));
+        }
+
+        running.set(false);
+        reader.join();
+        assertEquals(0, missing.get());
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testConcurrentPutAndRemove() throws Exception {
+        ResponseMap map = new ResponseMap();
+        AtomicLong nextToken = new AtomicLong(1);
+        AtomicInteger missing = new AtomicInteger();
+        int threads = 4;
+        int perThread = 50_000;
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                long[] held = new long[64];
+                for (int j = 0; j < perThread; j++) {
+                    int slot = j % held.length;
+                    if (held[slot] != 0 && map.remove(held[slot]) == null) {
+                        missing.incrementAndGet();
+                    }
+                    long token = nextToken.getAndIncrement();
+                    map.put(new ResponseMap.ResponseFuture(token));
+                    held[slot] = token;
+                }
+                for (long token : held) {
+                    if (map.remove(token) == null) {
+                        missing.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+
+        done.await();
+        assertEquals(0, missing.get());
+        assertEquals(0, map.size());
+    }
+}
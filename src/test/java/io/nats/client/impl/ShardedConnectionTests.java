@@ -0,0 +1,160 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import io.nats.client.Connection;
+import io.nats.client.Dispatcher;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.NatsTestServer;
+import io.nats.client.Options;
+import io.nats.client.Subscription;
+
+public class ShardedConnectionTests {
+
+    @Test
+    public void testSubjectsSpreadAcrossShards() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connectSharded(new Options.Builder().server(ts.getURI()).build(), 4)) {
+            ShardedConnection sharded = (ShardedConnection) nc;
+            assertEquals(4, sharded.getShardCount());
+            assertEquals(Connection.Status.CONNECTED, nc.getStatus());
+
+            HashSet<NatsConnection> used = new HashSet<>();
+            for (int i = 0; i < 100; i++) {
+                NatsConnection shard = sharded.shardFor("subject." + i);
+                assertTrue(shard == sharded.shardFor("subject." + i));
+                used.add(shard);
+            }
+            assertEquals(4, used.size());
+        }
+    }
+
+    @Test
+    public void testPublishKeepsOrderPerSubject() throws IOException, TimeoutException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connectSharded(new Options.Builder().server(ts.getURI()).build(), 3);
+                Connection sub = Nats.connect(new Options.Builder().server(ts.getURI()).build())) {
+            int subjects = 10;
+            int count = 500;
+            Subscription[] subs = new Subscription[subjects];
+
+            for (int s = 0; s < subjects; s++) {
+                subs[s] = sub.subscribe("order." + s);
+            }
+            sub.flush(Duration.ofSeconds(1));
+
+            for (int i = 0; i < count; i++) {
+                for (int s = 0; s < subjects; s++) {
+                    nc.publish("order." + s, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            nc.flush(Duration.ofSeconds(5));
+
+            for (int s = 0; s < subjects; s++) {
+                for (int i = 0; i < count; i++) {
+                    Message msg = subs[s].nextMessage(Duration.ofSeconds(5));
+                    assertNotNull(msg);
+                    assertEquals(String.valueOf(i), new String(msg.getData(), StandardCharsets.UTF_8));
+                }
+            }
+
+            assertTrue(nc.getStatistics().getOutMsgs() >= subjects * count);
+        }
+    }
+
+    @Test
+    public void testRequestsAndDispatchers() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = Nats.connectSharded(new Options.Builder().server(ts.getURI()).build(), 2)) {
+            ArrayList<Dispatcher> dispatchers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Dispatcher d = nc.createDispatcher((msg) -> {
+                    nc.publish(msg.getReplyTo(), msg.getData());
+                });
+                d.subscribe("service." + i);
+                dispatchers.add(d);
+            }
+            nc.flush(Duration.ofSeconds(1));
+
+            for (int i = 0; i < 4; i++) {
+                byte[] body = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+                Message reply = nc.request("service." + i, body).get(5, TimeUnit.SECONDS);
+                assertEquals(String.valueOf(i), new String(reply.getData(), StandardCharsets.UTF_8));
+            }
+
+            for (Dispatcher d : dispatchers) {
+                nc.closeDispatcher(d);
+            }
+        }
+    }
+
+    @Test
+    public void testDrainAllShards() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            Connection nc = Nats.connectSharded(new Options.Builder().server(ts.getURI()).build(), 3);
+            CountDownLatch received = new CountDownLatch(1);
+            Dispatcher d = nc.createDispatcher((msg) -> received.countDown());
+            d.subscribe("drain");
+            nc.flush(Duration.ofSeconds(1));
+            nc.publish("drain", null);
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+
+            assertTrue(nc.drain(Duration.ofSeconds(5)).get(10, TimeUnit.SECONDS));
+            assertEquals(Connection.Status.CLOSED, nc.getStatus());
+        }
+    }
+
+    @Test
+    public void testServersAndCloseCoverEveryShard() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            ShardedConnection nc = (ShardedConnection) Nats.connectSharded(new Options.Builder().server(ts.getURI()).build(), 3);
+
+            assertTrue(nc.getServers().contains(ts.getURI()));
+            assertNotNull(nc.getConnectedUrl());
+
+            // A closed shard doesn't stop the others from closing
+            nc.shardFor("a").close();
+            nc.close();
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Connection.Status.CLOSED, nc.shardFor("subject." + i).getStatus());
+            }
+            assertNull(nc.getConnectedUrl());
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testThrowOnZeroShards() throws IOException, InterruptedException {
+        try (NatsTestServer ts = new NatsTestServer(false)) {
+            Nats.connectSharded(new Options.Builder().server(ts.getURI()).build(), 0);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.NatsTestServer;
+import io.nats.client.Options;
+import io.nats.client.Subscription;
+
+public class SocketChannelDataPortTests {
+
+    private static Connection connect(NatsTestServer ts) throws Exception {
+        Options options = new Options.Builder().
+                                server(ts.getURI()).
+                                dataPortType(SocketChannelDataPort.class.getCanonicalName()).
+                                build();
+        Connection nc = Nats.connect(options);
+        assertTrue("Connected Status", Connection.Status.CONNECTED == nc.getStatus());
+        return nc;
+    }
+
+    @Test
+    public void testSmallMessages() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = connect(ts)) {
+            Subscription sub = nc.subscribe("subject");
+            nc.flush(Duration.ofSeconds(1));
+
+            for (int i = 0; i < 100; i++) {
+                nc.publish("subject", String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+            }
+
+            for (int i = 0; i < 100; i++) {
+                Message msg = sub.nextMessage(Duration.ofSeconds(1));
+                assertNotNull(msg);
+                assertEquals(String.valueOf(i), new String(msg.getData(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testGatheredMessagesStayInOrder() throws Exception {
+        try (NatsTestServer ts = new NatsTestServer(false);
+                Connection nc = connect(ts)) {
+            Subscription sub = nc.subscribe("subject");
+            nc.flush(Duration.ofSeconds(1));
+
+            // Mix bodies above and below the gather threshold, and some larger than the send buffer
+            int[] sizes = {10, NatsConnectionWriter.GATHER_THRESHOLD, 100, 3 * Options.DEFAULT_BUFFER_SIZE,
+                                0, NatsConnectionWriter.GATHER_THRESHOLD - 1, 2 * NatsConnectionWriter.GATHER_THRESHOLD};
+            int count = 200;
+
+            for (int i = 0; i < count; i++) {
+                byte[] body = new byte[sizes[i % sizes.length]];
+                Arrays.fill(body, (byte) ('a' + (i % 26)));
+                nc.publish("subject", body);
+            }
+
+            for (int i = 0; i < count; i++) {
+                byte[] expected = new byte[sizes[i % sizes.length]];
+                Arrays.fill(expected, (byte) ('a' + (i % 26)));
+
+                Message msg = sub.nextMessage(Duration.ofSeconds(2));
+                assertNotNull(msg);
+                assertArrayEquals(expected, msg.getData());
+            }
+        }
+    }
+}
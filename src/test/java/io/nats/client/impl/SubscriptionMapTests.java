@@ -0,0 +1,99 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import io.nats.client.Options;
+
+public class SubscriptionMapTests {
+
+    @Test
+    public void testPutGetRemove() {
+        NatsConnection nc = new NatsConnection(new Options.Builder().build());
+        SubscriptionMap map = new SubscriptionMap();
+        NatsSubscription[] subs = new NatsSubscription[1000];
+
+        for (int i = 0; i < subs.length; i++) {
+            subs[i] = new NatsSubscription(i + 1, "subject", null, nc, null);
+            map.put(subs[i]);
+        }
+
+        assertEquals(subs.length, map.size());
+        assertTrue(map.capacity() >= 2 * subs.length);
+
+        for (int i = 0; i < subs.length; i++) {
+            assertSame(subs[i], map.get(i + 1));
+        }
+        assertNull(map.get(0));
+        assertNull(map.get(subs.length + 1));
+
+        // Remove every other one, the rest have to be found past the tombstones
+        for (int i = 0; i < subs.length; i += 2) {
+            assertSame(subs[i], map.remove(i + 1));
+        }
+        assertNull(map.remove(1));
+
+        assertEquals(subs.length / 2, map.size());
+        assertEquals(subs.length / 2, map.values().size());
+
+        for (int i = 0; i < subs.length; i++) {
+            if (i % 2 == 0) {
+                assertNull(map.get(i + 1));
+            } else {
+                assertSame(subs[i], map.get(i + 1));
+            }
+        }
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(2));
+    }
+
+    @Test
+    public void testChurnDoesNotGrowTable() {
+        NatsConnection nc = new NatsConnection(new Options.Builder().build());
+        SubscriptionMap map = new SubscriptionMap();
+
+        for (long sid = 1; sid <= 100_000; sid++) {
+            map.put(new NatsSubscription(sid, "subject", null, nc, null));
+            if (sid > 4) {
+                map.remove(sid - 4);
+            }
+        }
+
+        assertEquals(4, map.size());
+        assertTrue(map.capacity() <= 2 * SubscriptionMap.MIN_CAPACITY);
+        assertEquals(99_997, map.get(99_997).getSID());
+    }
+
+    @Test
+    public void testParseSid() {
+        byte[] bytes = "MSG subject 1234567890123 5".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(1234567890123L, NatsConnectionReader.parseSid(bytes, 12, 25));
+    }
+
+    @Test(expected=NumberFormatException.class)
+    public void testBadSid() {
+        byte[] bytes = "12a4".getBytes(StandardCharsets.US_ASCII);
+        NatsConnectionReader.parseSid(bytes, 0, bytes.length);
+    }
+}
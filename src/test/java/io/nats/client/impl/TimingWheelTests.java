@@ -0,0 +1,151 @@
+// Copyright 2015-2018 The NATS Authors
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.nats.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class TimingWheelTests {
+
+    @Test
+    public void testExpiresAtDeadline() {
+        ArrayList<Long> expired = new ArrayList<>();
+        TimingWheel wheel = new TimingWheel(10, 8, 0, (f) -> expired.add(f.getToken()));
+
+        wheel.add(new ResponseMap.ResponseFuture(1), 0, 25); // tick 3
+        wheel.add(new ResponseMap.ResponseFuture(2), 0, 50); // tick 5
+        wheel.add(new ResponseMap.ResponseFuture(3), 0, 200); // tick 20, more than a turn away
+        assertEquals(3, wheel.size());
+
+        assertEquals(0, wheel.advance(29));
+        assertEquals(1, wheel.advance(30));
+        assertEquals(1, wheel.advance(59));
+        assertEquals(0, wheel.advance(199)); // passes the bucket for tick 20 twice
+        assertEquals(1, wheel.advance(200));
+
+        assertEquals(3, expired.size());
+        assertEquals(1L, (long) expired.get(0));
+        assertEquals(2L, (long) expired.get(1));
+        assertEquals(3L, (long) expired.get(2));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCompletedFuturesAreDropped() {
+        ArrayList<Long> expired = new ArrayList<>();
+        TimingWheel wheel = new TimingWheel(10, 8, 0, (f) -> expired.add(f.getToken()));
+        ResponseMap.ResponseFuture done = new ResponseMap.ResponseFuture(1);
+
+        wheel.add(done, 0, 10);
+        wheel.add(new ResponseMap.ResponseFuture(2), 0, 10);
+        done.complete(null);
+        assertEquals(1, wheel.size()); // unlinked right away, not at its deadline
+
+        assertEquals(1, wheel.advance(10));
+        assertEquals(1, expired.size());
+        assertEquals(2L, (long) expired.get(0));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCancelledAndDoneFuturesLeaveTheWheel() {
+        TimingWheel wheel = new TimingWheel(10, 8, 0, (f) -> { throw new IllegalStateException(); });
+        ResponseMap.ResponseFuture[] futures = new ResponseMap.ResponseFuture[30];
+
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = new ResponseMap.ResponseFuture(i);
+            wheel.add(futures[i], 0, i * 10);
+        }
+
+        // From the head, middle and tail of the buckets
+        for (int i = 0; i < futures.length; i++) {
+            if (i % 3 == 0) {
+                futures[i].cancel(true);
+            } else if (i % 3 == 1) {
+                futures[i].completeExceptionally(new Exception());
+            } else {
+                futures[i].complete(null);
+            }
+        }
+
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.advance(10_000));
+
+        ResponseMap.ResponseFuture done = new ResponseMap.ResponseFuture(100);
+        done.complete(null);
+        wheel.add(done, 10_000, 10);
+        assertEquals(0, wheel.size()); // already done, so never added
+    }
+
+    @Test
+    public void testArmedWhileNotEmpty() {
+        TimingWheel wheel = new TimingWheel(10, 8, 0, (f) -> {});
+        ResponseMap.ResponseFuture first = new ResponseMap.ResponseFuture(1);
+
+        assertTrue(wheel.add(first, 0, 10)); // the caller starts the ticker
+        assertFalse(wheel.add(new ResponseMap.ResponseFuture(2), 0, 20));
+        assertFalse(wheel.disarmIfEmpty());
+
+        first.complete(null);
+        wheel.advance(20);
+        assertTrue(wheel.disarmIfEmpty());
+
+        assertTrue(wheel.add(new ResponseMap.ResponseFuture(3), 20, 10)); // idle again, start another
+    }
+
+    @Test
+    public void testLongGapExpiresEverything() {
+        ArrayList<Long> expired = new ArrayList<>();
+        TimingWheel wheel = new TimingWheel(10, 8, 0, (f) -> expired.add(f.getToken()));
+
+        for (int i = 0; i < 100; i++) {
+            wheel.add(new ResponseMap.ResponseFuture(i), 0, i * 10);
+        }
+
+        assertEquals(100, wheel.advance(10_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testPastDeadlineWaitsForNextTick() {
+        ArrayList<Long> expired = new ArrayList<>();
+        TimingWheel wheel = new TimingWheel(10, 8, 0, (f) -> expired.add(f.getToken()));
+
+        wheel.advance(50);
+        wheel.add(new ResponseMap.ResponseFuture(1), 50, 0);
+
+        // Its tick has passed, so it goes in the next one
+        assertEquals(0, wheel.advance(59));
+        assertEquals(1, wheel.advance(60));
+        assertTrue(expired.contains(1L));
+    }
+
+    @Test
+    public void testClear() {
+        TimingWheel wheel = new TimingWheel(10, 8, 0, (f) -> { throw new IllegalStateException(); });
+
+        for (int i = 0; i < 20; i++) {
+            wheel.add(new ResponseMap.ResponseFuture(i), 0, i * 10);
+        }
+
+        wheel.clear();
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.advance(10_000));
+    }
+}